@@ -1,30 +1,30 @@
 package com.javabooks.config;
 
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.RSAKey;
-import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
 import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.proc.SecurityContext;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.core.annotation.Order;
 import org.springframework.http.MediaType;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
 import org.springframework.security.oauth2.core.oidc.OidcScopes;
-import org.springframework.security.oauth2.jwt.JwtDecoder;
-import org.springframework.security.oauth2.server.authorization.client.InMemoryRegisteredClientRepository;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.authentication.ClientSecretAuthenticationProvider;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
 import org.springframework.security.oauth2.server.authorization.config.annotation.web.configuration.OAuth2AuthorizationServerConfiguration;
@@ -32,15 +32,34 @@ import org.springframework.security.oauth2.server.authorization.config.annotatio
 import org.springframework.security.oauth2.server.authorization.settings.AuthorizationServerSettings;
 import org.springframework.security.oauth2.server.authorization.settings.ClientSettings;
 import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
+import org.springframework.security.oauth2.server.authorization.token.DelegatingOAuth2TokenGenerator;
 import org.springframework.security.oauth2.server.authorization.token.JwtEncodingContext;
+import org.springframework.security.oauth2.server.authorization.token.JwtGenerator;
+import org.springframework.security.oauth2.server.authorization.token.OAuth2AccessTokenGenerator;
+import org.springframework.security.oauth2.server.authorization.token.OAuth2RefreshTokenGenerator;
 import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenCustomizer;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenGenerator;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.LoginUrlAuthenticationEntryPoint;
 import org.springframework.security.web.util.matcher.MediaTypeRequestMatcher;
+import com.javabooks.security.CachingJwtDecoder;
 import com.javabooks.security.CustomUserDetailsService;
 import com.javabooks.security.JwtCustomizer;
+import com.javabooks.security.PrecomputedMetadataFilter;
+import com.javabooks.security.RevocationAwareAuthorizationService;
+import com.javabooks.security.SigningKeyManager;
+import com.javabooks.security.clients.CachedRegisteredClientRepository;
+import com.javabooks.security.clients.CachingSecretEncoder;
+import com.javabooks.security.clients.RegisteredClientEntityRepository;
+import com.javabooks.security.exchange.CoalescingTokenExchange;
+import com.javabooks.security.exchange.LocalTokenExchange;
+import com.javabooks.security.exchange.RemoteTokenExchange;
+import com.javabooks.security.exchange.TokenExchange;
+import com.javabooks.security.store.ShardedOAuth2AuthorizationConsentService;
+import com.javabooks.security.store.ShardedOAuth2AuthorizationService;
+import com.javabooks.security.policy.PolicyEngine;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -48,11 +67,10 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfigurationSource;
 
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Configuration
@@ -67,11 +85,23 @@ public class AuthorizationServerConfig {
 
     @Bean
     @Order(1)
-    public SecurityFilterChain authorizationServerSecurityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain authorizationServerSecurityFilterChain(HttpSecurity http,
+            PasswordEncoder passwordEncoder,
+            CachedRegisteredClientRepository registeredClientRepository,
+            @Value("${libreria.security.client-auth-cache.ttl:5m}") Duration clientAuthTtl,
+            @Value("${libreria.security.client-auth-cache.max-entries:1000}") int clientAuthMaxEntries) throws Exception {
         OAuth2AuthorizationServerConfiguration.applyDefaultSecurity(http);
-        
+
+        // Secretos de cliente ya verificados: un HMAC por petición en lugar de un BCrypt
+        CachingSecretEncoder clientSecrets = new CachingSecretEncoder(passwordEncoder, clientAuthTtl, clientAuthMaxEntries);
+        registeredClientRepository.addSecretListener(previous -> clientSecrets.invalidate(previous.getClientSecret()));
+
         http.getConfigurer(OAuth2AuthorizationServerConfigurer.class)
-            .oidc(Customizer.withDefaults()); // Habilita OpenID Connect 1.0
+            .oidc(Customizer.withDefaults()) // Habilita OpenID Connect 1.0
+            .clientAuthentication(clientAuthentication -> clientAuthentication
+                .authenticationProviders(providers -> providers.stream()
+                    .filter(ClientSecretAuthenticationProvider.class::isInstance)
+                    .forEach(provider -> ((ClientSecretAuthenticationProvider) provider).setPasswordEncoder(clientSecrets))));
         
         http
             // Redirige a la página de login para usuarios no autenticados
@@ -122,10 +152,11 @@ public class AuthorizationServerConfig {
     }
 
     @Bean
-    public RegisteredClientRepository registeredClientRepository() {
+    public CachedRegisteredClientRepository registeredClientRepository(RegisteredClientEntityRepository repository) {
+        // Secretos ya codificados (BCrypt, coste 10): arrancar no calcula ningún hash
         RegisteredClient oidcClient = RegisteredClient.withId(UUID.randomUUID().toString())
                 .clientId("oidc-client")
-                .clientSecret(passwordEncoder().encode("secret"))
+                .clientSecret("{bcrypt}$2a$10$.L67RnchCtqr7/kcIijDlObUm8hGxcop2lXVQPrWrVx8NsAXZe9QW")
                 .clientAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
                 .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
                 .authorizationGrantType(AuthorizationGrantType.REFRESH_TOKEN)
@@ -149,7 +180,7 @@ public class AuthorizationServerConfig {
 
         RegisteredClient webClient = RegisteredClient.withId(UUID.randomUUID().toString())
                 .clientId("web-client")
-                .clientSecret(passwordEncoder().encode("web-secret"))
+                .clientSecret("{bcrypt}$2a$10$R1tD/LSrLzruetwUBS/mweVtGjlcTh1w6IBAIouGw3ZSI3nH0815K")
                 .clientAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
                 .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
                 .authorizationGrantType(AuthorizationGrantType.REFRESH_TOKEN)
@@ -167,60 +198,111 @@ public class AuthorizationServerConfig {
                     .build())
                 .build();
 
-        return new InMemoryRegisteredClientRepository(oidcClient, webClient);
+        // Tabla registered_client con caché en memoria; estos dos se guardan si la tabla está vacía
+        return new CachedRegisteredClientRepository(repository, List.of(oidcClient, webClient));
     }
 
-    @Bean
-    public JWKSource<SecurityContext> jwkSource() {
-        KeyPair keyPair = generateRsaKey();
-        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
-        RSAPrivateKey privateKey = (RSAPrivateKey) keyPair.getPrivate();
-        RSAKey rsaKey = new RSAKey.Builder(publicKey)
-                .privateKey(privateKey)
-                .keyID(UUID.randomUUID().toString())
-                .build();
-        JWKSet jwkSet = new JWKSet(rsaKey);
-        return new ImmutableJWKSet<>(jwkSet);
+    @Bean(destroyMethod = "close")
+    public SigningKeyManager jwkSource(
+            @Value("${libreria.security.keys.dir:./data/keys}") Path directory,
+            @Value("${libreria.security.keys.algorithm:RS256}") String algorithm,
+            @Value("${libreria.security.keys.rotation-interval:30d}") Duration rotationInterval,
+            @Value("${libreria.security.keys.previous-keys:1}") int previousKeys,
+            @Value("${libreria.security.metadata.jwks-max-age:5m}") Duration jwksMaxAge) {
+        // Claves persistentes: los tokens emitidos siguen valiendo tras un reinicio.
+        // Una clave rotada no firma hasta que caducan los JWKS en caché que aún no la tienen
+        SigningKeyManager keys = new SigningKeyManager(directory, algorithm, rotationInterval, previousKeys, jwksMaxAge);
+        keys.start();
+        return keys;
     }
     
     @Bean
-    public UserDetailsService userDetailsService() {
-        UserDetails user = User.builder()
-                .username("user")
-                .password(passwordEncoder().encode("password"))
-                .roles("USER")
-                .build();
-
-        UserDetails admin = User.builder()
-                .username("admin")
-                .password(passwordEncoder().encode("admin"))
-                .roles("USER", "ADMIN")
-                .build();
+    public FilterRegistrationBean<PrecomputedMetadataFilter> metadataFilter(SigningKeyManager signingKeys,
+            AuthorizationServerSettings authorizationServerSettings,
+            @Value("${libreria.security.metadata.jwks-max-age:5m}") Duration jwksMaxAge,
+            @Value("${libreria.security.metadata.discovery-max-age:1h}") Duration discoveryMaxAge) {
+        // JWKS y descubrimiento sin pasar por la cadena de seguridad; el JWKS se regenera al rotar las claves
+        PrecomputedMetadataFilter filter = new PrecomputedMetadataFilter(signingKeys, corsConfigurationSource,
+                authorizationServerSettings.getJwkSetEndpoint(), jwksMaxAge, discoveryMaxAge);
+        FilterRegistrationBean<PrecomputedMetadataFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns(authorizationServerSettings.getJwkSetEndpoint(), "/.well-known/*");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+        return registration;
+    }
 
-        return new InMemoryUserDetailsManager(user, admin);
+    @Bean
+    public OAuth2TokenCustomizer<JwtEncodingContext> tokenCustomizer(PolicyEngine policyEngine,
+            SigningKeyManager signingKeys,
+            @Value("${libreria.security.entitlements.compact:true}") boolean compact) {
+        JwtCustomizer claims = new JwtCustomizer(policyEngine, compact);
+        return context -> {
+            signingKeys.customize(context.getJwsHeader());
+            claims.customize(context);
+        };
     }
 
     @Bean
-    public OAuth2TokenCustomizer<JwtEncodingContext> tokenCustomizer() {
-        return new JwtCustomizer();
+    public OAuth2TokenGenerator<OAuth2Token> tokenGenerator(JWKSource<SecurityContext> jwkSource,
+            OAuth2TokenCustomizer<JwtEncodingContext> tokenCustomizer) {
+        // El mismo generador para /oauth2/token y para el canje en proceso de /api/auth
+        JwtGenerator jwtGenerator = new JwtGenerator(new NimbusJwtEncoder(jwkSource));
+        jwtGenerator.setJwtCustomizer(tokenCustomizer);
+        return new DelegatingOAuth2TokenGenerator(
+                jwtGenerator, new OAuth2AccessTokenGenerator(), new OAuth2RefreshTokenGenerator());
     }
 
-    private static KeyPair generateRsaKey() {
-        KeyPair keyPair;
-        try {
-            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-            keyPairGenerator.initialize(2048);
-            keyPair = keyPairGenerator.generateKeyPair();
-        }
-        catch (Exception ex) {
-            throw new IllegalStateException(ex);
+    @Bean
+    public CoalescingTokenExchange tokenExchange(RegisteredClientRepository registeredClientRepository,
+            OAuth2AuthorizationService authorizationService,
+            OAuth2TokenGenerator<OAuth2Token> tokenGenerator,
+            AuthorizationServerSettings authorizationServerSettings,
+            PasswordEncoder passwordEncoder,
+            @Value("${oauth2.client.client-id:web-client}") String clientId,
+            @Value("${oauth2.client.client-secret:web-secret}") String clientSecret,
+            @Value("${oauth2.authorization-server:}") String authorizationServer,
+            @Value("${libreria.security.token-exchange.connect-timeout:2s}") Duration connectTimeout,
+            @Value("${libreria.security.token-exchange.read-timeout:5s}") Duration readTimeout,
+            @Value("${libreria.security.token-exchange.refresh-ttl:10s}") Duration refreshTtl,
+            @Value("${libreria.security.token-exchange.refresh-max-entries:10000}") int refreshMaxEntries,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        // Sin issuer externo (o con el nuestro) el canje no sale del proceso
+        TokenExchange exchange;
+        if (authorizationServer.isBlank() || authorizationServer.equals(authorizationServerSettings.getIssuer())) {
+            exchange = new LocalTokenExchange(registeredClientRepository, authorizationService, tokenGenerator,
+                    authorizationServerSettings, passwordEncoder, clientId, clientSecret);
+        } else {
+            exchange = new RemoteTokenExchange(authorizationServer, clientId, clientSecret, connectTimeout, readTimeout,
+                    virtualThreads ? new VirtualThreadTaskExecutor("token-exchange-") : null);
         }
-        return keyPair;
+        // Refrescos simultáneos con el mismo token (varias pestañas tras un 401): un solo canje
+        return new CoalescingTokenExchange(exchange, refreshTtl, refreshMaxEntries);
     }
 
     @Bean
-    public JwtDecoder jwtDecoder(JWKSource<SecurityContext> jwkSource) {
-        return OAuth2AuthorizationServerConfiguration.jwtDecoder(jwkSource);
+    public CachingJwtDecoder jwtDecoder(JWKSource<SecurityContext> jwkSource,
+            @Value("${libreria.security.jwt-cache.max-entries:10000}") int maxEntries) {
+        // La firma y el parseo solo la primera vez que se presenta cada token
+        return new CachingJwtDecoder(OAuth2AuthorizationServerConfiguration.jwtDecoder(jwkSource), maxEntries);
+    }
+
+    @Bean(destroyMethod = "close")
+    public RevocationAwareAuthorizationService authorizationService(CachingJwtDecoder jwtDecoder,
+            @Value("${libreria.security.authorizations.shards:64}") int shards,
+            @Value("${libreria.security.authorizations.max-entries:1000000}") int maxEntries,
+            @Value("${libreria.security.authorizations.pending-ttl:10m}") Duration pendingTtl,
+            @Value("${libreria.security.authorizations.sweep-interval:1m}") Duration sweepInterval) {
+        // Las revocaciones sacan el access token de la caché de tokens verificados
+        return new RevocationAwareAuthorizationService(
+                new ShardedOAuth2AuthorizationService(shards, maxEntries, pendingTtl, sweepInterval), jwtDecoder);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ShardedOAuth2AuthorizationConsentService authorizationConsentService(
+            @Value("${libreria.security.authorizations.shards:64}") int shards,
+            @Value("${libreria.security.consents.max-entries:100000}") int maxEntries,
+            @Value("${libreria.security.consents.ttl:30d}") Duration ttl,
+            @Value("${libreria.security.authorizations.sweep-interval:1m}") Duration sweepInterval) {
+        return new ShardedOAuth2AuthorizationConsentService(shards, maxEntries, ttl, sweepInterval);
     }
 
     @Bean
@@ -239,17 +321,23 @@ public class AuthorizationServerConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(
+            @Value("${libreria.security.password.bcrypt-strength:10}") int strength) {
+        // Hashes con prefijo {id}; los de otro algoritmo o con menos coste se recodifican al entrar
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+        // Hashes antiguos sin prefijo: BCrypt
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
     }
 
     @Bean
     public AuthenticationManager authenticationManager(
-            UserDetailsService userDetailsService,
+            CustomUserDetailsService userDetailsService,
             PasswordEncoder passwordEncoder) {
-        DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider();
-        authenticationProvider.setUserDetailsService(userDetailsService);
+        DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider(userDetailsService);
         authenticationProvider.setPasswordEncoder(passwordEncoder);
+        authenticationProvider.setUserDetailsPasswordService(userDetailsService);
 
         return new ProviderManager(authenticationProvider);
     }
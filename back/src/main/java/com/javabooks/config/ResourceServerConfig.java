@@ -1,5 +1,8 @@
 package com.javabooks.config;
 
+import com.javabooks.security.AuthorizationContextConverter;
+import com.javabooks.security.CachingJwtDecoder;
+import com.javabooks.security.policy.PolicyEngine;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
@@ -26,7 +29,8 @@ public class ResourceServerConfig {
 
     @Bean
     @Order(3)
-    public SecurityFilterChain resourceServerSecurityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain resourceServerSecurityFilterChain(HttpSecurity http, PolicyEngine policyEngine,
+            CachingJwtDecoder jwtDecoder) throws Exception {
         http
             // Habilitar CORS con la configuración personalizada
             .cors(cors -> cors.configurationSource(corsConfigurationSource))
@@ -37,13 +41,16 @@ public class ResourceServerConfig {
             .securityMatcher("/api/**")
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(authorize -> authorize
-                .requestMatchers("/oauth2/**", "/api/public/**").permitAll()
+                .requestMatchers("/oauth2/**", "/api/public/**", "/api/auth/**").permitAll()
                 .requestMatchers("/api/book/**").hasAuthority("SCOPE_libros.read")
                 .anyRequest().authenticated()
             )
             .oauth2ResourceServer(oauth2 -> oauth2
                 .jwt(jwt -> jwt
-                    .jwtAuthenticationConverter(jwtAuthenticationConverter())
+                    // Tokens ya verificados: un hash y una lectura de la caché
+                    .decoder(jwtDecoder)
+                    // Los permisos del token se compilan (o se resuelven por id) una vez por petición
+                    .jwtAuthenticationConverter(new AuthorizationContextConverter(jwtAuthenticationConverter(), policyEngine))
                 )
             )
             .csrf(csrf -> csrf.disable());
@@ -0,0 +1,73 @@
+package com.javabooks.config;
+
+import com.javabooks.repository.BookJournal;
+import com.javabooks.repository.BookStorage;
+import com.javabooks.repository.ContentStore;
+import com.javabooks.repository.HeapContentStore;
+import com.javabooks.repository.InMemoryBookStorage;
+import com.javabooks.repository.MappedContentStore;
+import com.javabooks.repository.jpa.BookEntityRepository;
+import com.javabooks.repository.jpa.JpaBookStorage;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class StorageConfig {
+
+    /**
+     * Motor del catálogo: memory (ConcurrentHashMap) o jpa (datasource de spring.datasource).
+     */
+    @Bean
+    @ConditionalOnProperty(name = "libreria.book.storage", havingValue = "memory", matchIfMissing = true)
+    public BookStorage inMemoryBookStorage() {
+        return new InMemoryBookStorage();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "libreria.book.storage", havingValue = "jpa")
+    public BookStorage jpaBookStorage(
+            BookEntityRepository bookEntityRepository,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        return new JpaBookStorage(bookEntityRepository, entityManager, transactionManager, batchSize);
+    }
+
+    @Bean
+    public ContentStore contentStore(
+            @Value("${libreria.book.content.store:heap}") String store,
+            @Value("${libreria.book.content.dir:${java.io.tmpdir}/libreria-content}") Path directory,
+            @Value("${libreria.book.content.segment-size:64MB}") DataSize segmentSize,
+            @Value("${libreria.book.content.compaction-interval:30s}") Duration compactionInterval) {
+        switch (store) {
+            case "mapped":
+                return new MappedContentStore(directory, (int) segmentSize.toBytes(), compactionInterval);
+            case "heap":
+                return new HeapContentStore();
+            default:
+                throw new IllegalStateException("Almacenamiento de contenido no soportado: " + store);
+        }
+    }
+
+    /**
+     * Modo durable del motor en memoria: write-ahead log con group commit y snapshots periódicos.
+     * El motor JPA ya persiste por sí mismo y no lo usa.
+     */
+    @Bean
+    @ConditionalOnExpression("${libreria.book.durability.enabled:false} and '${libreria.book.storage:memory}' == 'memory'")
+    public BookJournal bookJournal(
+            @Value("${libreria.book.durability.dir:./data/journal}") Path directory,
+            @Value("${libreria.book.durability.fsync:true}") boolean fsync,
+            @Value("${libreria.book.durability.snapshot-interval:5m}") Duration snapshotInterval) {
+        return new BookJournal(directory, fsync, snapshotInterval);
+    }
+}
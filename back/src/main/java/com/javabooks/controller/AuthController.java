@@ -1,46 +1,37 @@
-package com.example.controller;
+package com.javabooks.controller;
 
-import org.springframework.beans.factory.annotation.Value;
+import com.javabooks.security.exchange.TokenExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.*;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.Base64;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/auth")
 @CrossOrigin(
-    origins = "*", allowCredentials = "true", 
+    originPatterns = "*", allowCredentials = "true", 
     allowedHeaders = "*",
     methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.OPTIONS})
 public class AuthController {
 
-    @Value("${oauth2.client.client-id:web-client}")
-    private String clientId;
+    private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
 
-    @Value("${oauth2.client.client-secret:web-secret}")
-    private String clientSecret;
+    // En proceso si el servidor de autorización es este mismo; por HTTP si es remoto
+    private final TokenExchange tokenExchange;
 
-    @Value("${oauth2.authorization-server:http://localhost:9000}")
-    private String authorizationServer;
-
-    private final RestTemplate restTemplate = new RestTemplate();
+    public AuthController(TokenExchange tokenExchange) {
+        this.tokenExchange = tokenExchange;
+    }
 
     @PostMapping("/token")
     public ResponseEntity<?> exchangeCodeForToken(@RequestBody TokenExchangeRequest request) {
-        System.out.println("=== CORS Headers in Request ===");
-        System.out.println("=== Token Exchange Request ===");
-        System.out.println("Code: " + (request.getCode() != null ? "Present" : "Missing"));
-        System.out.println("Redirect URI: " + request.getRedirectUri());
-        System.out.println("Code Verifier: " + (request.getCodeVerifier() != null ? "Present" : "Missing"));
-        
-        // System.out.println("Origin: " + request.getHeader("Origin"));
-        // System.out.println("Access-Control-Request-Method: " + request.getHeader("Access-Control-Request-Method"));
-        // System.out.println("Access-Control-Request-Headers: " + request.getHeader("Access-Control-Request-Headers"));
-        
+        logger.debug("Canje de código: code {}, redirectUri {}, codeVerifier {}",
+                request.getCode() != null ? "presente" : "ausente", request.getRedirectUri(),
+                request.getCodeVerifier() != null ? "presente" : "ausente");
+
         try {
             // Validate request
             if (request.getCode() == null || request.getCode().trim().isEmpty()) {
@@ -48,66 +39,33 @@ public class AuthController {
                     .body(Map.of("error", "invalid_request", "message", "Authorization code is required"));
             }
 
-            // Preparar headers
-            String credentials = Base64.getEncoder()
-                .encodeToString((clientId + ":" + clientSecret).getBytes());
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-            headers.set("Authorization", "Basic " + credentials);
-
-            // Preparar body
-            MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
-            body.add("grant_type", "authorization_code");
-            body.add("code", request.getCode());
-            body.add("redirect_uri", request.getRedirectUri());
-            body.add("code_verifier", request.getCodeVerifier());
-
-            HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(body, headers);
-
-            // Hacer la petición al Authorization Server
-            ResponseEntity<Map> response = restTemplate.postForEntity(
-                authorizationServer + "/oauth2/token", 
-                entity, 
-                Map.class
-            );
-
-            return ResponseEntity.ok(response.getBody());
+            return ResponseEntity.ok(tokenExchange.exchangeCode(
+                request.getCode(), request.getRedirectUri(), request.getCodeVerifier()));
 
         } catch (Exception e) {
             return ResponseEntity.badRequest()
-                .body(Map.of("error", "token_exchange_failed", "message", e.getMessage()));
+                .body(Map.of("error", "token_exchange_failed", "message", message(e)));
         }
     }
 
     @PostMapping("/refresh")
     public ResponseEntity<?> refreshToken(@RequestBody RefreshTokenRequest request) {
         try {
-            String credentials = Base64.getEncoder()
-                .encodeToString((clientId + ":" + clientSecret).getBytes());
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-            headers.set("Authorization", "Basic " + credentials);
-
-            MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
-            body.add("grant_type", "refresh_token");
-            body.add("refresh_token", request.getRefreshToken());
-
-            HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(body, headers);
-
-            ResponseEntity<Map> response = restTemplate.postForEntity(
-                authorizationServer + "/oauth2/token", 
-                entity, 
-                Map.class
-            );
-
-            return ResponseEntity.ok(response.getBody());
+            return ResponseEntity.ok(tokenExchange.refresh(request.getRefreshToken()));
 
         } catch (Exception e) {
             return ResponseEntity.badRequest()
-                .body(Map.of("error", "refresh_failed", "message", e.getMessage()));
+                .body(Map.of("error", "refresh_failed", "message", message(e)));
+        }
+    }
+
+    // Los errores OAuth2 del canje en proceso no traen mensaje, solo el código (invalid_grant...)
+    private static String message(Exception e) {
+        if (e instanceof OAuth2AuthenticationException oauth2) {
+            return oauth2.getError().getDescription() != null
+                ? oauth2.getError().getDescription() : oauth2.getError().getErrorCode();
         }
+        return String.valueOf(e.getMessage());
     }
 
 // Manejar preflight requests explícitamente
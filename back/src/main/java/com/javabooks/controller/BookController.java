@@ -1,24 +1,79 @@
 package com.javabooks.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.javabooks.model.Book;
+import com.javabooks.model.BookProjection;
+import com.javabooks.model.CursorPage;
+import com.javabooks.model.ImportResult;
+import com.javabooks.model.SearchHit;
+import com.javabooks.model.Suggestion;
+import com.javabooks.repository.BookContent;
+import com.javabooks.repository.BookRepository;
+import com.javabooks.repository.BookSort;
+import com.javabooks.security.AuthorizationContext;
+import com.javabooks.service.BookImportService;
 import com.javabooks.service.BookService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/book")
 public class BookController {
 
+    // Atributos de petición con los que Tomcat envía un fichero por sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     @Autowired
     private BookService bookService;
 
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Value("${libreria.book.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${libreria.book.page.max-size:100}")
+    private int maxPageSize;
+
+    @Value("${libreria.book.export.page-size:500}")
+    private int exportPageSize;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping("/title/{title}")
     public ResponseEntity<?> findByTitle(@PathVariable String title, Authentication authentication) {
         try {
@@ -36,10 +91,13 @@ public class BookController {
     }
 
     @GetMapping("/author/{author}")
-    public ResponseEntity<?> findByAuthor(@PathVariable String author, Authentication authentication) {
+    public ResponseEntity<?> findByAuthor(@PathVariable String author,
+                                          @RequestParam(value = "fields", required = false) String fields,
+                                          Authentication authentication) {
         try {
+            BookProjection projection = BookProjection.parse(fields);
             List<Book> books = bookService.findByAutor(author, authentication);
-            return ResponseEntity.ok(books);
+            return ResponseEntity.ok(projection.apply(books));
         } catch (AccessDeniedException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: " + e.getMessage());
         } catch (Exception e) {
@@ -47,11 +105,67 @@ public class BookController {
         }
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam("q") String query,
+                                    @RequestParam(value = "limit", defaultValue = "10") int limit,
+                                    Authentication authentication) {
+        try {
+            List<SearchHit> hits = bookService.search(query, Math.min(Math.max(limit, 1), 100), authentication);
+            return ResponseEntity.ok(hits);
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error al buscar en el contenido: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<?> suggest(@RequestParam("q") String prefix,
+                                     @RequestParam(value = "limit", defaultValue = "5") int limit,
+                                     Authentication authentication) {
+        try {
+            List<Suggestion> suggestions = bookService.suggest(prefix, Math.min(Math.max(limit, 1), 20), authentication);
+            return ResponseEntity.ok(suggestions);
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error al obtener sugerencias: " + e.getMessage());
+        }
+    }
+
     @GetMapping("")
-    public ResponseEntity<?> findAll(Authentication authentication) {
+    public ResponseEntity<?> findAll(@RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "size", required = false) Integer size,
+                                     @RequestParam(value = "sort", required = false) String sort,
+                                     @RequestParam(value = "direction", defaultValue = "asc") String direction,
+                                     @RequestParam(value = "fields", required = false) String fields,
+                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                     Authentication authentication) {
         try {
-            List<Book> books = bookService.findAll(authentication);
-            return ResponseEntity.ok(books);
+            BookProjection projection = BookProjection.parse(fields);
+
+            // La versión antes que los datos: un cambio entre medias deja el ETag viejo, nunca datos viejos con el nuevo
+            BookRepository.Version version = bookService.findVersion(authentication);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(catalogEtag(version, AuthorizationContext.of(authentication),
+                    cursor, String.valueOf(size), sort, direction, fields));
+            headers.setLastModified(version.lastModified());
+            headers.setCacheControl("private, no-cache");
+            if (etagMatches(ifNoneMatch, headers.getETag())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            }
+
+            // Sin parámetros de paginación se mantiene la respuesta como lista completa
+            if (cursor == null && size == null && sort == null) {
+                List<Book> books = bookService.findAll(authentication);
+                return ResponseEntity.ok().headers(headers).body(projection.apply(books));
+            }
+
+            int pageSize = Math.min(Math.max(size != null ? size : defaultPageSize, 1), maxPageSize);
+            boolean descending = "desc".equalsIgnoreCase(direction);
+            CursorPage<Book> page = bookService.findPage(BookSort.fromParam(sort), descending, cursor, pageSize, authentication);
+            return ResponseEntity.ok().headers(headers)
+                    .body(new CursorPage<Map<String, Object>>(projection.apply(page.getItems()), page.getNextCursor()));
         } catch (AccessDeniedException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: " + e.getMessage());
         } catch (Exception e) {
@@ -59,6 +173,70 @@ public class BookController {
         }
     }
 
+    /**
+     * Exportación del catálogo visible en NDJSON, un libro por línea. Se escribe por
+     * páginas sobre el socket: la escritura bloqueante hace de contrapresión y la
+     * memoria no depende del tamaño del catálogo. Si {@code Accept-Encoding} admite gzip
+     * (con q mayor que 0) se comprime al vuelo.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(value = "fields", required = false) String fields,
+                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                    Authentication authentication) {
+        try {
+            BookProjection projection = BookProjection.parse(fields);
+            Iterable<Book> books = bookService.export(exportPageSize, authentication);
+            boolean gzip = acceptsGzip(acceptEncoding);
+
+            StreamingResponseBody body = output -> writeNdjson(books, projection, gzip ? new GZIPOutputStream(output, 1 << 16) : output);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (gzip) {
+                response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return response.body(body);
+        } catch (AccessDeniedException e) {
+            return streamingError(HttpStatus.FORBIDDEN, "Error: " + e.getMessage());
+        } catch (Exception e) {
+            return streamingError(HttpStatus.BAD_REQUEST, "Error al exportar el catálogo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Contenido del libro en UTF-8. Soporta peticiones {@code Range} de un solo rango,
+     * {@code If-Range} y {@code If-None-Match}; el cuerpo se copia del almacenamiento
+     * al socket sin pasar por un String.
+     */
+    @GetMapping("/{id}/content")
+    public ResponseEntity<?> findContent(@PathVariable Long id, Authentication authentication,
+                                         HttpServletRequest request, HttpServletResponse response) {
+        try {
+            Optional<BookContent> content = bookService.findContent(id, authentication);
+            if (content.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            BookContent body = content.get();
+            boolean handedOff = false;
+            try {
+                handedOff = writeContent(body, request, response);
+            } finally {
+                // Si lo envía Tomcat por sendfile, lo cierra SendfileContentListener al terminar la petición
+                if (!handedOff) {
+                    body.close();
+                }
+            }
+            // Respuesta ya escrita
+            return null;
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: " + e.getMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error al obtener el contenido: " + e.getMessage());
+        }
+    }
+
     @PostMapping
     public ResponseEntity<?> createBook(@RequestBody Book book, Authentication authentication) {
         try {
@@ -71,6 +249,23 @@ public class BookController {
         }
     }
 
+    /**
+     * Alta masiva en NDJSON (un libro por línea) o CSV con cabecera. El cuerpo se
+     * procesa como flujo; la respuesta resume las filas importadas y rechazadas.
+     */
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+    public ResponseEntity<?> importBooks(HttpServletRequest request, Authentication authentication) {
+        try {
+            BookImportService.Format format = BookImportService.Format.fromContentType(request.getContentType());
+            ImportResult result = bookImportService.importBooks(request.getInputStream(), format, authentication);
+            return ResponseEntity.ok(result);
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error al importar los libros: " + e.getMessage());
+        }
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteBook(@PathVariable Long id, Authentication authentication) {
         try {
@@ -86,4 +281,166 @@ public class BookController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error al eliminar el libro: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Escribe la respuesta. Devuelve true si el cuerpo queda para sendfile: el contenido
+     * sigue abierto hasta el final de la petición.
+     */
+    private boolean writeContent(BookContent content, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long length = content.length();
+        String etag = "\"" + content.etag() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Privado y revalidando con el ETag en cada uso
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return false;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        boolean partial = false;
+        // Con If-Range de otra versión se ignora el rango y se envía el contenido completo
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Los multirango se responden con el contenido completo
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start >= length || start > end) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return false;
+                }
+                partial = true;
+            }
+        }
+
+        long count = Math.max(0, end - start + 1);
+        response.setStatus(partial ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLengthLong(count);
+        if (partial) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        if (count == 0) {
+            return false;
+        }
+        // Si el contenido está en un fichero y Tomcat soporta sendfile, el kernel copia
+        // directamente del fichero al socket al terminar la petición
+        Path file = content.file();
+        if (file != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            long fileStart = content.fileOffset() + start;
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, fileStart);
+            request.setAttribute(SENDFILE_END, fileStart + count);
+            request.setAttribute(SendfileContentListener.CONTENT, content);
+            return true;
+        }
+        content.transferTo(start, count, Channels.newChannel(response.getOutputStream()));
+        response.flushBuffer();
+        return false;
+    }
+
+    // El manejador de StreamingResponseBody exige ese tipo de cuerpo también en los errores
+    private static ResponseEntity<StreamingResponseBody> streamingError(HttpStatus status, String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(status)
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .body(output -> output.write(bytes));
+    }
+
+    private void writeNdjson(Iterable<Book> books, BookProjection projection, OutputStream output) throws IOException {
+        // Sin flush por valor: se vacía el buffer una vez por página
+        ObjectWriter writer = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+        try (SequenceWriter lines = writer.writeValues(output)) {
+            int written = 0;
+            for (Book book : books) {
+                lines.write(projection.apply(book));
+                if (++written % exportPageSize == 0) {
+                    lines.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Si la cabecera Accept-Encoding admite gzip: gzip o x-gzip, o si no aparecen, {@code *},
+     * con q mayor que 0. Sin cabecera no se comprime.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].strip().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].strip();
+                if (param.length() > 2 && param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).strip());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = gzip == null ? q : Math.max(gzip, q);
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        double q = gzip != null ? gzip : any != null ? any : 0;
+        return q > 0;
+    }
+
+    /**
+     * ETag del listado: la versión del catálogo visible, los permisos del usuario y los
+     * parámetros de la petición. Otros permisos, otra página u otros campos son otra respuesta.
+     */
+    private static String catalogEtag(BookRepository.Version version, AuthorizationContext context, String... params) {
+        StringBuilder key = new StringBuilder()
+                .append(version.epoch()).append(':').append(version.number())
+                .append('|').append(context.getCategorias().patterns())
+                .append('|').append(context.getAutores().patterns());
+        for (String param : params) {
+            key.append('|').append(param);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.strip();
+            if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
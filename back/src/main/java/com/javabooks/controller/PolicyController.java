@@ -0,0 +1,52 @@
+package com.javabooks.controller;
+
+import com.javabooks.security.AuthorizationContext;
+import com.javabooks.security.policy.Policy;
+import com.javabooks.security.policy.PolicyEngine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Administración del motor de permisos. Los cambios en la tabla entitlement se aplican
+ * al recargar; los tokens ya emitidos conservan sus claims hasta que caducan.
+ */
+@RestController
+@RequestMapping("/api/policies")
+public class PolicyController {
+
+    @Autowired
+    private PolicyEngine policyEngine;
+
+    @PostMapping("/reload")
+    public ResponseEntity<?> reload(Authentication authentication) {
+        if (!AuthorizationContext.of(authentication).hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: Solo los administradores pueden recargar los permisos");
+        }
+        try {
+            int reglas = policyEngine.reload();
+            return ResponseEntity.ok(Map.of("reglas", reglas, "usuarios", policyEngine.users()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error al recargar los permisos: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{username}")
+    public ResponseEntity<?> policy(@PathVariable String username, Authentication authentication) {
+        if (!AuthorizationContext.of(authentication).hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: Solo los administradores pueden consultar los permisos");
+        }
+        Policy policy = policyEngine.policyFor(username);
+        return ResponseEntity.ok(Map.of(
+                "categorias", policy.categorias().patterns(),
+                "autores", policy.autores().patterns()));
+    }
+}
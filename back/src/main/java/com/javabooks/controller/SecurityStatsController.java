@@ -0,0 +1,42 @@
+package com.javabooks.controller;
+
+import com.javabooks.security.AuthorizationContext;
+import com.javabooks.security.CachingJwtDecoder;
+import com.javabooks.security.exchange.CoalescingTokenExchange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Métricas de las cachés de seguridad, solo para administradores.
+ */
+@RestController
+@RequestMapping("/api/security")
+public class SecurityStatsController {
+
+    @Autowired
+    private CachingJwtDecoder jwtDecoder;
+
+    @Autowired
+    private CoalescingTokenExchange tokenExchange;
+
+    @GetMapping("/token-cache")
+    public ResponseEntity<?> tokenCache(Authentication authentication) {
+        if (!AuthorizationContext.of(authentication).hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: Solo los administradores pueden consultar las métricas");
+        }
+        return ResponseEntity.ok(jwtDecoder.stats());
+    }
+
+    @GetMapping("/refresh-coalescing")
+    public ResponseEntity<?> refreshCoalescing(Authentication authentication) {
+        if (!AuthorizationContext.of(authentication).hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Error: Solo los administradores pueden consultar las métricas");
+        }
+        return ResponseEntity.ok(tokenExchange.stats());
+    }
+}
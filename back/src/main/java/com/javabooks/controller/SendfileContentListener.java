@@ -0,0 +1,23 @@
+package com.javabooks.controller;
+
+import com.javabooks.repository.BookContent;
+import jakarta.servlet.ServletRequestEvent;
+import jakarta.servlet.ServletRequestListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cierra al final de la petición el contenido que {@link BookController} deja a Tomcat
+ * para enviarlo por sendfile. Hasta entonces el almacenamiento mantiene el fichero.
+ */
+@Component
+public class SendfileContentListener implements ServletRequestListener {
+
+    static final String CONTENT = SendfileContentListener.class.getName() + ".content";
+
+    @Override
+    public void requestDestroyed(ServletRequestEvent event) {
+        if (event.getServletRequest().getAttribute(CONTENT) instanceof BookContent content) {
+            content.close();
+        }
+    }
+}
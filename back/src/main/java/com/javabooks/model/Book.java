@@ -1,6 +1,9 @@
 package com.javabooks.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.Objects;
+import java.util.function.Supplier;
 
 public class Book {
     private Long id;
@@ -9,6 +12,9 @@ public class Book {
     private Integer cantidadPaginas;
     private String categoria;
     private String contenido;
+    // Carga diferida del contenido desde el almacenamiento del repositorio
+    @JsonIgnore
+    private Supplier<String> contenidoLoader;
 
     public Book() {}
 
@@ -63,11 +69,29 @@ public class Book {
     }
 
     public String getContenido() {
+        if (contenido == null && contenidoLoader != null) {
+            return contenidoLoader.get();
+        }
         return contenido;
     }
 
     public void setContenido(String contenido) {
         this.contenido = contenido;
+        this.contenidoLoader = null;
+    }
+
+    @JsonIgnore
+    public Supplier<String> getContenidoLoader() {
+        return contenidoLoader;
+    }
+
+    /**
+     * Sustituye el contenido en memoria por un cargador diferido.
+     */
+    @JsonIgnore
+    public void setContenidoLoader(Supplier<String> contenidoLoader) {
+        this.contenido = null;
+        this.contenidoLoader = contenidoLoader;
     }
 
     @Override
@@ -0,0 +1,82 @@
+package com.javabooks.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selección de campos de un libro para las respuestas de listado ({@code ?fields=id,titulo}).
+ *
+ * Por defecto se devuelve el resumen, sin {@code contenido}; el contenido se pide
+ * explícitamente en {@code fields} o por {@code /api/book/{id}/content}.
+ */
+public final class BookProjection {
+
+    public static final Set<String> ALL_FIELDS =
+            Set.of("id", "titulo", "autor", "cantidadPaginas", "categoria", "contenido");
+
+    public static final BookProjection SUMMARY =
+            new BookProjection(List.of("id", "titulo", "autor", "cantidadPaginas", "categoria"));
+
+    private final List<String> fields;
+
+    private BookProjection(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public static BookProjection parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return SUMMARY;
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.strip();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!ALL_FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Campo no soportado: " + name);
+            }
+            selected.add(name);
+        }
+        return selected.isEmpty() ? SUMMARY : new BookProjection(new ArrayList<>(selected));
+    }
+
+    public Map<String, Object> apply(Book book) {
+        Map<String, Object> result = new LinkedHashMap<>(fields.size() * 2);
+        for (String field : fields) {
+            result.put(field, value(book, field));
+        }
+        return result;
+    }
+
+    public List<Map<String, Object>> apply(List<Book> books) {
+        List<Map<String, Object>> result = new ArrayList<>(books.size());
+        for (Book book : books) {
+            result.add(apply(book));
+        }
+        return result;
+    }
+
+    private static Object value(Book book, String field) {
+        switch (field) {
+            case "id":
+                return book.getId();
+            case "titulo":
+                return book.getTitulo();
+            case "autor":
+                return book.getAutor();
+            case "cantidadPaginas":
+                return book.getCantidadPaginas();
+            case "categoria":
+                return book.getCategoria();
+            case "contenido":
+                return book.getContenido();
+            default:
+                throw new IllegalArgumentException("Campo no soportado: " + field);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.javabooks.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImportResult {
+    private long importados;
+    private long rechazados;
+    // Solo las primeras filas rechazadas; rechazados lleva la cuenta completa
+    private List<RowError> errores = new ArrayList<>();
+
+    public ImportResult() {}
+
+    // Getters y Setters
+    public long getImportados() {
+        return importados;
+    }
+
+    public void setImportados(long importados) {
+        this.importados = importados;
+    }
+
+    public long getRechazados() {
+        return rechazados;
+    }
+
+    public void setRechazados(long rechazados) {
+        this.rechazados = rechazados;
+    }
+
+    public List<RowError> getErrores() {
+        return errores;
+    }
+
+    public void setErrores(List<RowError> errores) {
+        this.errores = errores;
+    }
+
+    public static class RowError {
+        private long linea;
+        private String mensaje;
+
+        public RowError() {}
+
+        public RowError(long linea, String mensaje) {
+            this.linea = linea;
+            this.mensaje = mensaje;
+        }
+
+        public long getLinea() {
+            return linea;
+        }
+
+        public void setLinea(long linea) {
+            this.linea = linea;
+        }
+
+        public String getMensaje() {
+            return mensaje;
+        }
+
+        public void setMensaje(String mensaje) {
+            this.mensaje = mensaje;
+        }
+    }
+}
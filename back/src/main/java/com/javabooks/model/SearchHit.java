@@ -0,0 +1,70 @@
+package com.javabooks.model;
+
+public class SearchHit {
+    private Long id;
+    private String titulo;
+    private String autor;
+    private String categoria;
+    private float score;
+    private String snippet;
+
+    public SearchHit() {}
+
+    public SearchHit(Book book, float score, String snippet) {
+        this.id = book.getId();
+        this.titulo = book.getTitulo();
+        this.autor = book.getAutor();
+        this.categoria = book.getCategoria();
+        this.score = score;
+        this.snippet = snippet;
+    }
+
+    // Getters y Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitulo() {
+        return titulo;
+    }
+
+    public void setTitulo(String titulo) {
+        this.titulo = titulo;
+    }
+
+    public String getAutor() {
+        return autor;
+    }
+
+    public void setAutor(String autor) {
+        this.autor = autor;
+    }
+
+    public String getCategoria() {
+        return categoria;
+    }
+
+    public void setCategoria(String categoria) {
+        this.categoria = categoria;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public void setScore(float score) {
+        this.score = score;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+}
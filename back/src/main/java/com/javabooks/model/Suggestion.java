@@ -0,0 +1,30 @@
+package com.javabooks.model;
+
+public class Suggestion {
+    private String texto;
+    private String tipo;
+
+    public Suggestion() {}
+
+    public Suggestion(String texto, String tipo) {
+        this.texto = texto;
+        this.tipo = tipo;
+    }
+
+    // Getters y Setters
+    public String getTexto() {
+        return texto;
+    }
+
+    public void setTexto(String texto) {
+        this.texto = texto;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    public void setTipo(String tipo) {
+        this.tipo = tipo;
+    }
+}
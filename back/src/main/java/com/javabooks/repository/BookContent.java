@@ -0,0 +1,50 @@
+package com.javabooks.repository;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * Contenido de un libro en UTF-8, leído por rangos de bytes directamente del
+ * almacenamiento sin construir un String.
+ *
+ * Mientras no se cierre, el almacenamiento mantiene los bytes donde están; hay que
+ * cerrarlo al terminar de enviarlo.
+ */
+public interface BookContent extends AutoCloseable {
+
+    long length();
+
+    /**
+     * Validador fuerte: cambia cada vez que cambia el contenido.
+     */
+    String etag();
+
+    /**
+     * Escribe {@code count} bytes a partir de {@code position} en el canal destino.
+     */
+    void transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+    /**
+     * Fichero donde están los bytes, o null si el contenido no vive en disco o el
+     * fichero está a punto de desaparecer. Permite al contenedor enviarlo con sendfile;
+     * en ese caso el contenido se cierra cuando termina la petición, no antes.
+     */
+    default Path file() {
+        return null;
+    }
+
+    /**
+     * Posición del primer byte del contenido dentro de {@link #file()}.
+     */
+    default long fileOffset() {
+        return 0;
+    }
+
+    /**
+     * Suelta el contenido. Cerrarlo más de una vez no tiene efecto.
+     */
+    @Override
+    default void close() {
+    }
+}
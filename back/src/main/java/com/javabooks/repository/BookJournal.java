@@ -0,0 +1,562 @@
+package com.javabooks.repository;
+
+import com.javabooks.model.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistencia del repositorio en memoria: write-ahead log más snapshots compactados.
+ *
+ * Cada save o delete se serializa en el hilo que escribe y se encola; un único hilo
+ * vuelca a disco todo lo encolado y hace un solo fsync por lote (group commit), así
+ * los escritores concurrentes comparten el coste del fsync en lugar de serializarse.
+ *
+ * El log se divide en segmentos {@code wal-N.log}. Un snapshot rota el log al
+ * segmento N+1, escribe el estado completo en {@code snapshot-N.snap} y borra los
+ * segmentos hasta N. Al arrancar se carga el último snapshot y solo se reproducen
+ * los segmentos posteriores, de modo que la recuperación es proporcional a la cola
+ * del log y no a toda la historia.
+ *
+ * Un error de E/S al escribir o hacer fsync deja el journal fallido: se recorta el
+ * segmento hasta el último fsync correcto, fallan los cambios pendientes y se rechazan
+ * los siguientes. Seguir anexando detrás de un registro roto perdería esos cambios
+ * al reproducir, porque la recuperación se detiene en el primer registro no válido.
+ */
+public class BookJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookJournal.class);
+
+    private static final byte SAVE = 1;
+    private static final byte SAVE_KEEP_CONTENT = 2;
+    private static final byte DELETE = 3;
+    private static final byte SNAPSHOT_END = 4;
+    private static final int MAX_BATCH = 1024;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final Duration snapshotInterval;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // Los escritores comparten el bloqueo de lectura mientras encolan y aplican;
+    // la rotación toma el de escritura para que el corte del log sea consistente con la memoria
+    private final ReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private final AtomicLong recordsSinceSnapshot = new AtomicLong();
+    private final Thread flusher;
+    private final ScheduledExecutorService snapshotter;
+
+    // Solo los usa el hilo flusher
+    private FileChannel segment;
+    private long segmentNumber;
+    // Tamaño del segmento en el último fsync correcto
+    private long synced;
+
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    public BookJournal(Path directory, boolean fsync, Duration snapshotInterval) {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.snapshotInterval = snapshotInterval;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el directorio del journal " + directory, e);
+        }
+        this.flusher = new Thread(this::flushLoop, "book-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "book-journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Recupera el estado (último snapshot más los segmentos posteriores del log),
+     * abre un segmento nuevo para las escrituras y programa los snapshots periódicos.
+     * Devuelve el siguiente id a asignar, o 0 si no había nada que recuperar.
+     */
+    public long open(RecoveryHandler handler, SnapshotSource source) {
+        TreeMap<Long, Path> snapshots = list("snapshot-", ".snap");
+        TreeMap<Long, Path> segments = list("wal-", ".log");
+        long nextId = 0;
+        long covered = 0;
+
+        for (Long number : snapshots.descendingKeySet()) {
+            try {
+                nextId = readSnapshot(snapshots.get(number), handler);
+                covered = number;
+                break;
+            } catch (IOException e) {
+                logger.warn("Snapshot {} ilegible, se prueba con el anterior", snapshots.get(number), e);
+            }
+        }
+
+        long replayed = 0;
+        for (Path file : segments.tailMap(covered, false).values()) {
+            replayed += replaySegment(file, handler);
+        }
+        nextId = Math.max(nextId, handler.maxId() + 1);
+        recordsSinceSnapshot.set(replayed);
+        logger.info("Journal recuperado: snapshot {} y {} registros del log", covered, replayed);
+
+        // Siempre se escribe en un segmento nuevo; una cola rota queda al final del anterior
+        segmentNumber = Math.max(covered, segments.isEmpty() ? 0 : segments.lastKey());
+        openNextSegment();
+        flusher.start();
+
+        long millis = snapshotInterval.toMillis();
+        snapshotter.scheduleWithFixedDelay(() -> {
+            if (recordsSinceSnapshot.get() > 0) {
+                try {
+                    snapshot(source);
+                } catch (RuntimeException e) {
+                    logger.error("Error generando el snapshot del repositorio", e);
+                }
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+        return covered == 0 && replayed == 0 ? 0 : nextId;
+    }
+
+    /**
+     * Bloqueo que los escritores mantienen mientras registran y aplican un cambio.
+     */
+    public Lock appendLock() {
+        return rotationLock.readLock();
+    }
+
+    /**
+     * Registra un save. Con {@code contenido} null se conserva el contenido ya guardado.
+     */
+    public CompletableFuture<Void> logSave(Book book, boolean contentChanged, String contenido) {
+        return enqueue(encode(contentChanged ? SAVE : SAVE_KEEP_CONTENT, book, contenido));
+    }
+
+    public CompletableFuture<Void> logDelete(long id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(DELETE);
+            out.writeLong(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return enqueue(bytes.toByteArray());
+    }
+
+    /**
+     * Rota el log y escribe el estado completo. Los segmentos cubiertos se borran
+     * solo cuando el snapshot ya está en disco.
+     */
+    public synchronized void snapshot(SnapshotSource source) {
+        Pending rotation = new Pending(null, Pending.ROTATE);
+        rotationLock.writeLock().lock();
+        try {
+            queue.add(rotation);
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+        rotation.done.join();
+        long covered = rotation.coveredSegment;
+        recordsSinceSnapshot.set(0);
+
+        Path target = directory.resolve(String.format("snapshot-%010d.snap", covered));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(source.nextId()).flip();
+            writeFully(channel, header);
+            IOException[] failure = {null};
+            source.forEach((book, contenido) -> {
+                if (failure[0] == null) {
+                    try {
+                        writeFully(channel, frame(encode(SAVE, book, contenido)));
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            writeFully(channel, frame(new byte[] {SNAPSHOT_END}));
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir el snapshot " + target, e);
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (var entry : list("wal-", ".log").headMap(covered, true).values()) {
+                Files.deleteIfExists(entry);
+            }
+            for (var entry : list("snapshot-", ".snap").headMap(covered, false).values()) {
+                Files.deleteIfExists(entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo publicar el snapshot " + target, e);
+        }
+        logger.info("Snapshot {} escrito", target.getFileName());
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        snapshotter.shutdownNow();
+        // Sin interrupciones: un FileChannel interrumpido se cierra a mitad de escritura
+        Pending stop = new Pending(null, Pending.STOP);
+        queue.add(stop);
+        try {
+            stop.done.get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("El journal no se cerró limpiamente", e);
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(byte[] record) {
+        if (closed) {
+            throw new IllegalStateException("El journal está cerrado");
+        }
+        Throwable failed = failure;
+        if (failed != null) {
+            throw new IllegalStateException("El journal no acepta escrituras tras un error de E/S", failed);
+        }
+        Pending pending = new Pending(frame(record), Pending.RECORD);
+        queue.add(pending);
+        recordsSinceSnapshot.incrementAndGet();
+        return pending.done;
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - batch.size());
+            running = flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Escribe el lote y hace un único fsync. Devuelve false si el lote contenía la marca de cierre.
+     */
+    private boolean flush(List<Pending> batch) {
+        if (failure != null) {
+            return reject(batch);
+        }
+        List<Pending> written = new ArrayList<>(batch.size());
+        boolean running = true;
+        try {
+            for (Pending pending : batch) {
+                if (pending.kind == Pending.RECORD) {
+                    writeFully(segment, pending.record);
+                    written.add(pending);
+                    continue;
+                }
+                sync(written);
+                pending.coveredSegment = segmentNumber;
+                segment.close();
+                if (pending.kind == Pending.ROTATE) {
+                    // Lo anterior a la marca queda en el segmento que se cierra
+                    openNextSegment();
+                } else {
+                    running = false;
+                }
+                pending.done.complete(null);
+            }
+            sync(written);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error escribiendo el journal; no se aceptan más escrituras", e);
+            failure = e;
+            discardTail();
+            return reject(batch);
+        }
+        return running;
+    }
+
+    /**
+     * Falla los cambios del lote que aún no estaban confirmados. Devuelve false si el
+     * lote contenía la marca de cierre.
+     */
+    private boolean reject(List<Pending> batch) {
+        boolean running = true;
+        for (Pending pending : batch) {
+            if (pending.kind == Pending.STOP) {
+                pending.done.complete(null);
+                running = false;
+            } else {
+                pending.done.completeExceptionally(failure);
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Quita del segmento lo escrito desde el último fsync, que puede acabar en un registro a medias.
+     */
+    private void discardTail() {
+        try {
+            if (segment.isOpen()) {
+                segment.truncate(synced);
+                segment.force(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("No se pudo recortar el segmento {} tras el error", segmentNumber, e);
+        }
+    }
+
+    private void sync(List<Pending> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        if (fsync) {
+            segment.force(false);
+        }
+        synced = segment.position();
+        for (Pending pending : written) {
+            pending.done.complete(null);
+        }
+        written.clear();
+    }
+
+    private void openNextSegment() {
+        segmentNumber++;
+        Path file = directory.resolve(String.format("wal-%010d.log", segmentNumber));
+        try {
+            segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            synced = segment.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el segmento " + file, e);
+        }
+    }
+
+    private long readSnapshot(Path file, RecoveryHandler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long nextId = in.readLong();
+            byte[] record;
+            while ((record = readFrame(in)) != null) {
+                if (record[0] == SNAPSHOT_END) {
+                    return nextId;
+                }
+                apply(record, handler);
+            }
+            throw new EOFException("Snapshot incompleto: " + file);
+        }
+    }
+
+    private long replaySegment(Path file, RecoveryHandler handler) {
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] record;
+            while ((record = readFrame(in)) != null) {
+                apply(record, handler);
+                count++;
+            }
+        } catch (IOException e) {
+            // Cola rota por una caída a mitad de escritura: se descarta desde ese punto
+            logger.warn("Registro incompleto en {} tras {} registros; se ignora el resto", file, count);
+        }
+        return count;
+    }
+
+    private static void apply(byte[] record, RecoveryHandler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        if (type == DELETE) {
+            handler.onDelete(in.readLong());
+            return;
+        }
+        Book book = new Book();
+        book.setId(in.readLong());
+        book.setTitulo(readString(in));
+        book.setAutor(readString(in));
+        book.setCantidadPaginas(in.readBoolean() ? in.readInt() : null);
+        book.setCategoria(readString(in));
+        if (type == SAVE) {
+            book.setContenido(readString(in));
+        }
+        handler.onSave(book, type == SAVE);
+    }
+
+    private static byte[] encode(byte type, Book book, String contenido) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + (contenido != null ? contenido.length() : 0));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeLong(book.getId());
+            writeString(out, book.getTitulo());
+            writeString(out, book.getAutor());
+            out.writeBoolean(book.getCantidadPaginas() != null);
+            if (book.getCantidadPaginas() != null) {
+                out.writeInt(book.getCantidadPaginas());
+            }
+            writeString(out, book.getCategoria());
+            if (type == SAVE) {
+                writeString(out, contenido);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Registro enmarcado: longitud, CRC32C y cuerpo. El CRC detecta escrituras a medias.
+     */
+    private static ByteBuffer frame(byte[] record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + record.length);
+        buffer.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+        return buffer;
+    }
+
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        int expected = in.readInt();
+        if (length <= 0) {
+            throw new IOException("Longitud de registro no válida: " + length);
+        }
+        byte[] record = in.readNBytes(length);
+        if (record.length != length) {
+            throw new EOFException("Registro truncado");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("CRC no válido");
+        }
+        return record;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private TreeMap<Long, Path> list(String prefix, String suffix) {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), file);
+                } catch (NumberFormatException e) {
+                    logger.debug("Fichero ignorado en el journal: {}", name);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo listar el journal " + directory, e);
+        }
+        return files;
+    }
+
+    /**
+     * Receptor de los cambios reproducidos durante la recuperación.
+     */
+    public interface RecoveryHandler {
+        /**
+         * @param hasContent false si el registro conserva el contenido guardado anteriormente
+         */
+        void onSave(Book book, boolean hasContent);
+
+        void onDelete(long id);
+
+        long maxId();
+    }
+
+    /**
+     * Estado del repositorio que se vuelca en un snapshot.
+     */
+    public interface SnapshotSource {
+        long nextId();
+
+        void forEach(BookContentConsumer consumer);
+    }
+
+    @FunctionalInterface
+    public interface BookContentConsumer {
+        void accept(Book book, String contenido);
+    }
+
+    private static final class Pending {
+        static final int RECORD = 0;
+        static final int ROTATE = 1;
+        static final int STOP = 2;
+
+        final ByteBuffer record;
+        final int kind;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        volatile long coveredSegment;
+
+        Pending(ByteBuffer record, int kind) {
+            this.record = record;
+            this.kind = kind;
+        }
+    }
+}
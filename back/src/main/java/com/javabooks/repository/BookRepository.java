@@ -1,69 +1,541 @@
 package com.javabooks.repository;
 
 import com.javabooks.model.Book;
+import com.javabooks.model.CursorPage;
+import com.javabooks.model.SearchHit;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
+/**
+ * Fachada del catálogo sobre un {@link BookStorage}. Asigna los ids, serializa las
+ * escrituras por id y mantiene lo que no depende del motor: el contenido, el índice
+ * de texto completo, las sugerencias y los índices de ordenación del listado paginado.
+ *
+ * Cada escritura sube la versión de modificación del catálogo y la de las categorías
+ * que toca (la anterior y la nueva del libro). Todas salen de la misma secuencia, así
+ * el máximo de las versiones de varias categorías también crece con cada cambio en
+ * alguna de ellas. Se sube después de aplicar el cambio: quien lea la versión antes
+ * que los datos nunca asocia datos viejos a una versión nueva.
+ */
 @Repository
 public class BookRepository {
-    
-    private final Map<Long, Book> books = new ConcurrentHashMap<>();
+
+    private static final int LOCK_STRIPES = 64;
+    private static final int PAGE_FETCH = 64;
+
+    private final BookStorage storage;
     private final AtomicLong idGenerator = new AtomicLong(1);
+    // El contenido vive aparte; los Book guardados solo tienen un cargador diferido
+    private final ContentStore contentStore;
+    // Solo en modo durable; sin journal el catálogo se pierde al reiniciar
+    private final BookJournal journal;
+    // Bloqueos por franjas de id: un lote bloquea solo las franjas que toca
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    // Claves con las que se indexó cada libro; el Book es mutable y no sirve para desindexar
+    private final Map<Long, IndexKeys> indexedKeys = new ConcurrentHashMap<>();
+    private final FullTextIndex contenidoIndex = new FullTextIndex();
+    private final PrefixIndex tituloPrefixIndex = new PrefixIndex();
+    private final PrefixIndex autorPrefixIndex = new PrefixIndex();
+    // Un índice ordenado por cada campo de ordenación del listado paginado
+    private final Map<BookSort, SortIndex<String>> sortIndexes = new EnumMap<>(BookSort.class);
+
+    // Versiones de modificación; epoch distingue las de este proceso de las de uno anterior
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong versionSequence = new AtomicLong();
+    private final AtomicReference<Version> version = new AtomicReference<>(new Version(epoch, 0, epoch));
+    private final Map<String, Version> categoryVersions = new ConcurrentHashMap<>();
 
     public BookRepository() {
-        // Datos de prueba
-        save(new Book(null, "Clean Code", "Robert C. Martin", 464, "PROGRAMMING", "Contenido del libro Clean Code"));
-        save(new Book(null, "Effective Java", "Joshua Bloch", 416, "PROGRAMMING", "Contenido del libro Effective Java"));
-        save(new Book(null, "The Pragmatic Programmer", "David Thomas", 352, "PROGRAMMING", "Contenido del libro The Pragmatic Programmer"));
-        save(new Book(null, "Design Patterns", "Gang of Four", 395, "PROGRAMMING", "Contenido del libro Design Patterns"));
-        save(new Book(null, "Spring in Action", "Craig Walls", 520, "FRAMEWORKS", "Contenido del libro Spring in Action"));
-        save(new Book(null, "Microservices Patterns", "Chris Richardson", 518, "ARCHITECTURE", "Contenido del libro Microservices Patterns"));
-        save(new Book(null, "Domain-Driven Design", "Eric Evans", 560, "ARCHITECTURE", "Contenido del libro Domain-Driven Design"));
+        this(new HeapContentStore());
+    }
+
+    public BookRepository(ContentStore contentStore) {
+        this(new InMemoryBookStorage(), contentStore, Optional.empty());
+    }
+
+    @Autowired
+    public BookRepository(BookStorage storage, ContentStore contentStore, Optional<BookJournal> journal) {
+        this.storage = storage;
+        this.contentStore = contentStore;
+        this.journal = journal.orElse(null);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        for (BookSort sort : BookSort.values()) {
+            sortIndexes.put(sort, new SortIndex<>());
+        }
+
+        if (this.journal != null) {
+            long nextId = this.journal.open(new Recovery(), new Snapshot());
+            if (nextId > 0) {
+                idGenerator.set(nextId);
+                return;
+            }
+        } else if (storage.count() > 0) {
+            // Motor con datos de una ejecución anterior: solo hay que reconstruir lo derivado
+            storage.scan((book, contenido) -> {
+                idGenerator.accumulateAndGet(book.getId() + 1, Math::max);
+                apply(book.getId(), book, true, contenido);
+            });
+            return;
+        }
+
+        // Datos de prueba, solo si no había nada guardado
+        saveAll(List.of(
+                new Book(null, "Clean Code", "Robert C. Martin", 464, "PROGRAMMING", "Contenido del libro Clean Code"),
+                new Book(null, "Effective Java", "Joshua Bloch", 416, "PROGRAMMING", "Contenido del libro Effective Java"),
+                new Book(null, "The Pragmatic Programmer", "David Thomas", 352, "PROGRAMMING", "Contenido del libro The Pragmatic Programmer"),
+                new Book(null, "Design Patterns", "Gang of Four", 395, "PROGRAMMING", "Contenido del libro Design Patterns"),
+                new Book(null, "Spring in Action", "Craig Walls", 520, "FRAMEWORKS", "Contenido del libro Spring in Action"),
+                new Book(null, "Microservices Patterns", "Chris Richardson", 518, "ARCHITECTURE", "Contenido del libro Microservices Patterns"),
+                new Book(null, "Domain-Driven Design", "Eric Evans", 560, "ARCHITECTURE", "Contenido del libro Domain-Driven Design")));
     }
 
     public List<Book> findAll() {
-        return new ArrayList<>(books.values());
+        return attach(storage.findAll());
+    }
+
+    /**
+     * Libros visibles con esos permisos (categorías y autores exactos). Solo se
+     * visitan las particiones de las categorías permitidas.
+     */
+    public List<Book> findAll(Set<String> categorias, Set<String> autores) {
+        return attach(storage.findVisible(categorias, autores));
+    }
+
+    /**
+     * Página de libros ordenada por el campo pedido, a partir del cursor (exclusivo).
+     * Recorre el índice ordenado desde la posición del cursor, sin ordenar el catálogo,
+     * y pide los libros al motor por bloques de ids.
+     */
+    public CursorPage<Book> findPage(BookSort sort, boolean descending, String cursor, int size, Predicate<Book> filter) {
+        SortIndex.Key<String> after = cursor == null || cursor.isBlank() ? null : decodeCursor(cursor, sort, descending);
+
+        List<Book> items = new ArrayList<>(size);
+        SortIndex.Key<String> last = null;
+        boolean hasMore = false;
+        Iterator<SortIndex.Key<String>> keys = sortIndexes.get(sort).after(after, descending).iterator();
+        List<SortIndex.Key<String>> chunk = new ArrayList<>(PAGE_FETCH);
+        while (!hasMore && keys.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < PAGE_FETCH && keys.hasNext()) {
+                chunk.add(keys.next());
+            }
+            Map<Long, Book> found = new HashMap<>();
+            for (Book book : storage.findAllById(chunk.stream().map(SortIndex.Key::id).toList())) {
+                found.put(book.getId(), book);
+            }
+            for (SortIndex.Key<String> key : chunk) {
+                Book book = found.get(key.id());
+                if (book == null || !filter.test(book)) {
+                    continue;
+                }
+                if (items.size() == size) {
+                    hasMore = true;
+                    break;
+                }
+                items.add(attach(book));
+                last = key;
+            }
+        }
+        return new CursorPage<>(items, hasMore ? encodeCursor(last, sort, descending) : null);
     }
 
     public Optional<Book> findById(Long id) {
-        return Optional.ofNullable(books.get(id));
+        return storage.findById(id).map(this::attach);
+    }
+
+    public Optional<BookContent> findContent(Long id) {
+        return indexedKeys.containsKey(id) ? contentStore.content(id) : Optional.empty();
     }
 
     public Optional<Book> findByTitulo(String titulo) {
-        return books.values().stream()
-                .filter(book -> book.getTitulo().equalsIgnoreCase(titulo))
-                .findFirst();
+        return storage.findByTitulo(TextFolding.fold(titulo)).stream()
+                .findFirst()
+                .map(this::attach);
     }
 
     public List<Book> findByAutor(String autor) {
-        return books.values().stream()
-                .filter(book -> book.getAutor().equalsIgnoreCase(autor))
-                .collect(Collectors.toList());
+        return attach(storage.findByAutor(TextFolding.fold(autor)));
+    }
+
+    /**
+     * Libros del autor restringidos a las categorías permitidas, sin materializar los demás.
+     */
+    public List<Book> findByAutor(String autor, Set<String> categorias) {
+        return attach(storage.findByAutor(TextFolding.fold(autor), categorias));
     }
 
     public List<Book> findByCategoria(String categoria) {
-        return books.values().stream()
-                .filter(book -> book.getCategoria().equalsIgnoreCase(categoria))
-                .collect(Collectors.toList());
+        return attach(storage.findByCategoria(TextFolding.fold(categoria)));
     }
 
-    public Book save(Book book) {
-        if (book.getId() == null) {
-            book.setId(idGenerator.getAndIncrement());
+    /**
+     * Búsqueda de texto completo sobre el contenido, ordenada por BM25.
+     * Solo se consideran los libros que cumplen el filtro.
+     */
+    public List<SearchHit> search(String query, int limit, Predicate<Book> filter) {
+        // El índice pide las tandas ya fuera de su bloqueo; cada tanda es una lectura al motor
+        Map<Long, Book> seen = new HashMap<>();
+        List<FullTextIndex.Match> matches = contenidoIndex.search(query, limit, ids -> {
+            Map<Long, Book> visible = visible(ids, filter);
+            seen.putAll(visible);
+            return visible.keySet();
+        });
+        List<SearchHit> hits = new ArrayList<>(matches.size());
+        for (FullTextIndex.Match match : matches) {
+            Book book = seen.get(match.bookId());
+            hits.add(new SearchHit(book, match.score(), FullTextIndex.snippet(attach(book).getContenido(), query)));
         }
-        books.put(book.getId(), book);
+        return hits;
+    }
+
+    /**
+     * Títulos que tienen alguna palabra que empieza por el prefijo, entre los libros que cumplen el filtro.
+     */
+    public List<String> suggestTitulos(String prefix, int limit, Predicate<Book> filter) {
+        return tituloPrefixIndex.complete(prefix, limit, ids -> texts(visible(ids, filter), Book::getTitulo));
+    }
+
+    /**
+     * Autores que tienen alguna palabra que empieza por el prefijo, entre los libros que cumplen el filtro.
+     */
+    public List<String> suggestAutores(String prefix, int limit, Predicate<Book> filter) {
+        return autorPrefixIndex.complete(prefix, limit, ids -> texts(visible(ids, filter), Book::getAutor));
+    }
+
+    // Libros de la tanda que existen y cumplen el filtro, con una sola consulta al motor
+    private Map<Long, Book> visible(List<Long> ids, Predicate<Book> filter) {
+        Map<Long, Book> visible = new HashMap<>();
+        for (Book book : storage.findAllById(ids)) {
+            if (filter.test(book)) {
+                visible.put(book.getId(), book);
+            }
+        }
+        return visible;
+    }
+
+    private static Map<Long, String> texts(Map<Long, Book> books, Function<Book, String> text) {
+        Map<Long, String> texts = new HashMap<>();
+        books.forEach((id, book) -> texts.put(id, text.apply(book)));
+        return texts;
+    }
+
+    public Book save(Book book) {
+        saveAll(List.of(book));
         return book;
     }
 
+    /**
+     * Guarda un lote con una sola escritura en el motor. Se bloquean las franjas de
+     * todos los ids del lote, así el motor y los índices derivados quedan en el mismo
+     * orden que el journal. En modo durable el cambio se aplica solo cuando el journal
+     * lo ha confirmado: si falla, la memoria queda como estaba. La espera al fsync es con
+     * las franjas tomadas, los escritores de otras franjas comparten el mismo group commit.
+     */
+    public List<Book> saveAll(List<Book> batch) {
+        for (Book book : batch) {
+            if (book.getId() == null) {
+                book.setId(idGenerator.getAndIncrement());
+            } else {
+                idGenerator.accumulateAndGet(book.getId() + 1, Math::max);
+            }
+        }
+
+        List<CompletableFuture<Void>> logged = new ArrayList<>();
+        List<Lock> held = lock(batch.stream().map(Book::getId).toList());
+        try {
+            List<BookStorage.Write> writes = new ArrayList<>(batch.size());
+            Set<Long> inBatch = new HashSet<>();
+            for (Book book : batch) {
+                Long id = book.getId();
+                // Un libro leído del repositorio y guardado de nuevo conserva su contenido almacenado
+                boolean contentChanged = !(book.getContenidoLoader() instanceof StoredContent stored
+                        && stored.store() == contentStore && stored.id() == id);
+                String contenido = contentChanged ? book.getContenido() : null;
+                boolean isNew = !indexedKeys.containsKey(id) && inBatch.add(id);
+                writes.add(new BookStorage.Write(book, isNew, contentChanged, contenido));
+                if (journal != null) {
+                    logged.add(journal.logSave(book, contentChanged, contenido));
+                }
+            }
+            awaitDurable(logged);
+            storage.saveAll(writes);
+            for (BookStorage.Write write : writes) {
+                apply(write.book().getId(), write.book(), write.contentChanged(), write.contenido());
+            }
+        } finally {
+            unlock(held);
+        }
+        return batch;
+    }
+
     public boolean deleteById(Long id) {
-        return books.remove(id) != null;
+        boolean removed;
+        List<Lock> held = lock(List.of(id));
+        try {
+            if (journal != null) {
+                if (!indexedKeys.containsKey(id)) {
+                    return false;
+                }
+                awaitDurable(List.of(journal.logDelete(id)));
+            }
+            removed = storage.deleteById(id);
+            if (removed) {
+                IndexKeys previous = unindex(id, true);
+                contentStore.remove(id);
+                touch(previous, null);
+            }
+        } finally {
+            unlock(held);
+        }
+        return removed;
     }
 
     public boolean existsById(Long id) {
-        return books.containsKey(id);
+        return indexedKeys.containsKey(id);
+    }
+
+    /**
+     * Versión de modificación de todo el catálogo.
+     */
+    public Version version() {
+        return version.get();
+    }
+
+    /**
+     * Versión de modificación de esas categorías: la mayor de ellas. Las que nunca se
+     * modificaron cuentan como la versión 0 del arranque.
+     */
+    public Version version(Set<String> categorias) {
+        Version latest = new Version(epoch, 0, epoch);
+        for (String categoria : categorias) {
+            latest = Version.max(latest, categoryVersions.get(categoria));
+        }
+        return latest;
+    }
+
+    void snapshot() {
+        journal.snapshot(new Snapshot());
+    }
+
+    /**
+     * Bloquea el journal (compartido) y las franjas de los ids en orden ascendente para no interbloquear lotes.
+     */
+    private List<Lock> lock(List<Long> ids) {
+        List<Lock> held = new ArrayList<>();
+        if (journal != null) {
+            Lock appendLock = journal.appendLock();
+            appendLock.lock();
+            held.add(appendLock);
+        }
+        BitSet stripes = new BitSet(LOCK_STRIPES);
+        for (Long id : ids) {
+            stripes.set(Math.floorMod(Long.hashCode(id), LOCK_STRIPES));
+        }
+        for (int stripe = stripes.nextSetBit(0); stripe >= 0; stripe = stripes.nextSetBit(stripe + 1)) {
+            locks[stripe].lock();
+            held.add(locks[stripe]);
+        }
+        return held;
+    }
+
+    private static void unlock(List<Lock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+    }
+
+    private void apply(Long id, Book book, boolean contentChanged, String contenido) {
+        IndexKeys previous = unindex(id, contentChanged);
+        if (contentChanged) {
+            contentStore.put(id, contenido);
+            contenidoIndex.index(id, contenido);
+        }
+        book.setContenidoLoader(new StoredContent(contentStore, id));
+        index(id, book);
+        touch(previous, book.getCategoria());
+    }
+
+    /**
+     * Sube la versión global y la de la categoría anterior y la nueva del libro.
+     */
+    private void touch(IndexKeys previous, String categoria) {
+        Version next = new Version(epoch, versionSequence.incrementAndGet(), System.currentTimeMillis());
+        if (previous != null && previous.categoria() != null) {
+            categoryVersions.merge(previous.categoria(), next, Version::max);
+        }
+        if (categoria != null) {
+            categoryVersions.merge(categoria, next, Version::max);
+        }
+        // Dos escritores en franjas distintas pueden llegar aquí en cualquier orden
+        version.accumulateAndGet(next, Version::max);
+    }
+
+    /**
+     * Los motores persistentes devuelven copias sin contenido; se enlazan al almacén de contenido.
+     */
+    private Book attach(Book book) {
+        if (book.getContenidoLoader() == null) {
+            book.setContenidoLoader(new StoredContent(contentStore, book.getId()));
+        }
+        return book;
+    }
+
+    private List<Book> attach(List<Book> books) {
+        books.forEach(this::attach);
+        return books;
+    }
+
+    private static void awaitDurable(List<CompletableFuture<Void>> logged) {
+        for (CompletableFuture<Void> future : logged) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException("No se pudo persistir el cambio en el journal", e.getCause());
+            }
+        }
+    }
+
+    private void index(Long id, Book book) {
+        IndexKeys keys = new IndexKeys(
+                TextFolding.fold(book.getTitulo()),
+                TextFolding.fold(book.getAutor()),
+                book.getCantidadPaginas(),
+                book.getCategoria());
+        indexedKeys.put(id, keys);
+        tituloPrefixIndex.add(keys.titulo(), id);
+        autorPrefixIndex.add(keys.autor(), id);
+        sortIndexes.forEach((sort, index) -> index.add(sortValue(sort, keys), id));
+    }
+
+    private IndexKeys unindex(Long id, boolean contentChanged) {
+        IndexKeys keys = indexedKeys.remove(id);
+        if (keys != null) {
+            tituloPrefixIndex.remove(keys.titulo(), id);
+            autorPrefixIndex.remove(keys.autor(), id);
+            sortIndexes.forEach((sort, index) -> index.remove(sortValue(sort, keys), id));
+        }
+        if (contentChanged && keys != null) {
+            // Todavía con el contenido anterior en el almacén: de él salen los términos a descontar
+            contenidoIndex.remove(id, contentStore.read(id));
+        }
+        return keys;
+    }
+
+    /**
+     * Valor de ordenación como texto comparable: los números se desplazan y rellenan
+     * con ceros para que el orden lexicográfico coincida con el numérico.
+     */
+    private static String sortValue(BookSort sort, IndexKeys keys) {
+        switch (sort) {
+            case TITULO:
+                return keys.titulo();
+            case AUTOR:
+                return keys.autor();
+            case CANTIDAD_PAGINAS:
+                return keys.paginas() == null ? null
+                        : String.format("%010d", (long) keys.paginas() - Integer.MIN_VALUE);
+            default:
+                return null;
+        }
+    }
+
+    private static String encodeCursor(SortIndex.Key<String> key, BookSort sort, boolean descending) {
+        String raw = sort.name() + ":" + (descending ? "d" : "a") + ":" + key.id() + ":"
+                + (key.value() == null ? "" : "v" + key.value());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SortIndex.Key<String> decodeCursor(String cursor, BookSort sort, boolean descending) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 4);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor no válido");
+        }
+        if (parts.length != 4 || !parts[0].equals(sort.name()) || !parts[1].equals(descending ? "d" : "a")) {
+            throw new IllegalArgumentException("Cursor no válido para este orden");
+        }
+        try {
+            return new SortIndex.Key<>(parts[3].isEmpty() ? null : parts[3].substring(1), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor no válido");
+        }
+    }
+
+    /**
+     * Reproduce el journal directamente sobre el motor y los índices, sin volver a registrarlo.
+     */
+    private final class Recovery implements BookJournal.RecoveryHandler {
+        private long maxId;
+
+        @Override
+        public void onSave(Book book, boolean hasContent) {
+            maxId = Math.max(maxId, book.getId());
+            boolean isNew = !indexedKeys.containsKey(book.getId());
+            storage.saveAll(List.of(new BookStorage.Write(book, isNew, hasContent, book.getContenido())));
+            apply(book.getId(), book, hasContent, book.getContenido());
+        }
+
+        @Override
+        public void onDelete(long id) {
+            if (storage.deleteById(id)) {
+                IndexKeys previous = unindex(id, true);
+                contentStore.remove(id);
+                touch(previous, null);
+            }
+        }
+
+        @Override
+        public long maxId() {
+            return maxId;
+        }
+    }
+
+    private final class Snapshot implements BookJournal.SnapshotSource {
+        @Override
+        public long nextId() {
+            return idGenerator.get();
+        }
+
+        @Override
+        public void forEach(BookJournal.BookContentConsumer consumer) {
+            storage.scan(consumer::accept);
+        }
+    }
+
+    /**
+     * Versión de modificación y momento del cambio que la produjo. Solo se comparan
+     * versiones con el mismo {@code epoch}.
+     */
+    public record Version(long epoch, long number, long lastModified) {
+
+        static Version max(Version a, Version b) {
+            return b == null || a.number() >= b.number() ? a : b;
+        }
+    }
+
+    private record IndexKeys(String titulo, String autor, Integer paginas, String categoria) {}
+
+    private record StoredContent(ContentStore store, long id) implements Supplier<String> {
+        @Override
+        public String get() {
+            return store.read(id);
+        }
     }
 }
\ No newline at end of file
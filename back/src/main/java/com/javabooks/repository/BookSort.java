@@ -0,0 +1,33 @@
+package com.javabooks.repository;
+
+/**
+ * Campos por los que se puede ordenar el listado paginado de libros.
+ */
+public enum BookSort {
+    ID("id"),
+    TITULO("titulo"),
+    AUTOR("autor"),
+    CANTIDAD_PAGINAS("cantidadPaginas");
+
+    private final String param;
+
+    BookSort(String param) {
+        this.param = param;
+    }
+
+    public String getParam() {
+        return param;
+    }
+
+    public static BookSort fromParam(String param) {
+        if (param == null || param.isBlank()) {
+            return ID;
+        }
+        for (BookSort sort : values()) {
+            if (sort.param.equalsIgnoreCase(param)) {
+                return sort;
+            }
+        }
+        throw new IllegalArgumentException("Campo de ordenación no soportado: " + param);
+    }
+}
@@ -0,0 +1,68 @@
+package com.javabooks.repository;
+
+import com.javabooks.model.Book;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Motor de almacenamiento del catálogo detrás de {@link BookRepository}.
+ *
+ * El repositorio asigna los ids, serializa las escrituras por id y mantiene los
+ * índices derivados (texto completo, sugerencias y orden). El motor guarda los
+ * libros y resuelve las búsquedas exactas por título, autor y categoría sobre las
+ * claves ya plegadas con {@link TextFolding}.
+ */
+public interface BookStorage {
+
+    Optional<Book> findById(long id);
+
+    /**
+     * Libros con esos ids; los que no existen se omiten y el orden no está garantizado.
+     */
+    List<Book> findAllById(List<Long> ids);
+
+    List<Book> findAll();
+
+    List<Book> findByTitulo(String titulo);
+
+    List<Book> findByAutor(String autor);
+
+    List<Book> findByCategoria(String categoria);
+
+    /**
+     * Libros cuya categoría y autor (valores exactos) están en los conjuntos dados.
+     * Solo se recorren las particiones de esas categorías.
+     */
+    List<Book> findVisible(Set<String> categorias, Set<String> autores);
+
+    /**
+     * Libros del autor (clave plegada) dentro de las categorías dadas (valores exactos).
+     */
+    List<Book> findByAutor(String autor, Set<String> categorias);
+
+    /**
+     * Aplica las escrituras en orden. Un motor transaccional las confirma juntas.
+     */
+    void saveAll(List<Write> writes);
+
+    boolean deleteById(long id);
+
+    long count();
+
+    /**
+     * Recorre todos los libros con su contenido. Lo usa el repositorio al arrancar
+     * para reconstruir los índices derivados sobre un motor que ya tenía datos.
+     */
+    void scan(BiConsumer<Book, String> consumer);
+
+    /**
+     * Una escritura preparada por el repositorio.
+     *
+     * @param isNew el id no existía en el catálogo
+     * @param contentChanged si es false se conserva el contenido guardado y {@code contenido} es null
+     */
+    record Write(Book book, boolean isNew, boolean contentChanged, String contenido) {}
+}
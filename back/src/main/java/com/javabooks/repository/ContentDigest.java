@@ -0,0 +1,30 @@
+package com.javabooks.repository;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Huella del contenido para su ETag: los primeros 64 bits del SHA-256 de los bytes.
+ *
+ * Depende solo de los bytes, así un ETag que un cliente guardó antes de un reinicio
+ * sigue nombrando el mismo contenido aunque la recuperación lo vuelva a guardar en
+ * otro orden.
+ */
+final class ContentDigest {
+
+    private ContentDigest() {
+    }
+
+    static long of(byte[] bytes) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(bytes)).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String etag(long id, long digest) {
+        return id + "-" + Long.toHexString(digest);
+    }
+}
@@ -0,0 +1,30 @@
+package com.javabooks.repository;
+
+import java.util.Optional;
+
+/**
+ * Almacenamiento del contenido de los libros, separado de sus metadatos.
+ *
+ * El repositorio guarda aquí el {@code contenido} al hacer save y los libros solo
+ * conservan una referencia para cargarlo bajo demanda.
+ */
+public interface ContentStore extends AutoCloseable {
+
+    void put(long id, String contenido);
+
+    /**
+     * Contenido completo como texto, o null si el libro no tiene contenido guardado.
+     */
+    String read(long id);
+
+    /**
+     * Contenido para enviar por rangos. Quien lo recibe lo cierra al terminar.
+     */
+    Optional<BookContent> content(long id);
+
+    void remove(long id);
+
+    @Override
+    default void close() {
+    }
+}
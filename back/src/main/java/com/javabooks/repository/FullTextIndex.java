@@ -0,0 +1,515 @@
+package com.javabooks.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Índice invertido sobre el contenido de los libros con ranking BM25.
+ *
+ * Cada documento recibe un ordinal interno creciente, de modo que las listas de
+ * postings solo crecen por el final y se guardan como deltas en varint (delta del
+ * ordinal + frecuencia del término). Las actualizaciones marcan el ordinal viejo
+ * como borrado y reindexan con uno nuevo; cuando los borrados superan una fracción
+ * del índice se compacta reescribiendo las listas. Las estadísticas del ranking
+ * (número de documentos y frecuencia de documento de cada término) cuentan solo
+ * los documentos vivos: al quitar un documento se vuelven a sacar sus términos del
+ * texto que se indexó, que el llamante pasa a {@link #remove}. Así no hace falta
+ * guardar por documento las listas en las que aparece.
+ */
+class FullTextIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final double COMPACT_RATIO = 0.25;
+    private static final int SNIPPET_LENGTH = 160;
+    // Candidatos por llamada al filtro: la primera tanda cubre el límite, luego se dobla
+    private static final int MIN_FILTER_BATCH = 16;
+    private static final int MAX_FILTER_BATCH = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final OrdinalMap ordinalByBook = new OrdinalMap();
+    private long[] bookIds = new long[1024];
+    private int[] lengths = new int[1024];
+    private final BitSet deleted = new BitSet();
+    private int docCount;
+    private int deletedCount;
+    private long totalLength;
+    // Acumuladores de puntuación reutilizados entre búsquedas; vuelven a cero tras cada una
+    private final Queue<Scratch> scratch = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Indexa un libro que no está en el índice; para reindexarlo, antes {@link #remove}.
+     */
+    void index(long bookId, String text) {
+        Map<String, Integer> frequencies = termFrequencies(text);
+        int length = 0;
+        for (int tf : frequencies.values()) {
+            length += tf;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (ordinalByBook.get(bookId) >= 0) {
+                throw new IllegalStateException("El libro " + bookId + " ya está indexado");
+            }
+            int ordinal = docCount++;
+            ensureCapacity(docCount);
+            bookIds[ordinal] = bookId;
+            lengths[ordinal] = length;
+            totalLength += length;
+            ordinalByBook.put(bookId, ordinal);
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new PostingList()).add(ordinal, entry.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita un libro. {@code indexedText} tiene que ser el texto con el que se indexó:
+     * de él salen los términos cuya frecuencia de documento hay que descontar.
+     */
+    void remove(long bookId, String indexedText) {
+        Set<String> terms = termFrequencies(indexedText).keySet();
+        lock.writeLock().lock();
+        try {
+            removeLocked(bookId, terms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve los mejores {@code limit} libros para la consulta, de mayor a menor
+     * puntuación. El filtro se aplica antes del corte, así los libros que el usuario
+     * no puede ver no ocupan posiciones del top. Recibe los candidatos por tandas en
+     * orden de puntuación y la búsqueda para en cuanto hay {@code limit} aceptados:
+     * con un término común no se filtran todos. Se evalúa fuera del bloqueo del
+     * índice, sobre una copia de los candidatos: puede consultar el motor sin frenar
+     * a los escritores.
+     */
+    List<Match> search(String query, int limit, Function<List<Long>, Set<Long>> filter) {
+        Set<String> terms = queryTerms(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        long[] candidates;
+        float[] candidateScores;
+        Scratch buffers = scratch.poll();
+        lock.readLock().lock();
+        try {
+            int liveCount = docCount - deletedCount;
+            if (liveCount == 0) {
+                return List.of();
+            }
+            if (buffers == null || buffers.scores.length < docCount) {
+                buffers = new Scratch(Math.max(docCount, bookIds.length));
+            }
+            float[] scores = buffers.scores;
+            float avgLength = (float) totalLength / liveCount;
+            int touchedCount = 0;
+
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list == null || list.liveDocFreq == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (liveCount - list.liveDocFreq + 0.5) / (list.liveDocFreq + 0.5));
+                PostingList.Cursor cursor = list.cursor();
+                while (cursor.next()) {
+                    int ordinal = cursor.ordinal;
+                    if (deleted.get(ordinal)) {
+                        continue;
+                    }
+                    float tf = cursor.frequency;
+                    float norm = K1 * (1 - B + B * lengths[ordinal] / avgLength);
+                    if (scores[ordinal] == 0f) {
+                        if (touchedCount == buffers.touched.length) {
+                            buffers.touched = Arrays.copyOf(buffers.touched, touchedCount * 2);
+                        }
+                        buffers.touched[touchedCount++] = ordinal;
+                    }
+                    scores[ordinal] += (float) (idf * tf * (K1 + 1) / (tf + norm));
+                }
+            }
+
+            candidates = new long[touchedCount];
+            candidateScores = new float[touchedCount];
+            for (int i = 0; i < touchedCount; i++) {
+                int ordinal = buffers.touched[i];
+                candidates[i] = bookIds[ordinal];
+                candidateScores[i] = scores[ordinal];
+                scores[ordinal] = 0f;
+            }
+        } finally {
+            lock.readLock().unlock();
+            if (buffers != null) {
+                scratch.offer(buffers);
+            }
+        }
+
+        // Puntuación (positiva: sus bits ordenan como el float) y posición en un long,
+        // para ordenar sin cajas; a igual puntuación, el orden de indexación
+        long[] ranked = new long[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            ranked[i] = (long) Float.floatToIntBits(candidateScores[i]) << 32 | (candidates.length - 1 - i);
+        }
+        Arrays.sort(ranked);
+
+        List<Match> result = new ArrayList<>(Math.min(limit, candidates.length));
+        int from = ranked.length;
+        int batchSize = Math.max(limit, MIN_FILTER_BATCH);
+        while (from > 0 && result.size() < limit) {
+            int to = Math.max(from - batchSize, 0);
+            List<Long> batch = new ArrayList<>(from - to);
+            for (int r = from - 1; r >= to; r--) {
+                batch.add(candidates[candidates.length - 1 - (int) ranked[r]]);
+            }
+            Set<Long> accepted = filter.apply(batch);
+            for (int r = from - 1; r >= to && result.size() < limit; r--) {
+                int i = candidates.length - 1 - (int) ranked[r];
+                if (accepted.contains(candidates[i])) {
+                    result.add(new Match(candidates[i], candidateScores[i]));
+                }
+            }
+            from = to;
+            batchSize = Math.min(batchSize * 2, MAX_FILTER_BATCH);
+        }
+        return result;
+    }
+
+    /**
+     * Fragmento del texto alrededor de la primera aparición de algún término de la consulta.
+     */
+    static String snippet(String text, String query) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        Set<String> terms = queryTerms(query);
+        String folded = TextFolding.fold(text);
+        int matchStart = -1;
+        int i = 0;
+        while (i < folded.length() && matchStart < 0) {
+            if (!Character.isLetterOrDigit(folded.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < folded.length() && Character.isLetterOrDigit(folded.charAt(i))) {
+                i++;
+            }
+            if (terms.contains(folded.substring(start, i))) {
+                matchStart = start;
+            }
+        }
+        if (matchStart < 0) {
+            matchStart = 0;
+        }
+
+        int from = Math.max(0, matchStart - SNIPPET_LENGTH / 4);
+        int to = Math.min(text.length(), from + SNIPPET_LENGTH);
+        // Ajustar a límites de palabra
+        while (from > 0 && Character.isLetterOrDigit(text.charAt(from - 1)) && from < matchStart) {
+            from++;
+        }
+        while (to < text.length() && to > from && Character.isLetterOrDigit(text.charAt(to))) {
+            to--;
+        }
+        StringBuilder snippet = new StringBuilder();
+        if (from > 0) {
+            snippet.append("…");
+        }
+        snippet.append(text, from, to).append(to < text.length() ? "…" : "");
+        return snippet.toString().strip();
+    }
+
+    private void removeLocked(long bookId, Set<String> terms) {
+        int ordinal = ordinalByBook.remove(bookId);
+        if (ordinal < 0) {
+            return;
+        }
+        deleted.set(ordinal);
+        deletedCount++;
+        totalLength -= lengths[ordinal];
+        for (String term : terms) {
+            PostingList list = postings.get(term);
+            if (list != null) {
+                list.liveDocFreq--;
+            }
+        }
+        if (deletedCount > 1024 && deletedCount > docCount * COMPACT_RATIO) {
+            compactLocked();
+        }
+    }
+
+    /**
+     * Reescribe las listas sin los ordinales borrados. Los ordinales vivos se
+     * renumeran conservando el orden, por lo que las listas siguen ordenadas.
+     */
+    private void compactLocked() {
+        int[] remap = new int[docCount];
+        int live = 0;
+        for (int ordinal = 0; ordinal < docCount; ordinal++) {
+            if (deleted.get(ordinal)) {
+                remap[ordinal] = -1;
+            } else {
+                remap[ordinal] = live;
+                bookIds[live] = bookIds[ordinal];
+                lengths[live] = lengths[ordinal];
+                ordinalByBook.put(bookIds[live], live);
+                live++;
+            }
+        }
+
+        postings.values().forEach(list -> list.remap(remap));
+        postings.values().removeIf(list -> list.docFreq == 0);
+
+        docCount = live;
+        deletedCount = 0;
+        deleted.clear();
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > bookIds.length) {
+            int capacity = Math.max(size, bookIds.length * 2);
+            bookIds = Arrays.copyOf(bookIds, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String folded = TextFolding.fold(text);
+        int i = 0;
+        while (i < folded.length()) {
+            if (!Character.isLetterOrDigit(folded.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < folded.length() && Character.isLetterOrDigit(folded.charAt(i))) {
+                i++;
+            }
+            tokens.add(folded.substring(start, i));
+        }
+        return tokens;
+    }
+
+    private static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokenize(text)) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    private static Set<String> queryTerms(String query) {
+        return new LinkedHashSet<>(tokenize(query));
+    }
+
+    record Match(long bookId, float score) {}
+
+    private static final class Scratch {
+        final float[] scores;
+        int[] touched = new int[16];
+
+        Scratch(int capacity) {
+            this.scores = new float[capacity];
+        }
+    }
+
+    /**
+     * Id de libro a ordinal sin cajas: direccionamiento abierto con sondeo lineal.
+     * Los huecos tienen valor -1, los ordinales nunca son negativos.
+     */
+    private static final class OrdinalMap {
+
+        private long[] keys = new long[16];
+        private int[] values = filled(16);
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); values[i] >= 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 3 > keys.length * 2) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (values[i] >= 0) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        /**
+         * Quita la clave y devuelve su ordinal, o -1. Las entradas siguientes del mismo
+         * tramo retroceden al hueco, así las búsquedas no necesitan marcas de borrado.
+         */
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int gap = slot(key, mask);
+            while (values[gap] >= 0 && keys[gap] != key) {
+                gap = (gap + 1) & mask;
+            }
+            int removed = values[gap];
+            if (removed < 0) {
+                return -1;
+            }
+            for (int i = (gap + 1) & mask; values[i] >= 0; i = (i + 1) & mask) {
+                int home = slot(keys[i], mask);
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+            }
+            values[gap] = -1;
+            size--;
+            return removed;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = filled(capacity);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] >= 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private static int[] filled(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, -1);
+            return values;
+        }
+    }
+
+    /**
+     * Lista de postings comprimida: pares (delta de ordinal, frecuencia) en varint.
+     */
+    private static final class PostingList {
+
+        private byte[] data = new byte[8];
+        private int size;
+        private int lastOrdinal = -1;
+        // Postings escritos, borrados incluidos
+        private int docFreq;
+        // Documentos vivos con el término
+        private int liveDocFreq;
+
+        void add(int ordinal, int frequency) {
+            ensure(10);
+            writeVarInt(ordinal - lastOrdinal);
+            writeVarInt(frequency);
+            lastOrdinal = ordinal;
+            docFreq++;
+            liveDocFreq++;
+        }
+
+        /**
+         * Reescribe la lista, en el sitio, sin los ordinales que {@code remap} marca con -1.
+         */
+        void remap(int[] remap) {
+            PostingList result = new PostingList();
+            Cursor cursor = cursor();
+            while (cursor.next()) {
+                int target = remap[cursor.ordinal];
+                if (target >= 0) {
+                    result.add(target, cursor.frequency);
+                }
+            }
+            data = Arrays.copyOf(result.data, result.size);
+            size = result.size;
+            lastOrdinal = result.lastOrdinal;
+            docFreq = result.docFreq;
+            liveDocFreq = result.liveDocFreq;
+        }
+
+        Cursor cursor() {
+            return new Cursor();
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + extra, data.length * 2));
+            }
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        final class Cursor {
+            private int position;
+            int ordinal = -1;
+            int frequency;
+
+            boolean next() {
+                if (position >= size) {
+                    return false;
+                }
+                ordinal += readVarInt();
+                frequency = readVarInt();
+                return true;
+            }
+
+            private int readVarInt() {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.javabooks.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Contenido guardado en un array en el heap.
+ */
+class HeapBookContent implements BookContent {
+
+    private final byte[] bytes;
+    private final String etag;
+
+    HeapBookContent(byte[] bytes, String etag) {
+        this.bytes = bytes;
+        this.etag = etag;
+    }
+
+    @Override
+    public long length() {
+        return bytes.length;
+    }
+
+    @Override
+    public String etag() {
+        return etag;
+    }
+
+    @Override
+    public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, (int) position, (int) count);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+}
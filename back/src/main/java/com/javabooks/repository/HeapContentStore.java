@@ -0,0 +1,41 @@
+package com.javabooks.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contenido en el heap como bytes UTF-8. Útil para pruebas y catálogos pequeños.
+ */
+public class HeapContentStore implements ContentStore {
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(long id, String contenido) {
+        byte[] bytes = contenido != null ? contenido.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        entries.put(id, new Entry(bytes, ContentDigest.of(bytes)));
+    }
+
+    @Override
+    public String read(long id) {
+        Entry entry = entries.get(id);
+        return entry != null ? new String(entry.bytes(), StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public Optional<BookContent> content(long id) {
+        Entry entry = entries.get(id);
+        return entry != null
+                ? Optional.of(new HeapBookContent(entry.bytes(), ContentDigest.etag(id, entry.digest())))
+                : Optional.empty();
+    }
+
+    @Override
+    public void remove(long id) {
+        entries.remove(id);
+    }
+
+    private record Entry(byte[] bytes, long digest) {}
+}
@@ -0,0 +1,210 @@
+package com.javabooks.repository;
+
+import com.javabooks.model.Book;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Motor en memoria: los libros en un ConcurrentHashMap con índices secundarios
+ * sobre las claves plegadas. No persiste nada; la durabilidad, si se activa, la
+ * aporta el {@link BookJournal} del repositorio.
+ *
+ * Además los libros se reparten en particiones por categoría (valor exacto, el mismo
+ * que llevan los permisos del token) y, dentro de cada una, en celdas por autor.
+ * Las consultas filtradas por permisos solo visitan las particiones permitidas.
+ */
+public class InMemoryBookStorage implements BookStorage {
+
+    private final Map<Long, Book> books = new ConcurrentHashMap<>();
+    private final SecondaryIndex tituloIndex = new SecondaryIndex();
+    private final SecondaryIndex autorIndex = new SecondaryIndex();
+    private final SecondaryIndex categoriaIndex = new SecondaryIndex();
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    // Claves con las que se indexó cada libro; el Book es mutable y no sirve para desindexar
+    private final Map<Long, Keys> indexedKeys = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<Book> findById(long id) {
+        return Optional.ofNullable(books.get(id));
+    }
+
+    @Override
+    public List<Book> findAllById(List<Long> ids) {
+        return resolve(ids);
+    }
+
+    @Override
+    public List<Book> findAll() {
+        return new ArrayList<>(books.values());
+    }
+
+    @Override
+    public List<Book> findByTitulo(String titulo) {
+        return resolve(tituloIndex.get(titulo));
+    }
+
+    @Override
+    public List<Book> findByAutor(String autor) {
+        return resolve(autorIndex.get(autor));
+    }
+
+    @Override
+    public List<Book> findByCategoria(String categoria) {
+        return resolve(categoriaIndex.get(categoria));
+    }
+
+    @Override
+    public List<Book> findVisible(Set<String> categorias, Set<String> autores) {
+        List<Book> result = new ArrayList<>();
+        if (autores.isEmpty()) {
+            return result;
+        }
+        for (String categoria : categorias) {
+            Partition partition = partitions.get(categoria);
+            if (partition == null) {
+                continue;
+            }
+            // Pocos autores permitidos: celdas; muchos: recorrer la partición
+            if (autores.size() < partition.authors()) {
+                for (String autor : autores) {
+                    for (Long id : partition.cells.get(TextFolding.fold(autor))) {
+                        Book book = books.get(id);
+                        if (book != null && autor.equals(book.getAutor()) && categoria.equals(book.getCategoria())) {
+                            result.add(book);
+                        }
+                    }
+                }
+            } else {
+                for (Long id : partition.ids) {
+                    Book book = books.get(id);
+                    if (book != null && autores.contains(book.getAutor()) && categoria.equals(book.getCategoria())) {
+                        result.add(book);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Book> findByAutor(String autor, Set<String> categorias) {
+        List<Book> result = new ArrayList<>();
+        for (String categoria : categorias) {
+            Partition partition = partitions.get(categoria);
+            if (partition == null) {
+                continue;
+            }
+            for (Long id : partition.cells.get(autor)) {
+                Book book = books.get(id);
+                if (book != null && categoria.equals(book.getCategoria())) {
+                    result.add(book);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void saveAll(List<Write> writes) {
+        for (Write write : writes) {
+            Book book = write.book();
+            // compute serializa las escrituras sobre el mismo id y mantiene los índices coherentes
+            books.compute(book.getId(), (id, previous) -> {
+                unindex(id);
+                Keys keys = new Keys(
+                        TextFolding.fold(book.getTitulo()),
+                        TextFolding.fold(book.getAutor()),
+                        TextFolding.fold(book.getCategoria()),
+                        partitionKey(book.getCategoria()));
+                tituloIndex.add(keys.titulo(), id);
+                autorIndex.add(keys.autor(), id);
+                categoriaIndex.add(keys.categoria(), id);
+                partitions.computeIfAbsent(keys.partition(), key -> new Partition()).add(keys.autor(), id);
+                indexedKeys.put(id, keys);
+                return book;
+            });
+        }
+    }
+
+    @Override
+    public boolean deleteById(long id) {
+        boolean[] removed = {false};
+        books.computeIfPresent(id, (key, previous) -> {
+            unindex(key);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public long count() {
+        return books.size();
+    }
+
+    @Override
+    public void scan(BiConsumer<Book, String> consumer) {
+        for (Book book : books.values()) {
+            consumer.accept(book, book.getContenido());
+        }
+    }
+
+    private void unindex(Long id) {
+        Keys keys = indexedKeys.remove(id);
+        if (keys != null) {
+            tituloIndex.remove(keys.titulo(), id);
+            autorIndex.remove(keys.autor(), id);
+            categoriaIndex.remove(keys.categoria(), id);
+            Partition partition = partitions.get(keys.partition());
+            if (partition != null) {
+                partition.remove(keys.autor(), id);
+            }
+        }
+    }
+
+    private List<Book> resolve(Iterable<Long> ids) {
+        List<Book> result = new ArrayList<>();
+        for (Long id : ids) {
+            Book book = books.get(id);
+            if (book != null) {
+                result.add(book);
+            }
+        }
+        return result;
+    }
+
+    // ConcurrentHashMap no admite claves null
+    private static String partitionKey(String categoria) {
+        return categoria != null ? categoria : "";
+    }
+
+    private record Keys(String titulo, String autor, String categoria, String partition) {}
+
+    /**
+     * Libros de una categoría, con sus celdas por autor (clave plegada).
+     */
+    private static final class Partition {
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final SecondaryIndex cells = new SecondaryIndex();
+
+        void add(String autor, Long id) {
+            ids.add(id);
+            cells.add(autor, id);
+        }
+
+        void remove(String autor, Long id) {
+            ids.remove(id);
+            cells.remove(autor, id);
+        }
+
+        int authors() {
+            return cells.size();
+        }
+    }
+}
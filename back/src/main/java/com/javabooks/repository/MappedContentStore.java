@@ -0,0 +1,461 @@
+package com.javabooks.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Contenido fuera del heap, en ficheros de segmento mapeados en memoria.
+ *
+ * Los segmentos son de solo anexado: cada save escribe los bytes al final del
+ * segmento activo y en el heap solo queda un {@link Handle} (segmento, offset,
+ * longitud). Los segmentos sellados cuyo espacio vivo cae por debajo del umbral
+ * se compactan en segundo plano copiando sus entradas vivas al segmento activo.
+ *
+ * Cada segmento cuenta sus referencias: la del propio almacenamiento, cada
+ * {@link #read} en curso y cada {@link BookContent} sin cerrar. Un segmento
+ * compactado deja de estar en el mapa y suelta la referencia del almacenamiento;
+ * el canal se cierra cuando sale la última lectura y el fichero se borra una
+ * pasada de compactación más tarde, para dar tiempo a que sendfile lo abra por nombre.
+ *
+ * Es almacenamiento de trabajo: cada instancia crea su propio subdirectorio
+ * (pid-&lt;pid&gt;-...) dentro del directorio configurado, con un fichero de bloqueo que
+ * mantiene mientras está abierta, y lo borra al cerrarse. Al arrancar solo se borran
+ * los subdirectorios de procesos que ya no existen. La durabilidad del catálogo no
+ * depende de estos ficheros.
+ */
+public class MappedContentStore implements ContentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedContentStore.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    private static final String INSTANCE_PREFIX = "pid-";
+    private static final String LOCK_FILE = ".lock";
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final int segmentSize;
+    private final Map<Long, Handle> handles = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    // Compactados y fuera del mapa, a la espera de su última lectura
+    private final Queue<Segment> retired = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService compactor;
+
+    // Protegidos por writeLock
+    private final Object writeLock = new Object();
+    private Segment active;
+    private int nextSegmentId = 1;
+
+    public MappedContentStore(Path baseDirectory, int segmentSize, Duration compactionInterval) {
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(baseDirectory);
+            deleteAbandoned(baseDirectory);
+            this.directory = Files.createTempDirectory(baseDirectory, INSTANCE_PREFIX + ProcessHandle.current().pid() + "-");
+            this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = lockChannel.lock();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo preparar el directorio de contenido " + baseDirectory, e);
+        }
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "content-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = compactionInterval.toMillis();
+        compactor.scheduleWithFixedDelay(this::compactSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void put(long id, String contenido) {
+        byte[] bytes = contenido != null ? contenido.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        long digest = ContentDigest.of(bytes);
+        Handle previous;
+        synchronized (writeLock) {
+            Handle handle = append(bytes, digest);
+            previous = handles.put(id, handle);
+        }
+        discard(previous);
+    }
+
+    @Override
+    public String read(long id) {
+        while (true) {
+            Handle handle = handles.get(id);
+            if (handle == null) {
+                return null;
+            }
+            Segment segment = acquire(handle);
+            if (segment == null) {
+                // Compactado entre las dos lecturas: el mapa ya apunta a la copia
+                continue;
+            }
+            try {
+                byte[] bytes = new byte[handle.length()];
+                segment.slice(handle.offset(), handle.length()).get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            } finally {
+                segment.release();
+            }
+        }
+    }
+
+    @Override
+    public Optional<BookContent> content(long id) {
+        while (true) {
+            Handle handle = handles.get(id);
+            if (handle == null) {
+                return Optional.empty();
+            }
+            Segment segment = acquire(handle);
+            if (segment != null) {
+                return Optional.of(new MappedBookContent(segment, handle, ContentDigest.etag(id, handle.digest())));
+            }
+        }
+    }
+
+    @Override
+    public void remove(long id) {
+        discard(handles.remove(id));
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        for (Segment segment : retired) {
+            segment.close();
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+            deleteRecursively(directory);
+        } catch (IOException e) {
+            logger.warn("No se pudo borrar el directorio de contenido {}", directory, e);
+        }
+    }
+
+    /**
+     * Subdirectorio de esta instancia, dentro del configurado.
+     */
+    Path directory() {
+        return directory;
+    }
+
+    /**
+     * Bytes ocupados por entradas vivas, sumando todos los segmentos.
+     */
+    public long liveBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.live.get()).sum();
+    }
+
+    private Handle append(byte[] bytes, long digest) {
+        if (active == null || active.position + bytes.length > active.capacity) {
+            if (active != null) {
+                active.sealed = true;
+            }
+            active = openSegment(Math.max(segmentSize, bytes.length));
+        }
+        int offset = active.position;
+        active.buffer.duplicate().position(offset).put(bytes);
+        active.position += bytes.length;
+        active.live.addAndGet(bytes.length);
+        return new Handle(active.id, offset, bytes.length, digest);
+    }
+
+    /**
+     * Segmento del handle con una referencia más, o null si ya fue compactado.
+     */
+    private Segment acquire(Handle handle) {
+        Segment segment = segments.get(handle.segment());
+        return segment != null && segment.acquire() ? segment : null;
+    }
+
+    private void discard(Handle handle) {
+        if (handle != null) {
+            Segment segment = segments.get(handle.segment());
+            if (segment != null) {
+                segment.live.addAndGet(-handle.length());
+            }
+        }
+    }
+
+    private Segment openSegment(int capacity) {
+        int id = nextSegmentId++;
+        Path file = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            Segment segment = new Segment(id, file, channel, buffer, capacity);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el segmento " + file, e);
+        }
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            logger.warn("Error compactando el almacenamiento de contenido", e);
+        }
+    }
+
+    void compact() {
+        // Un fichero se borra en la pasada siguiente a la que lo encuentra sin lecturas.
+        // Un envío por sendfile mantiene su referencia hasta el final de la petición y los
+        // segmentos en compactación ya no se ofrecen a sendfile; la pasada de margen cubre
+        // solo el hueco entre el final de la petición y la apertura del fichero por Tomcat
+        for (Iterator<Segment> it = retired.iterator(); it.hasNext(); ) {
+            Segment segment = it.next();
+            if (segment.refs.get() > 0) {
+                continue;
+            }
+            if (!segment.drained) {
+                segment.drained = true;
+                continue;
+            }
+            it.remove();
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                logger.warn("No se pudo borrar el segmento {}", segment.file, e);
+            }
+        }
+
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.sealed && segment.live.get() < segment.position * COMPACTION_THRESHOLD) {
+                relocate(segment);
+            }
+        }
+    }
+
+    private void relocate(Segment segment) {
+        // Desde aquí el fichero puede desaparecer: nadie nuevo lo abre por nombre
+        segment.retiring = true;
+        List<Map.Entry<Long, Handle>> entries = new ArrayList<>();
+        for (Map.Entry<Long, Handle> entry : handles.entrySet()) {
+            if (entry.getValue().segment() == segment.id) {
+                entries.add(entry);
+            }
+        }
+
+        for (Map.Entry<Long, Handle> entry : entries) {
+            Handle old = entry.getValue();
+            byte[] bytes = new byte[old.length()];
+            segment.slice(old.offset(), old.length()).get(bytes);
+            synchronized (writeLock) {
+                Handle moved = append(bytes, old.digest());
+                // Si el libro se reescribió mientras tanto, la copia queda como espacio muerto
+                if (handles.replace(entry.getKey(), old, moved)) {
+                    segment.live.addAndGet(-old.length());
+                } else {
+                    discard(moved);
+                }
+            }
+        }
+        // Sin handles que apunten aquí: las lecturas nuevas ya no lo encuentran
+        segments.remove(segment.id);
+        retired.add(segment);
+        segment.release();
+        logger.debug("Segmento {} compactado ({} entradas movidas)", segment.id, entries.size());
+    }
+
+    /**
+     * Borra los subdirectorios de instancias cuyo proceso ya no existe y cuyo bloqueo
+     * nadie mantiene.
+     */
+    private static void deleteAbandoned(Path baseDirectory) throws IOException {
+        try (DirectoryStream<Path> instances = Files.newDirectoryStream(baseDirectory, INSTANCE_PREFIX + "*")) {
+            for (Path instance : instances) {
+                if (Files.isDirectory(instance) && !isAlive(instance) && !isLocked(instance)) {
+                    logger.info("Borrando contenido abandonado en {}", instance);
+                    deleteRecursively(instance);
+                }
+            }
+        }
+    }
+
+    private static boolean isAlive(Path instance) {
+        String name = instance.getFileName().toString().substring(INSTANCE_PREFIX.length());
+        int dash = name.indexOf('-');
+        try {
+            long pid = Long.parseLong(dash < 0 ? name : name.substring(0, dash));
+            return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+        } catch (NumberFormatException e) {
+            // No es nuestro: no se toca
+            return true;
+        }
+    }
+
+    private static boolean isLocked(Path instance) throws IOException {
+        Path lockFile = instance.resolve(LOCK_FILE);
+        if (!Files.exists(lockFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+             FileLock held = channel.tryLock()) {
+            return held == null;
+        } catch (OverlappingFileLockException e) {
+            // Lo mantiene otra instancia de esta misma JVM
+            return true;
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    record Handle(int segment, int offset, int length, long digest) {}
+
+    private static final class Segment {
+        final int id;
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final AtomicLong live = new AtomicLong();
+        // La inicial es la del almacenamiento; al llegar a cero se cierra el canal
+        final AtomicInteger refs = new AtomicInteger(1);
+        int position;
+        volatile boolean sealed;
+        volatile boolean retiring;
+        // Solo lo usa el hilo de compactación
+        boolean drained;
+
+        Segment(int id, Path file, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        ByteBuffer slice(int offset, int length) {
+            return buffer.duplicate().position(offset).limit(offset + length);
+        }
+
+        boolean acquire() {
+            while (true) {
+                int current = refs.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (refs.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error cerrando el segmento {}", file, e);
+            }
+        }
+    }
+
+    private static final class MappedBookContent implements BookContent {
+        private final Segment segment;
+        private final Handle handle;
+        private final String etag;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        MappedBookContent(Segment segment, Handle handle, String etag) {
+            this.segment = segment;
+            this.handle = handle;
+            this.etag = etag;
+        }
+
+        @Override
+        public long length() {
+            return handle.length();
+        }
+
+        @Override
+        public String etag() {
+            return etag;
+        }
+
+        @Override
+        public Path file() {
+            return segment.retiring ? null : segment.file;
+        }
+
+        @Override
+        public long fileOffset() {
+            return handle.offset();
+        }
+
+        @Override
+        public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            // Hacia un socket transferTo usa sendfile; hacia otros canales copia por bloques
+            // desde la caché de páginas sin materializar el contenido completo
+            long start = handle.offset() + position;
+            long transferred = 0;
+            while (transferred < count) {
+                long written = segment.channel.transferTo(start + transferred, count - transferred, target);
+                if (written <= 0) {
+                    throw new IOException("Transferencia interrumpida en el segmento " + segment.file);
+                }
+                transferred += written;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                segment.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.javabooks.repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * Índice ordenado de prefijos para autocompletado.
+ *
+ * Cada texto se indexa por su clave plegada y por cada sufijo que empieza en una
+ * palabra ("clean code" y "code"), de modo que escribir cualquier palabra del
+ * título lo encuentra. Las búsquedas recorren solo el rango del prefijo.
+ */
+class PrefixIndex {
+
+    // Cota de claves visitadas por consulta, para que prefijos muy cortos no recorran todo
+    private static final int MAX_SCAN = 4096;
+    // Ids por llamada a la resolución: la primera tanda cubre el límite, luego se dobla
+    private static final int MIN_BATCH = 16;
+    private static final int MAX_BATCH = 1024;
+
+    private final ConcurrentSkipListMap<String, Set<Long>> entries = new ConcurrentSkipListMap<>();
+
+    void add(String foldedText, Long id) {
+        for (String key : keys(foldedText)) {
+            entries.compute(key, (k, ids) -> {
+                Set<Long> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                result.add(id);
+                return result;
+            });
+        }
+    }
+
+    void remove(String foldedText, Long id) {
+        for (String key : keys(foldedText)) {
+            entries.computeIfPresent(key, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * Devuelve hasta {@code limit} textos distintos cuyo alguna palabra empieza por el
+     * prefijo. {@code completion} recibe los ids por tandas, en el orden del índice, y
+     * devuelve el texto a mostrar de los que el usuario puede ver; los demás no
+     * aparecen en el mapa. Se deja de pedir tandas al llenar el límite.
+     */
+    List<String> complete(String prefix, int limit, Function<List<Long>, Map<Long, String>> completion) {
+        String folded = TextFolding.fold(prefix == null ? "" : prefix.strip());
+        if (folded.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        NavigableMap<String, Set<Long>> range = entries.subMap(folded, true, folded + Character.MAX_VALUE, false);
+
+        Set<Long> visited = new HashSet<>();
+        Set<String> seen = new LinkedHashSet<>();
+        List<String> result = new ArrayList<>(limit);
+        int batchSize = Math.max(limit, MIN_BATCH);
+        List<Long> batch = new ArrayList<>(batchSize);
+        int scanned = 0;
+        for (Map.Entry<String, Set<Long>> entry : range.entrySet()) {
+            if (++scanned > MAX_SCAN) {
+                break;
+            }
+            for (Long id : entry.getValue()) {
+                if (!visited.add(id)) {
+                    continue;
+                }
+                batch.add(id);
+                if (batch.size() == batchSize) {
+                    if (resolve(batch, completion, seen, result, limit)) {
+                        return result;
+                    }
+                    batch.clear();
+                    batchSize = Math.min(batchSize * 2, MAX_BATCH);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            resolve(batch, completion, seen, result, limit);
+        }
+        return result;
+    }
+
+    // Añade los textos de la tanda en orden sin repetir; true si ya se llegó al límite
+    private static boolean resolve(List<Long> batch, Function<List<Long>, Map<Long, String>> completion,
+                                   Set<String> seen, List<String> result, int limit) {
+        Map<Long, String> texts = completion.apply(batch);
+        for (Long id : batch) {
+            String text = texts.get(id);
+            if (text != null && seen.add(TextFolding.fold(text))) {
+                result.add(text);
+                if (result.size() == limit) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<String> keys(String foldedText) {
+        List<String> keys = new ArrayList<>();
+        if (foldedText == null || foldedText.isBlank()) {
+            return keys;
+        }
+        String text = foldedText.strip();
+        for (int i = 0; i < text.length(); i++) {
+            boolean wordStart = Character.isLetterOrDigit(text.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)));
+            if (wordStart) {
+                keys.add(text.substring(i));
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,52 @@
+package com.javabooks.repository;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice secundario concurrente: clave plegada -> ids de los libros.
+ */
+class SecondaryIndex {
+
+    private final Map<String, Set<Long>> entries = new ConcurrentHashMap<>();
+
+    void add(String key, Long id) {
+        if (key == null) {
+            return;
+        }
+        // compute bloquea la clave, así un remove concurrente no descarta el conjunto
+        entries.compute(key, (k, ids) -> {
+            Set<Long> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            result.add(id);
+            return result;
+        });
+    }
+
+    void remove(String key, Long id) {
+        if (key == null) {
+            return;
+        }
+        // computeIfPresent para no dejar conjuntos vacíos en el mapa
+        entries.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    Set<Long> get(String key) {
+        if (key == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> ids = entries.get(key);
+        return ids != null ? ids : Collections.emptySet();
+    }
+
+    /**
+     * Número de claves distintas con algún id.
+     */
+    int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,35 @@
+package com.javabooks.repository;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Índice ordenado (valor, id) para paginar por keyset. El id desempata, así el
+ * orden es total y estable aunque varios libros compartan valor.
+ */
+class SortIndex<V extends Comparable<V>> {
+
+    private final ConcurrentSkipListSet<Key<V>> keys = new ConcurrentSkipListSet<>(
+            Comparator.<Key<V>, V>comparing(Key::value, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparingLong(Key::id));
+
+    void add(V value, long id) {
+        keys.add(new Key<>(value, id));
+    }
+
+    void remove(V value, long id) {
+        keys.remove(new Key<>(value, id));
+    }
+
+    /**
+     * Vista de las claves estrictamente posteriores a {@code after} (o todas si es null)
+     * en el sentido pedido.
+     */
+    NavigableSet<Key<V>> after(Key<V> after, boolean descending) {
+        NavigableSet<Key<V>> view = descending ? keys.descendingSet() : keys;
+        return after == null ? view : view.tailSet(after, false);
+    }
+
+    record Key<V>(V value, long id) {}
+}
@@ -0,0 +1,57 @@
+package com.javabooks.repository;
+
+import java.text.Normalizer;
+
+/**
+ * Plegado de texto para las claves de los índices: minúsculas y sin acentos
+ * ("Programación" y "PROGRAMACION" producen la misma clave).
+ *
+ * El plegado conserva la longitud del texto (un carácter de entrada, un carácter
+ * de salida), de modo que las posiciones encontradas sobre el texto plegado
+ * sirven también sobre el original.
+ */
+public final class TextFolding {
+
+    // Tabla precalculada para Latin-1 y Latin Extended, que cubre el español
+    private static final int TABLE_SIZE = 0x250;
+    private static final char[] TABLE = new char[TABLE_SIZE];
+
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            TABLE[c] = foldSlow((char) c);
+        }
+    }
+
+    private TextFolding() {}
+
+    public static String fold(String text) {
+        if (text == null) {
+            return null;
+        }
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char folded = fold(c);
+            if (folded != c) {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = folded;
+            }
+        }
+        return chars == null ? text : new String(chars);
+    }
+
+    public static char fold(char c) {
+        return c < TABLE_SIZE ? TABLE[c] : foldSlow(c);
+    }
+
+    private static char foldSlow(char c) {
+        char lower = Character.toLowerCase(c);
+        if (lower < 0x80 || Character.isSurrogate(lower)) {
+            return lower;
+        }
+        String decomposed = Normalizer.normalize(String.valueOf(lower), Normalizer.Form.NFD);
+        return decomposed.charAt(0);
+    }
+}
@@ -0,0 +1,28 @@
+package com.javabooks.repository.jpa;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+
+@Entity
+@Table(name = "book_contenido")
+public class BookContenidoEntity {
+
+    @Id
+    private Long id;
+
+    @Lob
+    private String contenido;
+
+    protected BookContenidoEntity() {}
+
+    public BookContenidoEntity(Long id, String contenido) {
+        this.id = id;
+        this.contenido = contenido;
+    }
+
+    public void setContenido(String contenido) {
+        this.contenido = contenido;
+    }
+}
@@ -0,0 +1,67 @@
+package com.javabooks.repository.jpa;
+
+import com.javabooks.model.Book;
+import com.javabooks.repository.TextFolding;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Fila del catálogo. Las columnas {@code *_clave} guardan el texto plegado y están
+ * indexadas para las búsquedas exactas; el contenido va en {@link BookContenidoEntity}
+ * para que leer libros no arrastre el texto completo.
+ */
+@Entity
+@Table(name = "book", indexes = {
+        @Index(name = "idx_book_titulo_clave", columnList = "titulo_clave"),
+        @Index(name = "idx_book_autor_clave", columnList = "autor_clave"),
+        @Index(name = "idx_book_categoria_clave", columnList = "categoria_clave"),
+        // Filtro por permisos: categorías y autores exactos del token
+        @Index(name = "idx_book_categoria_autor", columnList = "categoria, autor")
+})
+public class BookEntity {
+
+    // Lo asigna BookRepository; sin generador para no romper el batching de inserts
+    @Id
+    private Long id;
+
+    private String titulo;
+    private String autor;
+    private Integer cantidadPaginas;
+    private String categoria;
+
+    @Column(name = "titulo_clave")
+    private String tituloClave;
+
+    @Column(name = "autor_clave")
+    private String autorClave;
+
+    @Column(name = "categoria_clave")
+    private String categoriaClave;
+
+    protected BookEntity() {}
+
+    public BookEntity(Long id) {
+        this.id = id;
+    }
+
+    public void copyFrom(Book book) {
+        this.titulo = book.getTitulo();
+        this.autor = book.getAutor();
+        this.cantidadPaginas = book.getCantidadPaginas();
+        this.categoria = book.getCategoria();
+        this.tituloClave = TextFolding.fold(titulo);
+        this.autorClave = TextFolding.fold(autor);
+        this.categoriaClave = TextFolding.fold(categoria);
+    }
+
+    public Book toBook() {
+        return new Book(id, titulo, autor, cantidadPaginas, categoria, null);
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,46 @@
+package com.javabooks.repository.jpa;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Lecturas del motor JPA. Todas son de solo lectura: Hibernate no guarda la copia
+ * para el dirty checking ni hace flush antes de la consulta.
+ */
+public interface BookEntityRepository extends Repository<BookEntity, Long> {
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Optional<BookEntity> findOneById(Long id);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<BookEntity> findByIdIn(Collection<Long> ids);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500")
+    })
+    List<BookEntity> findAllByOrderByIdAsc();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<BookEntity> findByTituloClave(String tituloClave);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<BookEntity> findByAutorClave(String autorClave);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<BookEntity> findByCategoriaClave(String categoriaClave);
+
+    long count();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<BookEntity> findByCategoriaInAndAutorIn(Collection<String> categorias, Collection<String> autores);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<BookEntity> findByAutorClaveAndCategoriaIn(String autorClave, Collection<String> categorias);
+}
@@ -0,0 +1,163 @@
+package com.javabooks.repository.jpa;
+
+import com.javabooks.model.Book;
+import com.javabooks.repository.BookStorage;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Motor sobre JPA (H2 por defecto). Las lecturas pasan por {@link BookEntityRepository}
+ * con hints de solo lectura; las escrituras van en una transacción por lote y se
+ * vacían cada {@code batchSize} filas para que Hibernate agrupe los inserts en
+ * batches JDBC (hibernate.jdbc.batch_size) sin llenar el contexto de persistencia.
+ */
+public class JpaBookStorage implements BookStorage {
+
+    private final BookEntityRepository books;
+    private final EntityManager entityManager;
+    private final TransactionTemplate writeTransactions;
+    private final TransactionTemplate readTransactions;
+    private final int batchSize;
+
+    public JpaBookStorage(BookEntityRepository books, EntityManager entityManager,
+                          PlatformTransactionManager transactionManager, int batchSize) {
+        this.books = books;
+        this.entityManager = entityManager;
+        this.writeTransactions = new TransactionTemplate(transactionManager);
+        this.readTransactions = new TransactionTemplate(transactionManager);
+        this.readTransactions.setReadOnly(true);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Optional<Book> findById(long id) {
+        return books.findOneById(id).map(BookEntity::toBook);
+    }
+
+    @Override
+    public List<Book> findAllById(List<Long> ids) {
+        return toBooks(books.findByIdIn(ids));
+    }
+
+    @Override
+    public List<Book> findAll() {
+        return toBooks(books.findAllByOrderByIdAsc());
+    }
+
+    @Override
+    public List<Book> findByTitulo(String titulo) {
+        return toBooks(books.findByTituloClave(titulo));
+    }
+
+    @Override
+    public List<Book> findByAutor(String autor) {
+        return toBooks(books.findByAutorClave(autor));
+    }
+
+    @Override
+    public List<Book> findByCategoria(String categoria) {
+        return toBooks(books.findByCategoriaClave(categoria));
+    }
+
+    @Override
+    public List<Book> findVisible(Set<String> categorias, Set<String> autores) {
+        if (categorias.isEmpty() || autores.isEmpty()) {
+            return List.of();
+        }
+        return toBooks(books.findByCategoriaInAndAutorIn(categorias, autores));
+    }
+
+    @Override
+    public List<Book> findByAutor(String autor, Set<String> categorias) {
+        if (categorias.isEmpty()) {
+            return List.of();
+        }
+        return toBooks(books.findByAutorClaveAndCategoriaIn(autor, categorias));
+    }
+
+    @Override
+    public void saveAll(List<Write> writes) {
+        writeTransactions.executeWithoutResult(status -> {
+            int pending = 0;
+            for (Write write : writes) {
+                Long id = write.book().getId();
+                // Un alta conocida no necesita el SELECT previo de merge()
+                BookEntity entity = write.isNew() ? null : entityManager.find(BookEntity.class, id);
+                boolean isNew = entity == null;
+                if (isNew) {
+                    entity = new BookEntity(id);
+                }
+                entity.copyFrom(write.book());
+                if (isNew) {
+                    entityManager.persist(entity);
+                }
+
+                if (write.contentChanged()) {
+                    BookContenidoEntity contenido = isNew ? null : entityManager.find(BookContenidoEntity.class, id);
+                    if (contenido == null) {
+                        entityManager.persist(new BookContenidoEntity(id, write.contenido()));
+                    } else {
+                        contenido.setContenido(write.contenido());
+                    }
+                }
+
+                if (++pending == batchSize) {
+                    entityManager.flush();
+                    entityManager.clear();
+                    pending = 0;
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean deleteById(long id) {
+        Integer deleted = writeTransactions.execute(status -> {
+            entityManager.createQuery("delete from BookContenidoEntity c where c.id = :id")
+                    .setParameter("id", id)
+                    .executeUpdate();
+            return entityManager.createQuery("delete from BookEntity b where b.id = :id")
+                    .setParameter("id", id)
+                    .executeUpdate();
+        });
+        return deleted != null && deleted > 0;
+    }
+
+    @Override
+    public long count() {
+        return books.count();
+    }
+
+    @Override
+    public void scan(BiConsumer<Book, String> consumer) {
+        readTransactions.executeWithoutResult(status -> {
+            try (Stream<Object[]> rows = entityManager.createQuery(
+                            "select b, c.contenido from BookEntity b "
+                                    + "left join BookContenidoEntity c on c.id = b.id order by b.id", Object[].class)
+                    .setHint(HibernateHints.HINT_READ_ONLY, true)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, 500)
+                    .getResultStream()) {
+                int[] read = {0};
+                rows.forEach(row -> {
+                    consumer.accept(((BookEntity) row[0]).toBook(), (String) row[1]);
+                    // Las entidades de solo lectura siguen en el contexto; se suelta cada bloque
+                    if (++read[0] % batchSize == 0) {
+                        entityManager.clear();
+                    }
+                });
+            }
+        });
+    }
+
+    private static List<Book> toBooks(List<BookEntity> entities) {
+        return entities.stream().map(BookEntity::toBook).toList();
+    }
+}
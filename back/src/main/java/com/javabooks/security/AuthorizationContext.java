@@ -0,0 +1,100 @@
+package com.javabooks.security;
+
+import com.javabooks.security.policy.EntitlementMatcher;
+import com.javabooks.security.policy.Policy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Permisos del usuario resueltos una sola vez a partir del JWT: scopes y roles en
+ * conjuntos hash, categorías y autores compilados con {@link EntitlementMatcher} (los
+ * mismos patrones que emitió el motor de permisos). Las comprobaciones por libro no
+ * vuelven a leer los claims del token.
+ */
+public final class AuthorizationContext implements Serializable {
+
+    private static final String SCOPE_PREFIX = "SCOPE_";
+
+    private final Set<String> scopes;
+    private final Set<String> roles;
+    private final EntitlementMatcher categorias;
+    private final EntitlementMatcher autores;
+
+    private AuthorizationContext(Set<String> scopes, Set<String> roles,
+                                 EntitlementMatcher categorias, EntitlementMatcher autores) {
+        this.scopes = scopes;
+        this.roles = roles;
+        this.categorias = categorias;
+        this.autores = autores;
+    }
+
+    /**
+     * Contexto de la petición: el que calculó el conversor del resource server, o
+     * uno nuevo si la autenticación no viene de él (por ejemplo, en pruebas).
+     */
+    public static AuthorizationContext of(Authentication authentication) {
+        if (authentication instanceof EntitledJwtAuthenticationToken entitled) {
+            return entitled.getAuthorizationContext();
+        }
+        return from(authentication, null);
+    }
+
+    /**
+     * Con {@code policy} (resuelta del claim compacto) las categorías y autores salen de
+     * ahí; sin ella, de los claims {@code categorias} y {@code autores} del token.
+     */
+    static AuthorizationContext from(Authentication authentication, Policy policy) {
+        Set<String> scopes = new HashSet<>();
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            String name = authority.getAuthority();
+            if (name != null && name.startsWith(SCOPE_PREFIX)) {
+                scopes.add(name.substring(SCOPE_PREFIX.length()));
+            }
+        }
+        if (!(authentication.getPrincipal() instanceof Jwt jwt)) {
+            return new AuthorizationContext(scopes, Set.of(), EntitlementMatcher.none(), EntitlementMatcher.none());
+        }
+        if (policy != null) {
+            return new AuthorizationContext(scopes, toSet(jwt.getClaimAsStringList("roles")),
+                    policy.categorias(), policy.autores());
+        }
+        return new AuthorizationContext(scopes,
+                toSet(jwt.getClaimAsStringList("roles")),
+                EntitlementMatcher.compile(jwt.getClaimAsStringList("categorias")),
+                EntitlementMatcher.compile(jwt.getClaimAsStringList("autores")));
+    }
+
+    public boolean hasScope(String scope) {
+        return scopes.contains(scope);
+    }
+
+    public boolean hasRole(String role) {
+        return roles.contains(role);
+    }
+
+    public boolean canAccessCategory(String categoria) {
+        return categorias.matches(categoria);
+    }
+
+    public boolean canAccessAuthor(String autor) {
+        return autores.matches(autor);
+    }
+
+    public EntitlementMatcher getCategorias() {
+        return categorias;
+    }
+
+    public EntitlementMatcher getAutores() {
+        return autores;
+    }
+
+    private static Set<String> toSet(List<String> values) {
+        return values != null ? Set.copyOf(values) : Set.of();
+    }
+}
@@ -0,0 +1,45 @@
+package com.javabooks.security;
+
+import com.javabooks.security.policy.Policy;
+import com.javabooks.security.policy.PolicyEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+
+/**
+ * Conversor del resource server: delega la extracción de authorities en el
+ * JwtAuthenticationConverter configurado y compila los permisos del token una
+ * vez por petición. Si el token trae el claim compacto {@code ent}, los permisos se
+ * resuelven en el diccionario local del {@link PolicyEngine}; un id desconocido no
+ * concede nada.
+ */
+public class AuthorizationContextConverter implements Converter<Jwt, AbstractAuthenticationToken> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthorizationContextConverter.class);
+
+    private final JwtAuthenticationConverter delegate;
+    private final PolicyEngine policyEngine;
+
+    public AuthorizationContextConverter(JwtAuthenticationConverter delegate, PolicyEngine policyEngine) {
+        this.delegate = delegate;
+        this.policyEngine = policyEngine;
+    }
+
+    @Override
+    public AbstractAuthenticationToken convert(Jwt jwt) {
+        AbstractAuthenticationToken authentication = delegate.convert(jwt);
+        Policy policy = null;
+        String id = jwt.getClaimAsString(JwtCustomizer.ENTITLEMENTS_CLAIM);
+        if (id != null) {
+            policy = policyEngine.policyById(id).orElse(null);
+            if (policy == null) {
+                logger.warn("Conjunto de permisos desconocido en el token de {}: {}", authentication.getName(), id);
+                policy = Policy.NONE;
+            }
+        }
+        return new EntitledJwtAuthenticationToken(jwt, authentication.getAuthorities(), authentication.getName(), policy);
+    }
+}
@@ -0,0 +1,156 @@
+package com.javabooks.security;
+
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JwtDecoder con caché de tokens ya verificados. La clave es el SHA-256 del token, así
+ * un token repetido cuesta un hash y una lectura del mapa en lugar de la firma RS256 y
+ * el parseo. Cada entrada vale hasta el {@code exp} del token; los tokens sin
+ * {@code exp} no se guardan.
+ *
+ * Un token revocado queda en un mapa aparte hasta su {@code exp} y se rechaza aunque
+ * la firma siga siendo válida; ese mapa solo pierde entradas al caducar, nunca por falta
+ * de sitio. La caché de tokens válidos no pasa de {@code maxEntries}: al llenarse se
+ * quitan los caducados y, si no basta, una parte de los demás.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+    private final int maxEntries;
+    private final Clock clock;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    // Tokens revocados: clave del token -> exp en milisegundos
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder revocations = new LongAdder();
+
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries) {
+        this(delegate, maxEntries, Clock.systemUTC());
+    }
+
+    CachingJwtDecoder(JwtDecoder delegate, int maxEntries, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries debe ser positivo");
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        String key = key(token);
+        long now = clock.millis();
+        checkNotRevoked(key, now);
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            if (entry.expiresAt() > now) {
+                hits.increment();
+                return entry.jwt();
+            }
+            cache.remove(key, entry);
+        }
+
+        misses.increment();
+        Jwt jwt = delegate.decode(token);
+        Instant expiresAt = jwt.getExpiresAt();
+        if (expiresAt != null && expiresAt.toEpochMilli() > now) {
+            if (cache.size() >= maxEntries) {
+                evict(now);
+            }
+            cache.putIfAbsent(key, new Entry(jwt, expiresAt.toEpochMilli()));
+        }
+        // Revocado mientras se verificaba: la entrada que acabe de quedar en la caché
+        // no se llega a servir porque la revocación se comprueba antes
+        checkNotRevoked(key, now);
+        return jwt;
+    }
+
+    /**
+     * Quita el token de la caché y lo rechaza a partir de ahora, hasta que caduque.
+     */
+    public void revoke(String token, Instant expiresAt) {
+        if (token == null) {
+            return;
+        }
+        long now = clock.millis();
+        String key = key(token);
+        if (expiresAt == null || expiresAt.toEpochMilli() <= now) {
+            cache.remove(key);
+            return;
+        }
+        revocations.increment();
+        if (revoked.size() >= maxEntries) {
+            revoked.values().removeIf(exp -> exp <= now);
+        }
+        revoked.merge(key, expiresAt.toEpochMilli(), Math::max);
+        cache.remove(key);
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("size", cache.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("evictions", evictions.sum());
+        stats.put("revocations", revocations.sum());
+        stats.put("revoked", revoked.size());
+        return stats;
+    }
+
+    private void checkNotRevoked(String key, long now) {
+        Long expiresAt = revoked.get(key);
+        if (expiresAt != null) {
+            if (expiresAt > now) {
+                throw new BadJwtException("El token ha sido revocado");
+            }
+            revoked.remove(key, expiresAt);
+        }
+    }
+
+    private void evict(long now) {
+        cache.values().removeIf(entry -> entry.expiresAt() <= now);
+        revoked.values().removeIf(exp -> exp <= now);
+        // Sin caducados suficientes: se suelta una octava parte
+        int target = maxEntries - Math.max(1, maxEntries / 8);
+        Iterator<Entry> iterator = cache.values().iterator();
+        while (cache.size() > target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static String key(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Entry(Jwt jwt, long expiresAt) {}
+}
@@ -1,38 +1,90 @@
 package com.javabooks.security;
 
+import com.javabooks.security.credentials.CredentialEntity;
+import com.javabooks.security.credentials.CredentialEntityRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Usuarios del login, con las credenciales ya codificadas en la tabla credential y
+ * cacheadas en memoria: buscar un usuario no calcula ningún hash, el único BCrypt del
+ * login es la verificación.
+ *
+ * Como {@link UserDetailsPasswordService}, recibe el hash nuevo cuando el
+ * DelegatingPasswordEncoder pide recodificar (algoritmo antiguo o coste menor que el
+ * configurado) y lo guarda en la tabla y en la caché.
+ */
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CustomUserDetailsService.class);
 
-    private final PasswordEncoder passwordEncoder;
+    private final CredentialEntityRepository repository;
+    private final Map<String, UserDetails> users = new ConcurrentHashMap<>();
 
-    public CustomUserDetailsService(PasswordEncoder passwordEncoder) {
-        this.passwordEncoder = passwordEncoder;
+    public CustomUserDetailsService(CredentialEntityRepository repository) {
+        this.repository = repository;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (repository.count() == 0) {
+            repository.saveAll(defaultCredentials());
+        }
+        for (CredentialEntity credential : repository.findAll()) {
+            users.put(credential.getUsername(), toUserDetails(credential));
+        }
+        logger.info("Credenciales cargadas: {} usuarios", users.size());
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        switch (username) {
-            case "admin":
-                return User.builder()
-                        .username("admin")
-                        .password(passwordEncoder.encode("admin"))
-                        .roles("USER", "ADMIN")
-                        .build();
-            case "user":
-                return User.builder()
-                        .username("user")
-                        .password(passwordEncoder.encode("password"))
-                        .roles("USER", "CLIENT")
-                        .build();
-            default:
-                throw new UsernameNotFoundException("Usuario no encontrado: " + username);
+        UserDetails user = users.get(username);
+        if (user == null) {
+            throw new UsernameNotFoundException("Usuario no encontrado: " + username);
         }
+        // Copia: el AuthenticationManager borra la contraseña del principal tras autenticar
+        return User.withUserDetails(user).build();
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        CredentialEntity credential = repository.findById(user.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado: " + user.getUsername()));
+        credential.setPassword(newPassword);
+        repository.save(credential);
+        UserDetails updated = toUserDetails(credential);
+        users.put(credential.getUsername(), updated);
+        logger.info("Hash de la contraseña de {} actualizado", credential.getUsername());
+        return User.withUserDetails(updated).build();
+    }
+
+    private static UserDetails toUserDetails(CredentialEntity credential) {
+        return User.withUsername(credential.getUsername())
+                .password(credential.getPassword())
+                .roles(credential.getRoles().split(","))
+                .build();
+    }
+
+    /**
+     * Los usuarios de demostración, con el hash precalculado (BCrypt, coste 10).
+     */
+    private static List<CredentialEntity> defaultCredentials() {
+        return List.of(
+                new CredentialEntity("admin",
+                        "{bcrypt}$2a$10$kSNXbYhvZgE3LDM.HWANxOFUKS//naupZLRTyGV5OrBJ1ftSkatgC", "USER,ADMIN"),
+                new CredentialEntity("user",
+                        "{bcrypt}$2a$10$Qw1SgyYJg1qliwaI897L3uAsvxs/HBqLi7XrnSXAKglRJaLbIvrTe", "USER"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package com.javabooks.security;
+
+import com.javabooks.security.policy.Policy;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.util.Collection;
+
+/**
+ * JwtAuthenticationToken que lleva el {@link AuthorizationContext} ya calculado.
+ */
+public class EntitledJwtAuthenticationToken extends JwtAuthenticationToken {
+
+    private final AuthorizationContext authorizationContext;
+
+    public EntitledJwtAuthenticationToken(Jwt jwt, Collection<? extends GrantedAuthority> authorities, String name) {
+        this(jwt, authorities, name, null);
+    }
+
+    public EntitledJwtAuthenticationToken(Jwt jwt, Collection<? extends GrantedAuthority> authorities, String name,
+                                          Policy policy) {
+        super(jwt, authorities, name);
+        this.authorizationContext = AuthorizationContext.from(this, policy);
+    }
+
+    public AuthorizationContext getAuthorizationContext() {
+        return authorizationContext;
+    }
+}
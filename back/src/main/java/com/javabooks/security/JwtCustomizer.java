@@ -1,18 +1,32 @@
 package com.javabooks.security;
 
+import com.javabooks.security.policy.Policy;
+import com.javabooks.security.policy.PolicyEngine;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.server.authorization.token.JwtEncodingContext;
 import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenCustomizer;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 // @Component
 public class JwtCustomizer implements OAuth2TokenCustomizer<JwtEncodingContext> {
 
+    /**
+     * Claim compacto: id del conjunto de permisos en el diccionario del {@link PolicyEngine}.
+     */
+    public static final String ENTITLEMENTS_CLAIM = "ent";
+
+    private final PolicyEngine policyEngine;
+    private final boolean compact;
+
+    public JwtCustomizer(PolicyEngine policyEngine, boolean compact) {
+        this.policyEngine = policyEngine;
+        this.compact = compact;
+    }
+
     @Override
     public void customize(JwtEncodingContext context) {
         Authentication principal = context.getPrincipal();
@@ -26,41 +40,14 @@ public class JwtCustomizer implements OAuth2TokenCustomizer<JwtEncodingContext>
         
         context.getClaims().claim("roles", roles);
         
-        // Agregar categorías basadas en el usuario
-        List<String> categorias = getCategoriesForUser(principal.getName());
-        context.getClaims().claim("categorias", categorias);
-        
-        // Agregar autores basados en el usuario
-        List<String> autores = getAuthorsForUser(principal.getName());
-        context.getClaims().claim("autores", autores);
-    }
-    
-    private List<String> getCategoriesForUser(String username) {
-        // Lógica para determinar las categorías del usuario
-        if ("admin".equals(username)) {
-            return Arrays.asList("PROGRAMMING", "FRAMEWORKS", "ARCHITECTURE", "DATABASES");
-        } else if ("user".equals(username)) {
-            return Arrays.asList("PROGRAMMING", "FRAMEWORKS");
-        }
-        return Arrays.asList("PROGRAMMING");
-    }
-    
-    private List<String> getAuthorsForUser(String username) {
-        // Lógica para determinar los autores del usuario
-        if ("admin".equals(username)) {
-            return Arrays.asList(
-                "Robert C. Martin", 
-                "Joshua Bloch", 
-                "Craig Walls",
-                "Martin Fowler",
-                "Eric Evans"
-            );
-        } else if ("user".equals(username)) {
-            return Arrays.asList(
-                "Robert C. Martin", 
-                "Craig Walls"
-            );
+        // Categorías y autores según las reglas del motor de permisos (valores o comodines)
+        Policy policy = policyEngine.policyFor(principal.getName());
+        if (compact) {
+            // Solo el id: el resource server lo resuelve en su diccionario local
+            context.getClaims().claim(ENTITLEMENTS_CLAIM, policy.id());
+        } else {
+            context.getClaims().claim("categorias", policy.categorias().patterns());
+            context.getClaims().claim("autores", policy.autores().patterns());
         }
-        return Arrays.asList("Robert C. Martin");
     }
-}
\ No newline at end of file
+}
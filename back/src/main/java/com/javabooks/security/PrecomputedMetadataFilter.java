@@ -0,0 +1,167 @@
+package com.javabooks.security;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.CorsConfigurationSource;
+import org.springframework.web.cors.CorsProcessor;
+import org.springframework.web.cors.DefaultCorsProcessor;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sirve el JWK Set y los documentos de descubrimiento (OpenID y OAuth2) ya serializados,
+ * con ETag fuerte, Cache-Control y 304 para {@code If-None-Match}. Va delante de la cadena
+ * de Spring Security: una petición repetida es una búsqueda en un mapa y una copia de bytes.
+ *
+ * El JWK Set (solo las partes públicas) se serializa al arrancar y cada vez que
+ * {@link SigningKeyManager} rota las claves. Los documentos de descubrimiento dependen
+ * solo de la configuración del servidor: la primera petición pasa por el endpoint del
+ * servidor de autorización y su respuesta se guarda tal cual. Con issuer fijo en la
+ * configuración el documento no cambia según el host de la petición.
+ *
+ * Como estas respuestas no pasan por la cadena de seguridad, las cabeceras CORS se
+ * aplican aquí con la misma configuración.
+ */
+public class PrecomputedMetadataFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrecomputedMetadataFilter.class);
+
+    public static final Set<String> DISCOVERY_PATHS =
+            Set.of("/.well-known/openid-configuration", "/.well-known/oauth-authorization-server");
+
+    private final CorsConfigurationSource corsConfigurationSource;
+    private final CorsProcessor corsProcessor = new DefaultCorsProcessor();
+    private final String jwkSetPath;
+    private final String jwkSetCacheControl;
+    private final String discoveryCacheControl;
+    private final Map<String, Payload> payloads = new ConcurrentHashMap<>();
+
+    public PrecomputedMetadataFilter(SigningKeyManager signingKeys, CorsConfigurationSource corsConfigurationSource,
+                                     String jwkSetPath, Duration jwkSetMaxAge, Duration discoveryMaxAge) {
+        this.corsConfigurationSource = corsConfigurationSource;
+        this.jwkSetPath = jwkSetPath;
+        this.jwkSetCacheControl = "public, max-age=" + jwkSetMaxAge.toSeconds();
+        this.discoveryCacheControl = "public, max-age=" + discoveryMaxAge.toSeconds();
+        publish(signingKeys.getKeys());
+        signingKeys.addListener(this::publish);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return true;
+        }
+        String path = path(request);
+        return !path.equals(jwkSetPath) && !DISCOVERY_PATHS.contains(path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = path(request);
+        Payload payload = payloads.get(path);
+        if (payload == null) {
+            payload = capture(path, request, response, chain);
+            if (payload == null) {
+                return;
+            }
+        }
+        CorsConfiguration cors = corsConfigurationSource.getCorsConfiguration(request);
+        if (cors != null && !corsProcessor.processRequest(cors, request, response)) {
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ETAG, payload.etag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, payload.cacheControl());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), payload.etag())) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(payload.contentType());
+        response.setContentLength(payload.body().length);
+        if (!"HEAD".equals(request.getMethod())) {
+            response.getOutputStream().write(payload.body());
+        }
+    }
+
+    /**
+     * Primera petición de un documento de descubrimiento: responde el servidor de
+     * autorización y, si fue un 200, su cuerpo queda guardado y se sirve como los
+     * siguientes, con las mismas cabeceras. Si no, su respuesta sale tal cual y
+     * devuelve null.
+     */
+    private Payload capture(String path, HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        chain.doFilter(request, wrapper);
+        if (wrapper.getStatus() != HttpStatus.OK.value() || wrapper.getContentSize() == 0 || response.isCommitted()) {
+            wrapper.copyBodyToResponse();
+            return null;
+        }
+        String contentType = wrapper.getContentType() != null ? wrapper.getContentType() : MediaType.APPLICATION_JSON_VALUE;
+        Payload captured = payload(wrapper.getContentAsByteArray(), contentType, discoveryCacheControl);
+        Payload previous = payloads.putIfAbsent(path, captured);
+        logger.debug("Documento {} guardado ({} bytes)", path, wrapper.getContentSize());
+        // Fuera las cabeceras no-cache de la cadena de seguridad
+        response.reset();
+        return previous != null ? previous : captured;
+    }
+
+    private void publish(JWKSet keys) {
+        // toString(true): solo las partes públicas, como el endpoint del servidor de autorización
+        byte[] body = keys.toString(true).getBytes(StandardCharsets.UTF_8);
+        payloads.put(jwkSetPath, payload(body, MediaType.APPLICATION_JSON_VALUE, jwkSetCacheControl));
+    }
+
+    private static Payload payload(byte[] body, String contentType, String cacheControl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            String etag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+            return new Payload(body, contentType, etag, cacheControl);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.strip();
+            if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Payload(byte[] body, String contentType, String etag, String cacheControl) {}
+}
@@ -0,0 +1,61 @@
+package com.javabooks.security;
+
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+
+/**
+ * OAuth2AuthorizationService que avisa al {@link CachingJwtDecoder} cuando un access
+ * token deja de valer: al revocarlo (o revocar su refresh token, que lo invalida con
+ * él) y al borrar la autorización.
+ */
+public class RevocationAwareAuthorizationService implements OAuth2AuthorizationService, AutoCloseable {
+
+    private final OAuth2AuthorizationService delegate;
+    private final CachingJwtDecoder jwtDecoder;
+
+    public RevocationAwareAuthorizationService(OAuth2AuthorizationService delegate, CachingJwtDecoder jwtDecoder) {
+        this.delegate = delegate;
+        this.jwtDecoder = jwtDecoder;
+    }
+
+    @Override
+    public void save(OAuth2Authorization authorization) {
+        delegate.save(authorization);
+        OAuth2Authorization.Token<OAuth2AccessToken> accessToken = authorization.getAccessToken();
+        if (accessToken != null && accessToken.isInvalidated()) {
+            revoke(accessToken);
+        }
+    }
+
+    @Override
+    public void remove(OAuth2Authorization authorization) {
+        delegate.remove(authorization);
+        OAuth2Authorization.Token<OAuth2AccessToken> accessToken = authorization.getAccessToken();
+        if (accessToken != null) {
+            revoke(accessToken);
+        }
+    }
+
+    @Override
+    public OAuth2Authorization findById(String id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public OAuth2Authorization findByToken(String token, OAuth2TokenType tokenType) {
+        return delegate.findByToken(token, tokenType);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private void revoke(OAuth2Authorization.Token<OAuth2AccessToken> accessToken) {
+        jwtDecoder.revoke(accessToken.getToken().getTokenValue(), accessToken.getToken().getExpiresAt());
+    }
+}
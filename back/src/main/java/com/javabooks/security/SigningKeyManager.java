@@ -0,0 +1,298 @@
+package com.javabooks.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Claves de firma de los tokens, guardadas en un almacén local (un JWK Set con las
+ * partes privadas, legible solo por el propietario) para que sobrevivan a los reinicios.
+ *
+ * Las claves van de la más nueva a la más antigua. Cada {@code rotationInterval} se
+ * genera una clave nueva que se publica en el JWK Set al momento, pero no firma hasta
+ * pasado {@code activationDelay} desde su emisión (el max-age del JWKS): los resource
+ * servers que tienen el JWKS en caché la conocen antes de recibir un token firmado con
+ * ella. Hasta entonces firma la anterior. Tras la clave que firma se conservan
+ * {@code previousKeys} anteriores para verificar los tokens que firmaron. Si la clave
+ * actual es de otro algoritmo que el configurado, se rota al arrancar.
+ *
+ * Algoritmos: RS256 (RSA 2048) y ES256 (EC P-256). Ed25519 (EdDSA) no se admite:
+ * Spring Authorization Server solo firma con los algoritmos de {@link SignatureAlgorithm}
+ * y Nimbus necesita Google Tink para EdDSA.
+ */
+public class SigningKeyManager implements JWKSource<SecurityContext>, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SigningKeyManager.class);
+
+    static final String KEYSTORE_FILE = "signing-keys.json";
+
+    private final Path directory;
+    private final SignatureAlgorithm algorithm;
+    private final Duration rotationInterval;
+    private final int previousKeys;
+    private final Duration activationDelay;
+    private final Clock clock;
+    private final List<Consumer<JWKSet>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService rotator;
+
+    private volatile JWKSet keys = new JWKSet();
+    private volatile Signer signer;
+
+    public SigningKeyManager(Path directory, String algorithm, Duration rotationInterval, int previousKeys,
+                             Duration activationDelay) {
+        this(directory, algorithm, rotationInterval, previousKeys, activationDelay, Clock.systemUTC());
+    }
+
+    SigningKeyManager(Path directory, String algorithm, Duration rotationInterval, int previousKeys,
+                      Duration activationDelay, Clock clock) {
+        this.directory = directory;
+        this.algorithm = parseAlgorithm(algorithm);
+        this.rotationInterval = rotationInterval;
+        this.previousKeys = previousKeys;
+        this.activationDelay = activationDelay;
+        this.clock = clock;
+        this.rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "signing-key-rotation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Carga el almacén (o lo crea con una clave nueva), rota si la clave actual ha caducado
+     * o es de otro algoritmo, y programa las rotaciones siguientes.
+     */
+    public synchronized void start() {
+        keys = load();
+        signer = signer(keys.getKeys());
+        JWK current = keys.getKeys().isEmpty() ? null : keys.getKeys().get(0);
+        if (current == null || current.getAlgorithm() == null
+                || !algorithm.getName().equals(current.getAlgorithm().getName())
+                || age(current).compareTo(rotationInterval) >= 0) {
+            rotate();
+        } else {
+            logger.info("Clave de firma {} ({}) cargada de {}", current.getKeyID(), algorithm, directory);
+        }
+        if (!rotationInterval.isZero() && !rotationInterval.isNegative()) {
+            long first = Math.max(0, rotationInterval.minus(age(keys.getKeys().get(0))).toMillis());
+            rotator.scheduleAtFixedRate(this::rotateQuietly, first, rotationInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Genera una clave nueva, la guarda en el almacén y la publica. Firma a partir de
+     * {@code activationDelay}; hasta entonces sigue firmando la actual.
+     */
+    public synchronized JWK rotate() {
+        JWK generated = generate();
+        List<JWK> candidates = new ArrayList<>();
+        candidates.add(generated);
+        candidates.addAll(keys.getKeys());
+        Signer next = signer(candidates);
+
+        // Las pendientes y la que firma, más previousKeys anteriores a ella
+        List<JWK> rotated = new ArrayList<>();
+        int previous = -1;
+        for (JWK key : candidates) {
+            if (previous >= 0 && ++previous > previousKeys) {
+                break;
+            }
+            rotated.add(key);
+            if (key == next.active()) {
+                previous = 0;
+            }
+        }
+        JWKSet published = new JWKSet(rotated);
+        store(published);
+        keys = published;
+        signer = next;
+        logger.info("Nueva clave de firma {} ({}), firma desde {}; {} claves publicadas", generated.getKeyID(), algorithm,
+                next.active() == generated ? "ya" : Instant.ofEpochMilli(activatesAt(generated)), rotated.size());
+        listeners.forEach(listener -> listener.accept(published));
+        return generated;
+    }
+
+    /**
+     * Firma con la clave activa: algoritmo y kid en la cabecera, así el encoder no duda
+     * entre ella, la pendiente y las anteriores.
+     */
+    public void customize(JwsHeader.Builder header) {
+        JWK current = activeKey();
+        header.algorithm(SignatureAlgorithm.from(current.getAlgorithm().getName())).keyId(current.getKeyID());
+    }
+
+    /**
+     * Clave que firma ahora. Una pendiente pasa a firmar en cuanto se cumple su plazo.
+     */
+    public JWK activeKey() {
+        Signer current = signer;
+        if (clock.millis() >= current.refreshAt()) {
+            synchronized (this) {
+                current = signer;
+                if (clock.millis() >= current.refreshAt()) {
+                    current = signer(keys.getKeys());
+                    signer = current;
+                    logger.info("La clave {} pasa a firmar", current.active().getKeyID());
+                }
+            }
+        }
+        return current.active();
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector selector, SecurityContext context) {
+        return selector.select(keys);
+    }
+
+    public JWKSet getKeys() {
+        return keys;
+    }
+
+    /**
+     * Avisos de rotación, con el conjunto nuevo.
+     */
+    public void addListener(Consumer<JWKSet> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        rotator.shutdownNow();
+    }
+
+    private void rotateQuietly() {
+        try {
+            rotate();
+        } catch (RuntimeException e) {
+            logger.error("No se pudo rotar la clave de firma", e);
+        }
+    }
+
+    /**
+     * Firma la clave más nueva cuyo plazo de activación ya se cumplió; sin ninguna (almacén
+     * recién creado), la más antigua. Las más nuevas quedan pendientes y la primera en
+     * cumplir su plazo marca cuándo volver a elegir.
+     */
+    private Signer signer(List<JWK> candidates) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        long now = clock.millis();
+        long refreshAt = Long.MAX_VALUE;
+        for (JWK key : candidates) {
+            long activatesAt = activatesAt(key);
+            if (activatesAt <= now) {
+                return new Signer(key, refreshAt);
+            }
+            refreshAt = Math.min(refreshAt, activatesAt);
+        }
+        JWK oldest = candidates.get(candidates.size() - 1);
+        return new Signer(oldest, candidates.size() == 1 ? Long.MAX_VALUE : refreshAt);
+    }
+
+    private long activatesAt(JWK key) {
+        Date issued = key.getIssueTime();
+        return issued == null ? 0 : issued.getTime() + activationDelay.toMillis();
+    }
+
+    private JWK generate() {
+        String keyId = UUID.randomUUID().toString();
+        Date now = Date.from(clock.instant());
+        try {
+            if (algorithm == SignatureAlgorithm.ES256) {
+                return new ECKeyGenerator(Curve.P_256).keyID(keyId).keyUse(KeyUse.SIGNATURE)
+                        .algorithm(JWSAlgorithm.ES256).issueTime(now).generate();
+            }
+            return new RSAKeyGenerator(2048).keyID(keyId).keyUse(KeyUse.SIGNATURE)
+                    .algorithm(JWSAlgorithm.RS256).issueTime(now).generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException("No se pudo generar la clave de firma", e);
+        }
+    }
+
+    private Duration age(JWK key) {
+        Date issued = key.getIssueTime();
+        return issued == null ? rotationInterval : Duration.between(issued.toInstant(), clock.instant());
+    }
+
+    private JWKSet load() {
+        Path file = directory.resolve(KEYSTORE_FILE);
+        if (!Files.exists(file)) {
+            return new JWKSet();
+        }
+        try {
+            return JWKSet.parse(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("No se pudo leer el almacén de claves " + file, e);
+        }
+    }
+
+    private void store(JWKSet set) {
+        Path file = directory.resolve(KEYSTORE_FILE);
+        Path temp = directory.resolve(KEYSTORE_FILE + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(temp);
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            }
+            // Con las partes privadas: es el almacén, no el JWKS público
+            Files.writeString(temp, set.toString(false), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo guardar el almacén de claves " + file, e);
+        }
+    }
+
+    /**
+     * Clave que firma y cuándo cumple su plazo la siguiente pendiente.
+     */
+    private record Signer(JWK active, long refreshAt) {}
+
+    private static SignatureAlgorithm parseAlgorithm(String name) {
+        if ("EdDSA".equalsIgnoreCase(name) || "Ed25519".equalsIgnoreCase(name)) {
+            throw new IllegalArgumentException("Ed25519 no está soportado: Spring Authorization Server solo firma con "
+                    + "RS256/PS256/ES256 y familia, y Nimbus necesita Google Tink para EdDSA");
+        }
+        SignatureAlgorithm algorithm = SignatureAlgorithm.from(name);
+        if (algorithm != SignatureAlgorithm.RS256 && algorithm != SignatureAlgorithm.ES256) {
+            throw new IllegalArgumentException("Algoritmo de firma no soportado: " + name + " (RS256 o ES256)");
+        }
+        return algorithm;
+    }
+}
@@ -0,0 +1,165 @@
+package com.javabooks.security.clients;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.settings.ClientSettings;
+import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Clientes OAuth2 en la tabla registered_client, cacheados en memoria por id y por
+ * clientId: cada petición al endpoint de tokens busca su cliente sin tocar la base de
+ * datos. Todas las escrituras pasan por {@link #save}, que actualiza tabla y caché; si se
+ * cambia la tabla por otro camino, {@link #reload} vuelve a leerla.
+ *
+ * Al cambiar el secreto de un cliente se avisa a los listeners con la versión anterior,
+ * para que descarten lo que tuvieran verificado con el secreto viejo.
+ */
+public class CachedRegisteredClientRepository implements RegisteredClientRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachedRegisteredClientRepository.class);
+
+    private final RegisteredClientEntityRepository repository;
+    private final List<RegisteredClient> defaults;
+    private final List<Consumer<RegisteredClient>> secretListeners = new CopyOnWriteArrayList<>();
+
+    private volatile Map<String, RegisteredClient> byId = Map.of();
+    private volatile Map<String, RegisteredClient> byClientId = Map.of();
+
+    /**
+     * @param defaults clientes que se guardan si la tabla está vacía
+     */
+    public CachedRegisteredClientRepository(RegisteredClientEntityRepository repository,
+                                            Collection<RegisteredClient> defaults) {
+        this.repository = repository;
+        this.defaults = List.copyOf(defaults);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (repository.count() == 0) {
+            repository.saveAll(defaults.stream().map(CachedRegisteredClientRepository::toEntity).toList());
+        }
+        logger.info("Clientes OAuth2 cargados: {}", reload());
+    }
+
+    /**
+     * Vuelve a leer la tabla entera. Devuelve el número de clientes.
+     */
+    public synchronized int reload() {
+        Map<String, RegisteredClient> ids = new ConcurrentHashMap<>();
+        Map<String, RegisteredClient> clientIds = new ConcurrentHashMap<>();
+        for (RegisteredClientEntity entity : repository.findAll()) {
+            RegisteredClient client = toRegisteredClient(entity);
+            ids.put(client.getId(), client);
+            clientIds.put(client.getClientId(), client);
+        }
+        byId = ids;
+        byClientId = clientIds;
+        return ids.size();
+    }
+
+    @Override
+    public synchronized void save(RegisteredClient client) {
+        RegisteredClient previous = byId.get(client.getId());
+        RegisteredClient sameClientId = byClientId.get(client.getClientId());
+        if (sameClientId != null && !sameClientId.getId().equals(client.getId())) {
+            throw new IllegalArgumentException("Ya existe un cliente con clientId " + client.getClientId());
+        }
+        repository.save(toEntity(client));
+        byId.put(client.getId(), client);
+        if (previous != null && !previous.getClientId().equals(client.getClientId())) {
+            byClientId.remove(previous.getClientId());
+        }
+        byClientId.put(client.getClientId(), client);
+
+        if (previous != null && !Objects.equals(previous.getClientSecret(), client.getClientSecret())) {
+            logger.info("Secreto del cliente {} cambiado", client.getClientId());
+            secretListeners.forEach(listener -> listener.accept(previous));
+        }
+    }
+
+    @Override
+    public RegisteredClient findById(String id) {
+        return byId.get(id);
+    }
+
+    @Override
+    public RegisteredClient findByClientId(String clientId) {
+        return byClientId.get(clientId);
+    }
+
+    /**
+     * Se llama con la versión anterior del cliente cada vez que cambia su secreto.
+     */
+    public void addSecretListener(Consumer<RegisteredClient> listener) {
+        secretListeners.add(listener);
+    }
+
+    static RegisteredClientEntity toEntity(RegisteredClient client) {
+        RegisteredClientEntity entity = new RegisteredClientEntity(client.getId(), client.getClientId());
+        entity.setClientIdIssuedAt(client.getClientIdIssuedAt());
+        entity.setClientSecret(client.getClientSecret());
+        entity.setClientSecretExpiresAt(client.getClientSecretExpiresAt());
+        entity.setClientName(client.getClientName());
+        entity.setAuthenticationMethods(join(client.getClientAuthenticationMethods(), ClientAuthenticationMethod::getValue));
+        entity.setGrantTypes(join(client.getAuthorizationGrantTypes(), AuthorizationGrantType::getValue));
+        entity.setRedirectUris(join(client.getRedirectUris(), Function.identity()));
+        entity.setPostLogoutRedirectUris(join(client.getPostLogoutRedirectUris(), Function.identity()));
+        entity.setScopes(join(client.getScopes(), Function.identity()));
+        entity.setRequireProofKey(client.getClientSettings().isRequireProofKey());
+        entity.setRequireAuthorizationConsent(client.getClientSettings().isRequireAuthorizationConsent());
+        entity.setAccessTokenTimeToLive(client.getTokenSettings().getAccessTokenTimeToLive().toSeconds());
+        entity.setRefreshTokenTimeToLive(client.getTokenSettings().getRefreshTokenTimeToLive().toSeconds());
+        entity.setReuseRefreshTokens(client.getTokenSettings().isReuseRefreshTokens());
+        return entity;
+    }
+
+    static RegisteredClient toRegisteredClient(RegisteredClientEntity entity) {
+        return RegisteredClient.withId(entity.getId())
+                .clientId(entity.getClientId())
+                .clientIdIssuedAt(entity.getClientIdIssuedAt())
+                .clientSecret(entity.getClientSecret())
+                .clientSecretExpiresAt(entity.getClientSecretExpiresAt())
+                .clientName(entity.getClientName())
+                .clientAuthenticationMethods(methods -> split(entity.getAuthenticationMethods())
+                        .forEach(value -> methods.add(new ClientAuthenticationMethod(value))))
+                .authorizationGrantTypes(grantTypes -> split(entity.getGrantTypes())
+                        .forEach(value -> grantTypes.add(new AuthorizationGrantType(value))))
+                .redirectUris(uris -> uris.addAll(split(entity.getRedirectUris())))
+                .postLogoutRedirectUris(uris -> uris.addAll(split(entity.getPostLogoutRedirectUris())))
+                .scopes(scopes -> scopes.addAll(split(entity.getScopes())))
+                .clientSettings(ClientSettings.builder()
+                        .requireProofKey(entity.isRequireProofKey())
+                        .requireAuthorizationConsent(entity.isRequireAuthorizationConsent())
+                        .build())
+                .tokenSettings(TokenSettings.builder()
+                        .accessTokenTimeToLive(Duration.ofSeconds(entity.getAccessTokenTimeToLive()))
+                        .refreshTokenTimeToLive(Duration.ofSeconds(entity.getRefreshTokenTimeToLive()))
+                        .reuseRefreshTokens(entity.isReuseRefreshTokens())
+                        .build())
+                .build();
+    }
+
+    private static <T> String join(Collection<T> values, Function<T, String> toValue) {
+        return String.join(" ", values.stream().map(toValue).sorted().toList());
+    }
+
+    private static List<String> split(String values) {
+        return values == null || values.isBlank() ? List.of() : List.of(values.trim().split(" +"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.javabooks.security.clients;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PasswordEncoder para la autenticación de clientes OAuth2 (client_secret_basic/post)
+ * que recuerda durante {@code ttl} los secretos ya verificados: un cliente máquina que
+ * pide tokens sin parar paga un HMAC por petición en lugar de un BCrypt.
+ *
+ * La clave de cada entrada es un HMAC-SHA256, con una clave aleatoria del proceso, del
+ * secreto presentado junto con el hash guardado del cliente. Ese hash es distinto para
+ * cada cliente y para cada versión de su secreto, así que cambiar el secreto deja sin
+ * efecto lo verificado con el anterior; {@link #invalidate} además lo borra. En memoria
+ * no queda ni el secreto ni un hash rápido de él que sirva para probar candidatos.
+ * Solo se guardan verificaciones correctas; el mapa no pasa de {@code maxEntries}.
+ */
+public class CachingSecretEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Clock clock;
+    private final SecretKeySpec key;
+    private final Map<String, Entry> verified = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingSecretEncoder(PasswordEncoder delegate, Duration ttl, int maxEntries) {
+        this(delegate, ttl, maxEntries, Clock.systemUTC());
+    }
+
+    CachingSecretEncoder(PasswordEncoder delegate, Duration ttl, int maxEntries, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries debe ser positivo");
+        }
+        this.delegate = delegate;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+        String entryKey = key(rawPassword, encodedPassword);
+        long now = clock.millis();
+        Entry entry = verified.get(entryKey);
+        if (entry != null) {
+            if (entry.expiresAt() > now && entry.encodedPassword().equals(encodedPassword)) {
+                hits.increment();
+                return true;
+            }
+            verified.remove(entryKey, entry);
+        }
+
+        misses.increment();
+        if (!delegate.matches(rawPassword, encodedPassword)) {
+            return false;
+        }
+        if (verified.size() >= maxEntries) {
+            evict(now);
+        }
+        verified.put(entryKey, new Entry(encodedPassword, now + ttlMillis));
+        return true;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Olvida las verificaciones hechas contra este hash (el secreto del cliente ha cambiado).
+     */
+    public void invalidate(String encodedPassword) {
+        verified.values().removeIf(entry -> entry.encodedPassword().equals(encodedPassword));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("size", verified.size());
+        stats.put("maxEntries", maxEntries);
+        return stats;
+    }
+
+    private void evict(long now) {
+        verified.values().removeIf(entry -> entry.expiresAt() <= now);
+        // Sin caducados suficientes: se suelta una octava parte
+        int target = maxEntries - Math.max(1, maxEntries / 8);
+        Iterator<Entry> iterator = verified.values().iterator();
+        while (verified.size() > target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private String key(CharSequence rawPassword, String encodedPassword) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(mac.doFinal(rawPassword.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Entry(String encodedPassword, long expiresAt) {}
+}
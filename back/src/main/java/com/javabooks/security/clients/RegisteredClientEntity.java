@@ -0,0 +1,194 @@
+package com.javabooks.security.clients;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Cliente OAuth2 registrado. El secreto se guarda ya codificado ({@code {bcrypt}...});
+ * métodos de autenticación, tipos de grant, URIs y scopes van separados por espacios.
+ * De los ajustes del cliente y de los tokens solo se guardan los que usamos; el resto
+ * queda con los valores por defecto del servidor de autorización.
+ */
+@Entity
+@Table(name = "registered_client")
+public class RegisteredClientEntity {
+
+    @Id
+    private String id;
+
+    @Column(nullable = false, unique = true)
+    private String clientId;
+
+    private Instant clientIdIssuedAt;
+
+    private String clientSecret;
+
+    private Instant clientSecretExpiresAt;
+
+    @Column(nullable = false)
+    private String clientName;
+
+    @Column(nullable = false, length = 1000)
+    private String authenticationMethods;
+
+    @Column(nullable = false, length = 1000)
+    private String grantTypes;
+
+    @Column(length = 2000)
+    private String redirectUris;
+
+    @Column(length = 2000)
+    private String postLogoutRedirectUris;
+
+    @Column(length = 1000)
+    private String scopes;
+
+    private boolean requireProofKey;
+
+    private boolean requireAuthorizationConsent;
+
+    // Segundos
+    private long accessTokenTimeToLive;
+
+    // Segundos
+    private long refreshTokenTimeToLive;
+
+    private boolean reuseRefreshTokens;
+
+    protected RegisteredClientEntity() {
+    }
+
+    public RegisteredClientEntity(String id, String clientId) {
+        this.id = id;
+        this.clientId = clientId;
+    }
+
+    // Getters y Setters
+    public String getId() {
+        return id;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public Instant getClientIdIssuedAt() {
+        return clientIdIssuedAt;
+    }
+
+    public void setClientIdIssuedAt(Instant clientIdIssuedAt) {
+        this.clientIdIssuedAt = clientIdIssuedAt;
+    }
+
+    public String getClientSecret() {
+        return clientSecret;
+    }
+
+    public void setClientSecret(String clientSecret) {
+        this.clientSecret = clientSecret;
+    }
+
+    public Instant getClientSecretExpiresAt() {
+        return clientSecretExpiresAt;
+    }
+
+    public void setClientSecretExpiresAt(Instant clientSecretExpiresAt) {
+        this.clientSecretExpiresAt = clientSecretExpiresAt;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public void setClientName(String clientName) {
+        this.clientName = clientName;
+    }
+
+    public String getAuthenticationMethods() {
+        return authenticationMethods;
+    }
+
+    public void setAuthenticationMethods(String authenticationMethods) {
+        this.authenticationMethods = authenticationMethods;
+    }
+
+    public String getGrantTypes() {
+        return grantTypes;
+    }
+
+    public void setGrantTypes(String grantTypes) {
+        this.grantTypes = grantTypes;
+    }
+
+    public String getRedirectUris() {
+        return redirectUris;
+    }
+
+    public void setRedirectUris(String redirectUris) {
+        this.redirectUris = redirectUris;
+    }
+
+    public String getPostLogoutRedirectUris() {
+        return postLogoutRedirectUris;
+    }
+
+    public void setPostLogoutRedirectUris(String postLogoutRedirectUris) {
+        this.postLogoutRedirectUris = postLogoutRedirectUris;
+    }
+
+    public String getScopes() {
+        return scopes;
+    }
+
+    public void setScopes(String scopes) {
+        this.scopes = scopes;
+    }
+
+    public boolean isRequireProofKey() {
+        return requireProofKey;
+    }
+
+    public void setRequireProofKey(boolean requireProofKey) {
+        this.requireProofKey = requireProofKey;
+    }
+
+    public boolean isRequireAuthorizationConsent() {
+        return requireAuthorizationConsent;
+    }
+
+    public void setRequireAuthorizationConsent(boolean requireAuthorizationConsent) {
+        this.requireAuthorizationConsent = requireAuthorizationConsent;
+    }
+
+    public long getAccessTokenTimeToLive() {
+        return accessTokenTimeToLive;
+    }
+
+    public void setAccessTokenTimeToLive(long accessTokenTimeToLive) {
+        this.accessTokenTimeToLive = accessTokenTimeToLive;
+    }
+
+    public long getRefreshTokenTimeToLive() {
+        return refreshTokenTimeToLive;
+    }
+
+    public void setRefreshTokenTimeToLive(long refreshTokenTimeToLive) {
+        this.refreshTokenTimeToLive = refreshTokenTimeToLive;
+    }
+
+    public boolean isReuseRefreshTokens() {
+        return reuseRefreshTokens;
+    }
+
+    public void setReuseRefreshTokens(boolean reuseRefreshTokens) {
+        this.reuseRefreshTokens = reuseRefreshTokens;
+    }
+}
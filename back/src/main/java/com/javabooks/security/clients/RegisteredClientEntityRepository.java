@@ -0,0 +1,20 @@
+package com.javabooks.security.clients;
+
+import org.springframework.data.repository.Repository;
+
+import java.util.List;
+
+/**
+ * Almacén de clientes OAuth2. Se lee entero al arrancar; las búsquedas del servidor de
+ * autorización se sirven de la caché de {@link CachedRegisteredClientRepository}.
+ */
+public interface RegisteredClientEntityRepository extends Repository<RegisteredClientEntity, String> {
+
+    List<RegisteredClientEntity> findAll();
+
+    <S extends RegisteredClientEntity> S save(S entity);
+
+    <S extends RegisteredClientEntity> List<S> saveAll(Iterable<S> entities);
+
+    long count();
+}
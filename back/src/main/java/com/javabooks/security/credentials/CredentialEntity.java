@@ -0,0 +1,54 @@
+package com.javabooks.security.credentials;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Credenciales de un usuario. La contraseña se guarda ya codificada, con el prefijo del
+ * algoritmo ({@code {bcrypt}...}); los roles van separados por comas, sin {@code ROLE_}.
+ */
+@Entity
+@Table(name = "credential")
+public class CredentialEntity {
+
+    @Id
+    private String username;
+
+    @Column(nullable = false)
+    private String password;
+
+    @Column(nullable = false)
+    private String roles;
+
+    protected CredentialEntity() {
+    }
+
+    public CredentialEntity(String username, String password, String roles) {
+        this.username = username;
+        this.password = password;
+        this.roles = roles;
+    }
+
+    // Getters y Setters
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public String getRoles() {
+        return roles;
+    }
+
+    public void setRoles(String roles) {
+        this.roles = roles;
+    }
+}
@@ -0,0 +1,23 @@
+package com.javabooks.security.credentials;
+
+import org.springframework.data.repository.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Almacén de credenciales. Se lee entero al arrancar; después solo se escribe cuando
+ * cambia un hash (p. ej. al subir el coste de BCrypt).
+ */
+public interface CredentialEntityRepository extends Repository<CredentialEntity, String> {
+
+    List<CredentialEntity> findAll();
+
+    Optional<CredentialEntity> findById(String username);
+
+    <S extends CredentialEntity> S save(S entity);
+
+    <S extends CredentialEntity> List<S> saveAll(Iterable<S> entities);
+
+    long count();
+}
@@ -0,0 +1,146 @@
+package com.javabooks.security.exchange;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrupa los refrescos concurrentes con el mismo refresh token. La SPA refresca al
+ * recibir un 401, y con varias pestañas o llamadas en paralelo llegan a la vez varias
+ * peticiones con el mismo token; como el servidor no reutiliza refresh tokens, solo la
+ * primera saldría bien y el resto costaría un canje para nada.
+ *
+ * La primera petición hace el canje y las que llegan mientras tanto esperan su
+ * resultado. El resultado se guarda {@code ttl} para las que llegan justo después; un
+ * error no se guarda, así un fallo transitorio se puede reintentar. La clave es el
+ * SHA-256 del token, como en {@code CachingJwtDecoder}. Los canjes de código no se
+ * agrupan: cada código es de un solo uso.
+ */
+public class CoalescingTokenExchange implements TokenExchange {
+
+    private final TokenExchange delegate;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Clock clock;
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder exchanges = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CoalescingTokenExchange(TokenExchange delegate, Duration ttl, int maxEntries) {
+        this(delegate, ttl, maxEntries, Clock.systemUTC());
+    }
+
+    CoalescingTokenExchange(TokenExchange delegate, Duration ttl, int maxEntries, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries debe ser positivo");
+        }
+        this.delegate = delegate;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    @Override
+    public Map<String, Object> exchangeCode(String code, String redirectUri, String codeVerifier) {
+        return delegate.exchangeCode(code, redirectUri, codeVerifier);
+    }
+
+    @Override
+    public Map<String, Object> refresh(String refreshToken) {
+        if (refreshToken == null) {
+            return delegate.refresh(null);
+        }
+        String key = key(refreshToken);
+        long now = clock.millis();
+        Flight mine = new Flight();
+        Flight flight = flights.compute(key, (k, current) -> current != null && !current.expired(now) ? current : mine);
+        if (flight != mine) {
+            coalesced.increment();
+            return flight.await();
+        }
+
+        if (flights.size() > maxEntries) {
+            evict(now);
+        }
+        exchanges.increment();
+        try {
+            Map<String, Object> result = Collections.unmodifiableMap(delegate.refresh(refreshToken));
+            flight.complete(result, clock.millis() + ttlMillis);
+            return result;
+        } catch (Throwable e) {
+            // También con un Error: un canje sin completar dejaría esperando para siempre a los demás
+            flights.remove(key, flight);
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("exchanges", exchanges.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("size", flights.size());
+        stats.put("maxEntries", maxEntries);
+        return stats;
+    }
+
+    private void evict(long now) {
+        flights.values().removeIf(flight -> flight.expired(now));
+        // Sin caducados suficientes se sueltan resultados aún vigentes; los canjes en curso se quedan
+        Iterator<Flight> iterator = flights.values().iterator();
+        while (flights.size() > maxEntries && iterator.hasNext()) {
+            if (iterator.next().future.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String key(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Un canje en curso o su resultado. Mientras está en curso no caduca.
+     */
+    private static final class Flight {
+        private final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        boolean expired(long now) {
+            return expiresAt <= now;
+        }
+
+        void complete(Map<String, Object> result, long expiresAt) {
+            this.expiresAt = expiresAt;
+            future.complete(result);
+        }
+
+        Map<String, Object> await() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
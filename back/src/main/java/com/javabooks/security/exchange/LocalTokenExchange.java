@@ -0,0 +1,192 @@
+package com.javabooks.security.exchange;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.endpoint.DefaultOAuth2AccessTokenResponseMapConverter;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.core.endpoint.PkceParameterNames;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2AccessTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthorizationCodeAuthenticationProvider;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthorizationCodeAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2ClientAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2RefreshTokenAuthenticationProvider;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2RefreshTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.context.AuthorizationServerContext;
+import org.springframework.security.oauth2.server.authorization.context.AuthorizationServerContextHolder;
+import org.springframework.security.oauth2.server.authorization.settings.AuthorizationServerSettings;
+import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenGenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Canje dentro del proceso: en lugar de llamar por HTTP al /oauth2/token del mismo servidor,
+ * pasa la petición a los mismos {@link AuthenticationProvider} que usa ese endpoint, con el
+ * mismo {@link OAuth2AuthorizationService} y el mismo generador de tokens. Se ahorra el viaje
+ * de ida y vuelta, el parseo de la cabecera Basic y el BCrypt del secreto del cliente en cada
+ * canje: el secreto configurado se comprueba una vez por versión del cliente registrado.
+ *
+ * PKCE se valida aquí igual que en el endpoint (S256 sobre el code_challenge de la petición
+ * de autorización), porque en el servidor lo hace la autenticación del cliente, que este
+ * camino no atraviesa.
+ */
+public class LocalTokenExchange implements TokenExchange {
+
+    private static final OAuth2TokenType AUTHORIZATION_CODE = new OAuth2TokenType(OAuth2ParameterNames.CODE);
+
+    private static final Converter<OAuth2AccessTokenResponse, Map<String, Object>> RESPONSE =
+            new DefaultOAuth2AccessTokenResponseMapConverter();
+
+    private final RegisteredClientRepository clients;
+    private final OAuth2AuthorizationService authorizationService;
+    private final PasswordEncoder passwordEncoder;
+    private final AuthorizationServerContext serverContext;
+    private final String clientId;
+    private final String clientSecret;
+    private final AuthenticationProvider authorizationCodeProvider;
+    private final AuthenticationProvider refreshTokenProvider;
+
+    // Cliente cuyo secreto ya se comprobó; si el repositorio devuelve otro secreto se vuelve a comprobar
+    private volatile RegisteredClient verified;
+
+    public LocalTokenExchange(RegisteredClientRepository clients, OAuth2AuthorizationService authorizationService,
+                              OAuth2TokenGenerator<?> tokenGenerator, AuthorizationServerSettings settings,
+                              PasswordEncoder passwordEncoder, String clientId, String clientSecret) {
+        this.clients = clients;
+        this.authorizationService = authorizationService;
+        this.passwordEncoder = passwordEncoder;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.serverContext = new AuthorizationServerContext() {
+            @Override
+            public String getIssuer() {
+                return settings.getIssuer();
+            }
+
+            @Override
+            public AuthorizationServerSettings getAuthorizationServerSettings() {
+                return settings;
+            }
+        };
+        this.authorizationCodeProvider = new OAuth2AuthorizationCodeAuthenticationProvider(authorizationService, tokenGenerator);
+        this.refreshTokenProvider = new OAuth2RefreshTokenAuthenticationProvider(authorizationService, tokenGenerator);
+    }
+
+    @Override
+    public Map<String, Object> exchangeCode(String code, String redirectUri, String codeVerifier) {
+        OAuth2ClientAuthenticationToken client = authenticateClient();
+        verifyCodeVerifier(client.getRegisteredClient(), code, codeVerifier);
+        return issue(authorizationCodeProvider,
+                new OAuth2AuthorizationCodeAuthenticationToken(code, client, redirectUri, Map.of()));
+    }
+
+    @Override
+    public Map<String, Object> refresh(String refreshToken) {
+        OAuth2ClientAuthenticationToken client = authenticateClient();
+        return issue(refreshTokenProvider,
+                new OAuth2RefreshTokenAuthenticationToken(refreshToken, client, Set.of(), Map.of()));
+    }
+
+    private Map<String, Object> issue(AuthenticationProvider provider, Authentication grant) {
+        // Los generadores leen el issuer del contexto del servidor, que aquí no pone ningún filtro
+        AuthorizationServerContext previous = AuthorizationServerContextHolder.getContext();
+        AuthorizationServerContextHolder.setContext(serverContext);
+        OAuth2AccessTokenAuthenticationToken result;
+        try {
+            result = (OAuth2AccessTokenAuthenticationToken) provider.authenticate(grant);
+        } finally {
+            if (previous != null) {
+                AuthorizationServerContextHolder.setContext(previous);
+            } else {
+                AuthorizationServerContextHolder.resetContext();
+            }
+        }
+        return RESPONSE.convert(toResponse(result));
+    }
+
+    /**
+     * Misma respuesta que arma el endpoint /oauth2/token a partir del resultado del provider.
+     */
+    private static OAuth2AccessTokenResponse toResponse(OAuth2AccessTokenAuthenticationToken result) {
+        OAuth2AccessToken accessToken = result.getAccessToken();
+        OAuth2AccessTokenResponse.Builder response = OAuth2AccessTokenResponse.withToken(accessToken.getTokenValue())
+                .tokenType(accessToken.getTokenType())
+                .scopes(accessToken.getScopes());
+        if (accessToken.getIssuedAt() != null && accessToken.getExpiresAt() != null) {
+            response.expiresIn(ChronoUnit.SECONDS.between(accessToken.getIssuedAt(), accessToken.getExpiresAt()));
+        }
+        OAuth2RefreshToken refreshToken = result.getRefreshToken();
+        if (refreshToken != null) {
+            response.refreshToken(refreshToken.getTokenValue());
+        }
+        if (!result.getAdditionalParameters().isEmpty()) {
+            response.additionalParameters(result.getAdditionalParameters());
+        }
+        return response.build();
+    }
+
+    private OAuth2ClientAuthenticationToken authenticateClient() {
+        RegisteredClient client = clients.findByClientId(clientId);
+        if (client == null) {
+            throw new OAuth2AuthenticationException(OAuth2ErrorCodes.INVALID_CLIENT);
+        }
+        RegisteredClient known = verified;
+        if (known == null || !known.getId().equals(client.getId())
+                || !known.getClientSecret().equals(client.getClientSecret())) {
+            if (!passwordEncoder.matches(clientSecret, client.getClientSecret())) {
+                throw new OAuth2AuthenticationException(OAuth2ErrorCodes.INVALID_CLIENT);
+            }
+            verified = client;
+        }
+        return new OAuth2ClientAuthenticationToken(client, ClientAuthenticationMethod.CLIENT_SECRET_BASIC, null);
+    }
+
+    private void verifyCodeVerifier(RegisteredClient client, String code, String codeVerifier) {
+        OAuth2Authorization authorization = authorizationService.findByToken(code, AUTHORIZATION_CODE);
+        if (authorization == null) {
+            throw new OAuth2AuthenticationException(OAuth2ErrorCodes.INVALID_GRANT);
+        }
+        OAuth2AuthorizationRequest request = authorization.getAttribute(OAuth2AuthorizationRequest.class.getName());
+        String challenge = request == null ? null
+                : (String) request.getAdditionalParameters().get(PkceParameterNames.CODE_CHALLENGE);
+        if (challenge == null || challenge.isEmpty()) {
+            if (client.getClientSettings().isRequireProofKey()) {
+                throw new OAuth2AuthenticationException(OAuth2ErrorCodes.INVALID_GRANT);
+            }
+            return;
+        }
+        String method = (String) request.getAdditionalParameters().get(PkceParameterNames.CODE_CHALLENGE_METHOD);
+        if (codeVerifier == null || !(method == null || "S256".equals(method))
+                || !MessageDigest.isEqual(s256(codeVerifier), challenge.getBytes(StandardCharsets.US_ASCII))) {
+            throw new OAuth2AuthenticationException(OAuth2ErrorCodes.INVALID_GRANT);
+        }
+    }
+
+    private static byte[] s256(String codeVerifier) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(codeVerifier.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encode(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.javabooks.security.exchange;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Canje contra un servidor de autorización remoto, por su endpoint /oauth2/token. Un único
+ * {@link HttpClient} para todas las peticiones: las conexiones se reutilizan (keep-alive) y
+ * tanto la conexión como la respuesta tienen tiempo máximo, así un issuer caído no deja hilos
+ * de petición colgados. Con un {@code executor} de hilos virtuales el cliente no ocupa hilos
+ * de plataforma mientras espera.
+ */
+public class RemoteTokenExchange implements TokenExchange {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> RESPONSE = new ParameterizedTypeReference<>() {};
+
+    private final RestClient restClient;
+
+    public RemoteTokenExchange(String authorizationServer, String clientId, String clientSecret,
+                               Duration connectTimeout, Duration readTimeout) {
+        this(authorizationServer, clientId, clientSecret, connectTimeout, readTimeout, null);
+    }
+
+    /**
+     * @param executor hilos del cliente HTTP; null para los del propio cliente
+     */
+    public RemoteTokenExchange(String authorizationServer, String clientId, String clientSecret,
+                               Duration connectTimeout, Duration readTimeout, Executor executor) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        HttpClient httpClient = builder.build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        this.restClient = RestClient.builder()
+                .requestFactory(requestFactory)
+                .baseUrl(authorizationServer)
+                .defaultHeaders(headers -> headers.setBasicAuth(clientId, clientSecret))
+                .build();
+    }
+
+    @Override
+    public Map<String, Object> exchangeCode(String code, String redirectUri, String codeVerifier) {
+        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
+        body.add("grant_type", "authorization_code");
+        body.add("code", code);
+        body.add("redirect_uri", redirectUri);
+        body.add("code_verifier", codeVerifier);
+        return post(body);
+    }
+
+    @Override
+    public Map<String, Object> refresh(String refreshToken) {
+        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
+        body.add("grant_type", "refresh_token");
+        body.add("refresh_token", refreshToken);
+        return post(body);
+    }
+
+    private Map<String, Object> post(MultiValueMap<String, String> body) {
+        return restClient.post()
+                .uri("/oauth2/token")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(body)
+                .retrieve()
+                .body(RESPONSE);
+    }
+}
@@ -0,0 +1,15 @@
+package com.javabooks.security.exchange;
+
+import java.util.Map;
+
+/**
+ * Canje de tokens en nombre del cliente web (SPA): código de autorización con PKCE y
+ * refresh token. La respuesta tiene la forma de la del endpoint /oauth2/token
+ * (access_token, token_type, expires_in, scope, refresh_token...).
+ */
+public interface TokenExchange {
+
+    Map<String, Object> exchangeCode(String code, String redirectUri, String codeVerifier);
+
+    Map<String, Object> refresh(String refreshToken);
+}
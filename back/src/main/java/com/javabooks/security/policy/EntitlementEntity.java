@@ -0,0 +1,75 @@
+package com.javabooks.security.policy;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Regla de permisos: el sujeto (un usuario, o {@code *} para todos) puede leer la
+ * categoría o el autor que indica el patrón. El patrón es un valor exacto, {@code *}
+ * para cualquiera o un prefijo terminado en {@code *} ("Robert*").
+ */
+@Entity
+@Table(name = "entitlement", indexes = @Index(name = "idx_entitlement_sujeto", columnList = "sujeto"))
+public class EntitlementEntity {
+
+    public enum Tipo { CATEGORIA, AUTOR }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String sujeto;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Tipo tipo;
+
+    @Column(nullable = false)
+    private String patron;
+
+    protected EntitlementEntity() {
+    }
+
+    public EntitlementEntity(String sujeto, Tipo tipo, String patron) {
+        this.sujeto = sujeto;
+        this.tipo = tipo;
+        this.patron = patron;
+    }
+
+    // Getters y Setters
+    public Long getId() {
+        return id;
+    }
+
+    public String getSujeto() {
+        return sujeto;
+    }
+
+    public void setSujeto(String sujeto) {
+        this.sujeto = sujeto;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public void setTipo(Tipo tipo) {
+        this.tipo = tipo;
+    }
+
+    public String getPatron() {
+        return patron;
+    }
+
+    public void setPatron(String patron) {
+        this.patron = patron;
+    }
+}
@@ -0,0 +1,21 @@
+package com.javabooks.security.policy;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+
+import java.util.List;
+
+/**
+ * Almacén de reglas. Solo se lee entero, al arrancar y en cada recarga del {@link PolicyEngine}.
+ */
+public interface EntitlementEntityRepository extends Repository<EntitlementEntity, Long> {
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<EntitlementEntity> findAllByOrderByIdAsc();
+
+    <S extends EntitlementEntity> List<S> saveAll(Iterable<S> entities);
+
+    long count();
+}
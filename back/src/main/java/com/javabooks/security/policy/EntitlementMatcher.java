@@ -0,0 +1,113 @@
+package com.javabooks.security.policy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Patrones de una dimensión (categorías o autores) compilados para decidir en tiempo
+ * constante: {@code *} concede todo, los valores exactos van a un conjunto hash y los
+ * prefijos ("Robert*") a un array ordenado sin prefijos redundantes, donde basta mirar
+ * el mayor prefijo menor o igual que el valor.
+ */
+public final class EntitlementMatcher implements Serializable {
+
+    public static final String ANY = "*";
+
+    private static final EntitlementMatcher NONE = new EntitlementMatcher(false, Set.of(), new String[0]);
+
+    private final boolean any;
+    private final Set<String> exact;
+    private final String[] prefixes;
+
+    private EntitlementMatcher(boolean any, Set<String> exact, String[] prefixes) {
+        this.any = any;
+        this.exact = exact;
+        this.prefixes = prefixes;
+    }
+
+    public static EntitlementMatcher none() {
+        return NONE;
+    }
+
+    public static EntitlementMatcher compile(Collection<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return NONE;
+        }
+        Set<String> exact = new HashSet<>();
+        List<String> prefixes = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            if (pattern.equals(ANY)) {
+                return new EntitlementMatcher(true, Set.of(), new String[0]);
+            }
+            if (pattern.endsWith(ANY)) {
+                prefixes.add(pattern.substring(0, pattern.length() - 1));
+            } else {
+                exact.add(pattern);
+            }
+        }
+        // Un prefijo contenido en otro más corto no añade nada; quitarlos permite la búsqueda binaria
+        prefixes.sort(null);
+        List<String> minimal = new ArrayList<>();
+        for (String prefix : prefixes) {
+            if (minimal.isEmpty() || !prefix.startsWith(minimal.get(minimal.size() - 1))) {
+                minimal.add(prefix);
+            }
+        }
+        String[] sorted = minimal.toArray(new String[0]);
+        exact.removeIf(value -> hasPrefix(sorted, value));
+        return new EntitlementMatcher(false, Set.copyOf(exact), sorted);
+    }
+
+    public boolean matches(String value) {
+        if (value == null) {
+            return false;
+        }
+        return any || exact.contains(value) || hasPrefix(prefixes, value);
+    }
+
+    /**
+     * Sin comodines: los valores permitidos son exactamente {@link #values()}.
+     */
+    public boolean isExact() {
+        return !any && prefixes.length == 0;
+    }
+
+    public Set<String> values() {
+        return exact;
+    }
+
+    /**
+     * Forma serializable en un claim del token; {@link #compile} la vuelve a leer.
+     */
+    public List<String> patterns() {
+        if (any) {
+            return List.of(ANY);
+        }
+        List<String> patterns = new ArrayList<>(exact);
+        for (String prefix : prefixes) {
+            patterns.add(prefix + ANY);
+        }
+        patterns.sort(null);
+        return patterns;
+    }
+
+    private static boolean hasPrefix(String[] prefixes, String value) {
+        if (prefixes.length == 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(prefixes, value);
+        if (index >= 0) {
+            return true;
+        }
+        int floor = -index - 2;
+        return floor >= 0 && value.startsWith(prefixes[floor]);
+    }
+}
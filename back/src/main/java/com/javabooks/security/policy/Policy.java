@@ -0,0 +1,15 @@
+package com.javabooks.security.policy;
+
+/**
+ * Permisos de lectura compilados: un libro es visible si su categoría y su autor están
+ * concedidos. El id identifica el conjunto por su contenido; los usuarios con los mismos
+ * permisos comparten instancia e id, que es lo que viaja en el claim compacto del token.
+ */
+public record Policy(String id, EntitlementMatcher categorias, EntitlementMatcher autores) {
+
+    public static final Policy NONE = new Policy("", EntitlementMatcher.none(), EntitlementMatcher.none());
+
+    public boolean allows(String categoria, String autor) {
+        return categorias.matches(categoria) && autores.matches(autor);
+    }
+}
@@ -0,0 +1,210 @@
+package com.javabooks.security.policy;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Motor de permisos. Las reglas del almacén se compilan en un {@link Policy} por
+ * usuario (sus reglas más las de {@code *}) y se publican de golpe en un mapa
+ * inmutable: decidir es un {@code get} y dos {@link EntitlementMatcher#matches}.
+ * {@link #reload()} vuelve a leer la tabla sin parar las lecturas en curso.
+ *
+ * Cada conjunto distinto de permisos se guarda además en un diccionario por id
+ * ({@link Policy#id()}). El token solo lleva ese id y el resource server lo resuelve
+ * aquí. Un id que una recarga deja sin usuarios sigue resolviendo a lo que concedía
+ * durante {@code history} (por defecto 24 h, la vida de un access token), igual que si
+ * los permisos fueran dentro del token; pasado ese tiempo deja de resolver y el token no
+ * concede nada, así una recarga acaba retirando los permisos de los tokens ya emitidos.
+ */
+@Component
+public class PolicyEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(PolicyEngine.class);
+
+    private final EntitlementEntityRepository repository;
+
+    private static final long CURRENT = Long.MAX_VALUE;
+
+    private final Duration history;
+    private final Clock clock;
+
+    private final Map<String, Entry> dictionary = new ConcurrentHashMap<>();
+
+    private volatile Compiled compiled = new Compiled(Map.of(), Policy.NONE);
+
+    @Autowired
+    public PolicyEngine(EntitlementEntityRepository repository,
+                        @Value("${libreria.security.entitlements.history:24h}") Duration history) {
+        this(repository, history, Clock.systemUTC());
+    }
+
+    PolicyEngine(EntitlementEntityRepository repository, Duration history, Clock clock) {
+        this.repository = repository;
+        this.history = history;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (repository.count() == 0) {
+            repository.saveAll(defaultRules());
+        }
+        reload();
+    }
+
+    /**
+     * Recompila las reglas del almacén y devuelve cuántas se cargaron.
+     */
+    public int reload() {
+        List<EntitlementEntity> rules = repository.findAllByOrderByIdAsc();
+        load(rules);
+        logger.info("Permisos cargados: {} reglas, {} usuarios", rules.size(), compiled.policies().size());
+        return rules.size();
+    }
+
+    public Policy policyFor(String username) {
+        Compiled current = compiled;
+        return username == null ? current.defaults() : current.policies().getOrDefault(username, current.defaults());
+    }
+
+    public boolean allows(String username, String categoria, String autor) {
+        return policyFor(username).allows(categoria, autor);
+    }
+
+    /**
+     * Permisos de un claim compacto. Vacío si el id no lo generó este servidor o si
+     * una recarga lo retiró hace más de {@code history}.
+     */
+    public Optional<Policy> policyById(String id) {
+        Entry entry = id == null ? null : dictionary.get(id);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.expired(clock.millis(), history)) {
+            dictionary.remove(id, entry);
+            return Optional.empty();
+        }
+        return Optional.of(entry.policy());
+    }
+
+    public int users() {
+        return compiled.policies().size();
+    }
+
+    synchronized void load(Collection<EntitlementEntity> rules) {
+        List<String> defaultCategorias = new ArrayList<>();
+        List<String> defaultAutores = new ArrayList<>();
+        Map<String, Patterns> byUser = new HashMap<>();
+        for (EntitlementEntity rule : rules) {
+            boolean categoria = rule.getTipo() == EntitlementEntity.Tipo.CATEGORIA;
+            if (EntitlementMatcher.ANY.equals(rule.getSujeto())) {
+                (categoria ? defaultCategorias : defaultAutores).add(rule.getPatron());
+            } else {
+                Patterns patterns = byUser.computeIfAbsent(rule.getSujeto(), key -> new Patterns());
+                (categoria ? patterns.categorias : patterns.autores).add(rule.getPatron());
+            }
+        }
+
+        Set<String> current = new HashSet<>();
+        Policy defaults = intern(EntitlementMatcher.compile(defaultCategorias),
+                EntitlementMatcher.compile(defaultAutores), current);
+        Map<String, Policy> policies = new HashMap<>(byUser.size() * 2);
+        for (Map.Entry<String, Patterns> entry : byUser.entrySet()) {
+            Patterns patterns = entry.getValue();
+            patterns.categorias.addAll(defaultCategorias);
+            patterns.autores.addAll(defaultAutores);
+            policies.put(entry.getKey(), intern(EntitlementMatcher.compile(patterns.categorias),
+                    EntitlementMatcher.compile(patterns.autores), current));
+        }
+        compiled = new Compiled(Map.copyOf(policies), defaults);
+
+        // Los que ya no usa nadie empiezan a contar su ventana; los que la agotaron se van
+        long now = clock.millis();
+        dictionary.replaceAll((id, entry) -> current.contains(id) || entry.retiredAt() != CURRENT
+                ? entry : new Entry(entry.policy(), now));
+        dictionary.values().removeIf(entry -> entry.expired(now, history));
+    }
+
+    private Policy intern(EntitlementMatcher categorias, EntitlementMatcher autores, Set<String> current) {
+        String id = id(categorias, autores);
+        current.add(id);
+        // Si vuelve a usarse un id retirado, vuelve a ser vigente
+        return dictionary.compute(id, (key, entry) -> entry != null
+                ? (entry.retiredAt() == CURRENT ? entry : new Entry(entry.policy(), CURRENT))
+                : new Entry(new Policy(key, categorias, autores), CURRENT)).policy();
+    }
+
+    /**
+     * Id por contenido: SHA-256 de los patrones canónicos, 96 bits en base64url (16 caracteres).
+     */
+    static String id(EntitlementMatcher categorias, EntitlementMatcher autores) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String categoria : categorias.patterns()) {
+            digest.update(("c:" + categoria + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        for (String autor : autores.patterns()) {
+            digest.update(("a:" + autor + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), 12));
+    }
+
+    /**
+     * Los permisos que hasta ahora estaban fijados en JwtCustomizer.
+     */
+    private static List<EntitlementEntity> defaultRules() {
+        List<EntitlementEntity> rules = new ArrayList<>();
+        rules.add(new EntitlementEntity(EntitlementMatcher.ANY, EntitlementEntity.Tipo.CATEGORIA, "PROGRAMMING"));
+        rules.add(new EntitlementEntity(EntitlementMatcher.ANY, EntitlementEntity.Tipo.AUTOR, "Robert C. Martin"));
+        for (String categoria : List.of("FRAMEWORKS", "ARCHITECTURE", "DATABASES")) {
+            rules.add(new EntitlementEntity("admin", EntitlementEntity.Tipo.CATEGORIA, categoria));
+        }
+        for (String autor : List.of("Joshua Bloch", "Craig Walls", "Martin Fowler", "Eric Evans")) {
+            rules.add(new EntitlementEntity("admin", EntitlementEntity.Tipo.AUTOR, autor));
+        }
+        rules.add(new EntitlementEntity("user", EntitlementEntity.Tipo.CATEGORIA, "FRAMEWORKS"));
+        rules.add(new EntitlementEntity("user", EntitlementEntity.Tipo.AUTOR, "Craig Walls"));
+        return rules;
+    }
+
+    private static final class Patterns {
+        private final List<String> categorias = new ArrayList<>();
+        private final List<String> autores = new ArrayList<>();
+    }
+
+    private record Compiled(Map<String, Policy> policies, Policy defaults) {}
+
+    /**
+     * Conjunto del diccionario y desde cuándo no lo usa ningún usuario ({@code CURRENT} si sigue en uso).
+     */
+    private record Entry(Policy policy, long retiredAt) {
+        boolean expired(long now, Duration history) {
+            return retiredAt != CURRENT && now - retiredAt >= history.toMillis();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.javabooks.security.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mapa con caducidad por entrada, repartido en shards con un lock cada uno. Cada shard
+ * guarda sus entradas en orden de inserción y tiene un tope: al llenarse se expulsa la
+ * más antigua, así la memoria no pasa de {@code maxEntries} aunque nadie barra.
+ *
+ * El {@link Listener} se llama dentro del lock del shard, para que los índices
+ * secundarios de quien usa el almacén cambien a la vez que la entrada.
+ */
+final class ShardedExpiringStore<K, V> {
+
+    interface Listener<K, V> {
+        void onPut(K key, V previous, V current);
+
+        void onRemove(K key, V value);
+    }
+
+    private final Shard<K, V>[] shards;
+    private final int maxPerShard;
+    private final Listener<K, V> listener;
+
+    @SuppressWarnings("unchecked")
+    ShardedExpiringStore(int shardCount, int maxEntries, Listener<K, V> listener) {
+        if (shardCount <= 0 || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("El número de shards debe ser una potencia de dos");
+        }
+        if (maxEntries < shardCount) {
+            throw new IllegalArgumentException("maxEntries debe ser al menos el número de shards");
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard<>();
+        }
+        this.maxPerShard = maxEntries / shardCount;
+        this.listener = listener;
+    }
+
+    V get(K key, long now) {
+        Shard<K, V> shard = shard(key);
+        shard.lock.lock();
+        try {
+            Entry<V> entry = shard.entries.get(key);
+            return entry != null && entry.expiresAt > now ? entry.value : null;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    void put(K key, V value, long expiresAt) {
+        Shard<K, V> shard = shard(key);
+        shard.lock.lock();
+        try {
+            Entry<V> previous = shard.entries.remove(key);
+            if (previous == null && shard.entries.size() >= maxPerShard) {
+                evictEldest(shard);
+            }
+            shard.entries.put(key, new Entry<>(value, expiresAt));
+            listener.onPut(key, previous != null ? previous.value : null, value);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    V remove(K key) {
+        Shard<K, V> shard = shard(key);
+        shard.lock.lock();
+        try {
+            Entry<V> removed = shard.entries.remove(key);
+            if (removed == null) {
+                return null;
+            }
+            listener.onRemove(key, removed.value);
+            return removed.value;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Quita las entradas caducadas, un shard cada vez para no frenar al resto.
+     */
+    int sweep(long now) {
+        int removed = 0;
+        for (Shard<K, V> shard : shards) {
+            shard.lock.lock();
+            try {
+                Iterator<Map.Entry<K, Entry<V>>> iterator = shard.entries.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<K, Entry<V>> next = iterator.next();
+                    if (next.getValue().expiresAt <= now) {
+                        iterator.remove();
+                        listener.onRemove(next.getKey(), next.getValue().value);
+                        removed++;
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return removed;
+    }
+
+    int size() {
+        int size = 0;
+        for (Shard<K, V> shard : shards) {
+            shard.lock.lock();
+            try {
+                size += shard.entries.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private void evictEldest(Shard<K, V> shard) {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = shard.entries.entrySet().iterator();
+        Map.Entry<K, Entry<V>> eldest = iterator.next();
+        iterator.remove();
+        listener.onRemove(eldest.getKey(), eldest.getValue().value);
+    }
+
+    private Shard<K, V> shard(K key) {
+        int hash = key.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    private static final class Shard<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+    }
+
+    private record Entry<V>(V value, long expiresAt) {}
+}
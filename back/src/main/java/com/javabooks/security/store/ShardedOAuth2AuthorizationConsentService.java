@@ -0,0 +1,112 @@
+package com.javabooks.security.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsent;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsentService;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consentimientos en memoria por (cliente, usuario), en shards con lock y acotados.
+ * Cada consentimiento vale {@code ttl} desde que se guardó por última vez; pasado ese
+ * tiempo se vuelve a pedir, y el barrido periódico libera la memoria.
+ */
+public class ShardedOAuth2AuthorizationConsentService implements OAuth2AuthorizationConsentService, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedOAuth2AuthorizationConsentService.class);
+
+    private static final ShardedExpiringStore.Listener<Key, OAuth2AuthorizationConsent> NO_INDEXES =
+            new ShardedExpiringStore.Listener<>() {
+                @Override
+                public void onPut(Key key, OAuth2AuthorizationConsent previous, OAuth2AuthorizationConsent current) {
+                }
+
+                @Override
+                public void onRemove(Key key, OAuth2AuthorizationConsent value) {
+                }
+            };
+
+    private final ShardedExpiringStore<Key, OAuth2AuthorizationConsent> store;
+    private final Duration ttl;
+    private final Clock clock;
+    private final ScheduledExecutorService sweeper;
+
+    public ShardedOAuth2AuthorizationConsentService(int shards, int maxEntries, Duration ttl, Duration sweepInterval) {
+        this(shards, maxEntries, ttl, sweepInterval, Clock.systemUTC());
+    }
+
+    ShardedOAuth2AuthorizationConsentService(int shards, int maxEntries, Duration ttl, Duration sweepInterval,
+                                             Clock clock) {
+        this.store = new ShardedExpiringStore<>(shards, maxEntries, NO_INDEXES);
+        this.ttl = ttl;
+        this.clock = clock;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oauth2-consent-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!sweepInterval.isZero() && !sweepInterval.isNegative()) {
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepInterval.toMillis(), sweepInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void save(OAuth2AuthorizationConsent consent) {
+        if (consent == null) {
+            throw new IllegalArgumentException("El consentimiento no puede ser null");
+        }
+        store.put(key(consent), consent, clock.instant().plus(ttl).toEpochMilli());
+    }
+
+    @Override
+    public void remove(OAuth2AuthorizationConsent consent) {
+        if (consent == null) {
+            throw new IllegalArgumentException("El consentimiento no puede ser null");
+        }
+        store.remove(key(consent));
+    }
+
+    @Override
+    public OAuth2AuthorizationConsent findById(String registeredClientId, String principalName) {
+        if (registeredClientId == null || principalName == null) {
+            throw new IllegalArgumentException("El cliente y el usuario son obligatorios");
+        }
+        return store.get(new Key(registeredClientId, principalName), clock.millis());
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public int sweep() {
+        return store.sweep(clock.millis());
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private void sweepQuietly() {
+        try {
+            int removed = sweep();
+            if (removed > 0) {
+                logger.debug("Consentimientos caducados eliminados: {}", removed);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error al barrer los consentimientos caducados", e);
+        }
+    }
+
+    private static Key key(OAuth2AuthorizationConsent consent) {
+        return new Key(consent.getRegisteredClientId(), consent.getPrincipalName());
+    }
+
+    private record Key(String registeredClientId, String principalName) {}
+}
@@ -0,0 +1,210 @@
+package com.javabooks.security.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2DeviceCode;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.core.OAuth2UserCode;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.endpoint.OidcParameterNames;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OAuth2AuthorizationService en memoria, acotado y con caducidad.
+ *
+ * Las autorizaciones viven en un {@link ShardedExpiringStore} por id. Cada tipo de
+ * token (state, code, access, refresh, id token, device y user code) tiene su índice
+ * valor → id en un ConcurrentHashMap, mantenido dentro del lock del shard; buscar un
+ * token es una lectura del índice y otra del shard, sin recorrer nada, tenga el almacén
+ * los tokens que tenga.
+ *
+ * Una autorización caduca con el último de sus tokens; sin tokens (esperando
+ * consentimiento) vale {@code pendingTtl}. Un hilo barre las caducadas cada
+ * {@code sweepInterval} y, si se llega al tope, se expulsan las más antiguas.
+ */
+public class ShardedOAuth2AuthorizationService implements OAuth2AuthorizationService, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedOAuth2AuthorizationService.class);
+
+    private static final Map<String, Class<? extends OAuth2Token>> TOKEN_TYPES = new LinkedHashMap<>();
+
+    static {
+        TOKEN_TYPES.put(OAuth2ParameterNames.CODE, OAuth2AuthorizationCode.class);
+        TOKEN_TYPES.put(OAuth2ParameterNames.ACCESS_TOKEN, OAuth2AccessToken.class);
+        TOKEN_TYPES.put(OAuth2ParameterNames.REFRESH_TOKEN, OAuth2RefreshToken.class);
+        TOKEN_TYPES.put(OidcParameterNames.ID_TOKEN, OidcIdToken.class);
+        TOKEN_TYPES.put(OAuth2ParameterNames.DEVICE_CODE, OAuth2DeviceCode.class);
+        TOKEN_TYPES.put(OAuth2ParameterNames.USER_CODE, OAuth2UserCode.class);
+    }
+
+    private final ShardedExpiringStore<String, OAuth2Authorization> store;
+    private final Map<String, Map<String, String>> indexes = new LinkedHashMap<>();
+    private final Duration pendingTtl;
+    private final Clock clock;
+    private final ScheduledExecutorService sweeper;
+
+    public ShardedOAuth2AuthorizationService(int shards, int maxEntries, Duration pendingTtl, Duration sweepInterval) {
+        this(shards, maxEntries, pendingTtl, sweepInterval, Clock.systemUTC());
+    }
+
+    ShardedOAuth2AuthorizationService(int shards, int maxEntries, Duration pendingTtl, Duration sweepInterval,
+                                      Clock clock) {
+        indexes.put(OAuth2ParameterNames.STATE, new ConcurrentHashMap<>());
+        for (String type : TOKEN_TYPES.keySet()) {
+            indexes.put(type, new ConcurrentHashMap<>());
+        }
+        this.store = new ShardedExpiringStore<>(shards, maxEntries, new Indexer());
+        this.pendingTtl = pendingTtl;
+        this.clock = clock;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oauth2-authorization-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!sweepInterval.isZero() && !sweepInterval.isNegative()) {
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepInterval.toMillis(), sweepInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void save(OAuth2Authorization authorization) {
+        if (authorization == null) {
+            throw new IllegalArgumentException("La autorización no puede ser null");
+        }
+        store.put(authorization.getId(), authorization, expiresAt(authorization));
+    }
+
+    @Override
+    public void remove(OAuth2Authorization authorization) {
+        if (authorization == null) {
+            throw new IllegalArgumentException("La autorización no puede ser null");
+        }
+        store.remove(authorization.getId());
+    }
+
+    @Override
+    public OAuth2Authorization findById(String id) {
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("El id no puede estar vacío");
+        }
+        return store.get(id, clock.millis());
+    }
+
+    @Override
+    public OAuth2Authorization findByToken(String token, OAuth2TokenType tokenType) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("El token no puede estar vacío");
+        }
+        if (tokenType != null) {
+            Map<String, String> index = indexes.get(tokenType.getValue());
+            return index != null ? find(index.get(token), tokenType.getValue(), token) : null;
+        }
+        for (Map.Entry<String, Map<String, String>> index : indexes.entrySet()) {
+            OAuth2Authorization found = find(index.getValue().get(token), index.getKey(), token);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Quita las autorizaciones caducadas; devuelve cuántas.
+     */
+    public int sweep() {
+        return store.sweep(clock.millis());
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private OAuth2Authorization find(String id, String type, String token) {
+        if (id == null) {
+            return null;
+        }
+        OAuth2Authorization authorization = store.get(id, clock.millis());
+        // El índice se actualiza con la entrada, pero se comprueba por si el token cambió entre las dos lecturas
+        return authorization != null && token.equals(tokenValue(authorization, type)) ? authorization : null;
+    }
+
+    private long expiresAt(OAuth2Authorization authorization) {
+        Instant latest = null;
+        for (Class<? extends OAuth2Token> type : TOKEN_TYPES.values()) {
+            OAuth2Authorization.Token<? extends OAuth2Token> token = authorization.getToken(type);
+            Instant expiresAt = token != null ? token.getToken().getExpiresAt() : null;
+            if (expiresAt != null && (latest == null || expiresAt.isAfter(latest))) {
+                latest = expiresAt;
+            }
+        }
+        return (latest != null ? latest : clock.instant().plus(pendingTtl)).toEpochMilli();
+    }
+
+    private static String tokenValue(OAuth2Authorization authorization, String type) {
+        if (OAuth2ParameterNames.STATE.equals(type)) {
+            return authorization.getAttribute(OAuth2ParameterNames.STATE);
+        }
+        OAuth2Authorization.Token<? extends OAuth2Token> token = authorization.getToken(TOKEN_TYPES.get(type));
+        return token != null ? token.getToken().getTokenValue() : null;
+    }
+
+    private void sweepQuietly() {
+        try {
+            int removed = sweep();
+            if (removed > 0) {
+                logger.debug("Autorizaciones caducadas eliminadas: {}", removed);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error al barrer las autorizaciones caducadas", e);
+        }
+    }
+
+    private final class Indexer implements ShardedExpiringStore.Listener<String, OAuth2Authorization> {
+
+        @Override
+        public void onPut(String id, OAuth2Authorization previous, OAuth2Authorization current) {
+            for (Map.Entry<String, Map<String, String>> index : indexes.entrySet()) {
+                String before = previous != null ? tokenValue(previous, index.getKey()) : null;
+                String after = tokenValue(current, index.getKey());
+                if (before != null && !before.equals(after)) {
+                    index.getValue().remove(before, id);
+                }
+                if (after != null) {
+                    index.getValue().put(after, id);
+                }
+            }
+        }
+
+        @Override
+        public void onRemove(String id, OAuth2Authorization removed) {
+            for (Map.Entry<String, Map<String, String>> index : indexes.entrySet()) {
+                String value = tokenValue(removed, index.getKey());
+                if (value != null) {
+                    index.getValue().remove(value, id);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.javabooks.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javabooks.model.Book;
+import com.javabooks.model.ImportResult;
+import com.javabooks.repository.BookRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ * Importación masiva de libros en NDJSON o CSV.
+ *
+ * El cuerpo se lee como flujo y se corta en lotes de registros. Cada lote se parsea
+ * y valida en un pool de hilos mientras se sigue leyendo; los lotes se aplican al
+ * repositorio en orden de llegada con {@link BookRepository#saveAll}. Como mucho hay
+ * {@code 2 * paralelismo} lotes en vuelo, así la memoria no depende del tamaño del fichero.
+ */
+@Service
+public class BookImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookImportService.class);
+
+    private static final List<String> CSV_COLUMNS =
+            List.of("id", "titulo", "autor", "cantidadpaginas", "categoria", "contenido");
+
+    private final BookService bookService;
+    private final BookRepository bookRepository;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxErrors;
+    private final int maxInFlight;
+    private final int maxRecordChars;
+    private final ExecutorService parsers;
+
+    public BookImportService(BookService bookService, BookRepository bookRepository, ObjectMapper objectMapper,
+                             @Value("${libreria.book.import.batch-size:1000}") int batchSize,
+                             @Value("${libreria.book.import.parallelism:0}") int parallelism,
+                             @Value("${libreria.book.import.max-errors:100}") int maxErrors,
+                             @Value("${libreria.book.import.max-record-chars:1048576}") int maxRecordChars) {
+        this.bookService = bookService;
+        this.bookRepository = bookRepository;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxErrors = maxErrors;
+        this.maxRecordChars = maxRecordChars;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.maxInFlight = threads * 2;
+        this.parsers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "book-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ImportResult importBooks(InputStream body, Format format, Authentication authentication) throws IOException {
+        // Autorización una vez por petición; por fila solo se consultan los conjuntos ya resueltos
+        Predicate<Book> canWrite = bookService.writeFilter(authentication);
+
+        RecordReader reader = new RecordReader(
+                new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 1 << 16), format, maxRecordChars);
+        int[] columns = format == Format.CSV ? readHeader(reader) : null;
+
+        ImportResult result = new ImportResult();
+        Deque<Future<Parsed>> inFlight = new ArrayDeque<>();
+        try {
+            List<Row> rows = new ArrayList<>(batchSize);
+            Row row;
+            while ((row = reader.next()) != null) {
+                rows.add(row);
+                if (rows.size() == batchSize) {
+                    inFlight.add(submit(rows, columns, canWrite));
+                    rows = new ArrayList<>(batchSize);
+                    if (inFlight.size() >= maxInFlight) {
+                        apply(inFlight.poll(), result);
+                    }
+                }
+            }
+            if (!rows.isEmpty()) {
+                inFlight.add(submit(rows, columns, canWrite));
+            }
+            while (!inFlight.isEmpty()) {
+                apply(inFlight.poll(), result);
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+        logger.info("Importación terminada: {} importados, {} rechazados", result.getImportados(), result.getRechazados());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parsers.shutdownNow();
+    }
+
+    private Future<Parsed> submit(List<Row> rows, int[] columns, Predicate<Book> canWrite) {
+        return parsers.submit(() -> {
+            Parsed parsed = new Parsed(new ArrayList<>(rows.size()), new ArrayList<>());
+            for (Row row : rows) {
+                try {
+                    if (row.error() != null) {
+                        throw new IllegalArgumentException(row.error());
+                    }
+                    Book book = columns != null ? parseCsv(row.text(), columns) : parseJson(row.text());
+                    validate(book);
+                    if (!canWrite.test(book)) {
+                        throw new IllegalArgumentException("No tiene acceso a la categoría " + book.getCategoria()
+                                + " o al autor " + book.getAutor());
+                    }
+                    parsed.books().add(book);
+                } catch (IllegalArgumentException e) {
+                    parsed.errors().add(new ImportResult.RowError(row.line(), e.getMessage()));
+                }
+            }
+            return parsed;
+        });
+    }
+
+    private void apply(Future<Parsed> future, ImportResult result) throws IOException {
+        Parsed parsed;
+        try {
+            parsed = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Importación interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error procesando un lote", e.getCause());
+        }
+
+        for (ImportResult.RowError error : parsed.errors()) {
+            reject(result, error);
+        }
+        if (parsed.books().isEmpty()) {
+            return;
+        }
+        try {
+            bookRepository.saveAll(parsed.books());
+            result.setImportados(result.getImportados() + parsed.books().size());
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo guardar un lote de {} libros", parsed.books().size(), e);
+            result.setRechazados(result.getRechazados() + parsed.books().size());
+            if (result.getErrores().size() < maxErrors) {
+                result.getErrores().add(new ImportResult.RowError(0, "Lote de " + parsed.books().size()
+                        + " libros no guardado: " + e.getMessage()));
+            }
+        }
+    }
+
+    private void reject(ImportResult result, ImportResult.RowError error) {
+        result.setRechazados(result.getRechazados() + 1);
+        if (result.getErrores().size() < maxErrors) {
+            result.getErrores().add(error);
+        }
+    }
+
+    private Book parseJson(String text) {
+        // null, un array o un escalar son JSON válido pero no un libro
+        if (!text.stripLeading().startsWith("{")) {
+            throw new IllegalArgumentException("La fila no es un objeto JSON");
+        }
+        try {
+            return objectMapper.readValue(text, Book.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("JSON no válido: " + e.getOriginalMessage());
+        }
+    }
+
+    private int[] readHeader(RecordReader reader) throws IOException {
+        Row header = reader.next();
+        if (header == null) {
+            throw new IllegalArgumentException("El CSV no tiene cabecera");
+        }
+        if (header.error() != null) {
+            throw new IllegalArgumentException("Cabecera no válida: " + header.error());
+        }
+        List<String> names = splitCsv(header.text());
+        int[] columns = new int[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i).strip().toLowerCase(Locale.ROOT);
+            columns[i] = CSV_COLUMNS.indexOf(name);
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Columna no soportada: " + names.get(i));
+            }
+        }
+        return columns;
+    }
+
+    private static Book parseCsv(String text, int[] columns) {
+        List<String> values = splitCsv(text);
+        if (values.size() != columns.length) {
+            throw new IllegalArgumentException("Se esperaban " + columns.length + " columnas y hay " + values.size());
+        }
+        Book book = new Book();
+        for (int i = 0; i < columns.length; i++) {
+            String value = values.get(i);
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (columns[i]) {
+                case 0 -> book.setId(parseNumber(value, "id").longValue());
+                case 1 -> book.setTitulo(value);
+                case 2 -> book.setAutor(value);
+                case 3 -> book.setCantidadPaginas(parsePaginas(value));
+                case 4 -> book.setCategoria(value);
+                default -> book.setContenido(value);
+            }
+        }
+        return book;
+    }
+
+    private static Long parseNumber(String value, String column) {
+        try {
+            return Long.parseLong(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor no numérico en " + column + ": " + value);
+        }
+    }
+
+    private static int parsePaginas(String value) {
+        long paginas = parseNumber(value, "cantidadPaginas");
+        if (paginas < Integer.MIN_VALUE || paginas > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("cantidadPaginas fuera de rango: " + value);
+        }
+        return (int) paginas;
+    }
+
+    /**
+     * Campos de un registro CSV (RFC 4180): comillas dobles para delimitar y "" como escape.
+     */
+    static List<String> splitCsv(String text) {
+        List<String> values = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        values.add(field.toString());
+        return values;
+    }
+
+    private static void validate(Book book) {
+        if (book.getTitulo() == null || book.getTitulo().isBlank()) {
+            throw new IllegalArgumentException("El título es obligatorio");
+        }
+        if (book.getAutor() == null || book.getAutor().isBlank()) {
+            throw new IllegalArgumentException("El autor es obligatorio");
+        }
+        if (book.getCategoria() == null || book.getCategoria().isBlank()) {
+            throw new IllegalArgumentException("La categoría es obligatoria");
+        }
+        if (book.getCantidadPaginas() != null && book.getCantidadPaginas() < 0) {
+            throw new IllegalArgumentException("cantidadPaginas no puede ser negativa");
+        }
+    }
+
+    public enum Format {
+        NDJSON, CSV;
+
+        public static Format fromContentType(String contentType) {
+            String type = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+            if (type.startsWith("application/x-ndjson") || type.startsWith("application/jsonl")) {
+                return NDJSON;
+            }
+            if (type.startsWith("text/csv")) {
+                return CSV;
+            }
+            throw new IllegalArgumentException("Formato no soportado: " + contentType);
+        }
+    }
+
+    // error no nulo: el registro no se pudo leer y solo cuenta como fila rechazada
+    private record Row(long line, String text, String error) {}
+
+    private record Parsed(List<Book> books, List<ImportResult.RowError> errors) {}
+
+    /**
+     * Registros no vacíos con su número de línea. En CSV un campo entre comillas puede
+     * ocupar varias líneas: se siguen leyendo mientras las comillas estén desparejadas,
+     * hasta {@code maxRecordChars}. Pasado ese tamaño se toma por una comilla suelta:
+     * se rechaza solo la línea que la abre y se sigue leyendo desde la siguiente.
+     */
+    private static final class RecordReader {
+        private final BufferedReader reader;
+        private final Format format;
+        private final int maxRecordChars;
+        private long line;
+
+        RecordReader(BufferedReader reader, Format format, int maxRecordChars) {
+            this.reader = reader;
+            this.format = format;
+            this.maxRecordChars = maxRecordChars;
+        }
+
+        Row next() throws IOException {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                long start = line;
+                if (format == Format.CSV && quotes(text) % 2 != 0) {
+                    reader.mark(maxRecordChars);
+                    StringBuilder record = new StringBuilder(text);
+                    long open = quotes(text);
+                    // Cota de lo leído desde la marca, contando dos caracteres de fin de línea
+                    long read = 0;
+                    String more;
+                    while (open % 2 != 0 && (more = reader.readLine()) != null) {
+                        line++;
+                        read += more.length() + 2;
+                        if (text.length() + read > maxRecordChars) {
+                            return unclosed(start);
+                        }
+                        record.append('\n').append(more);
+                        open += quotes(more);
+                    }
+                    text = record.toString();
+                }
+                return new Row(start, text, null);
+            }
+            return null;
+        }
+
+        private Row unclosed(long start) {
+            try {
+                reader.reset();
+                line = start;
+            } catch (IOException e) {
+                // Una sola línea pasó de la marca: se sigue detrás de ella
+            }
+            return new Row(start, null, "Registro de más de " + maxRecordChars + " caracteres: comillas sin cerrar");
+        }
+
+        private static long quotes(String text) {
+            return text.chars().filter(c -> c == '"').count();
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package com.javabooks.service;
 
 import com.javabooks.model.Book;
+import com.javabooks.model.CursorPage;
+import com.javabooks.model.SearchHit;
+import com.javabooks.model.Suggestion;
+import com.javabooks.repository.BookContent;
 import com.javabooks.repository.BookRepository;
+import com.javabooks.repository.BookSort;
+import com.javabooks.security.AuthorizationContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
@@ -10,8 +16,12 @@ import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,127 +33,231 @@ public class BookService {
     private BookRepository bookRepository;
     
     public List<Book> findAll(Authentication authentication) {
-        logger.info("=== Authentication Details ===");
-        logger.info("Authentication object: {}", authentication);
-        logger.info("Principal: {}", authentication.getPrincipal());
-        logger.info("Name: {}", authentication.getName());
-        logger.info("Authorities: {}", authentication.getAuthorities());
-        
-        // Si es un JWT, loggear los claims
-        if (authentication.getPrincipal() instanceof Jwt) {
-            Jwt jwt = (Jwt) authentication.getPrincipal();
-            logger.info("JWT Subject: {}", jwt.getSubject());
-            logger.info("JWT Claims: {}", jwt.getClaims());
-            logger.info("User roles: {}", jwt.getClaimAsStringList("roles"));
-            logger.info("User categories: {}", jwt.getClaimAsStringList("categorias"));
-            logger.info("User authors: {}", jwt.getClaimAsStringList("autores"));
+        // Volcado de la autenticación solo en debug: sin coste en cada listado a nivel info
+        if (logger.isDebugEnabled()) {
+            logger.debug("=== Authentication Details ===");
+            logger.debug("Authentication object: {}", authentication);
+            logger.debug("Principal: {}", authentication.getPrincipal());
+            logger.debug("Name: {}", authentication.getName());
+            logger.debug("Authorities: {}", authentication.getAuthorities());
+
+            // Si es un JWT, loggear los claims
+            if (authentication.getPrincipal() instanceof Jwt) {
+                Jwt jwt = (Jwt) authentication.getPrincipal();
+                logger.debug("JWT Subject: {}", jwt.getSubject());
+                logger.debug("JWT Claims: {}", jwt.getClaims());
+                logger.debug("User roles: {}", jwt.getClaimAsStringList("roles"));
+                logger.debug("User categories: {}", jwt.getClaimAsStringList("categorias"));
+                logger.debug("User authors: {}", jwt.getClaimAsStringList("autores"));
+            }
+
+            logger.debug("User scopes: {}", authentication.getAuthorities().stream()
+                    .map(authority -> authority.getAuthority())
+                    .collect(Collectors.joining(", ")));
         }
-        
-        logger.info("User scopes: {}", authentication.getAuthorities().stream()
-                .map(authority -> authority.getAuthority())
-                .collect(Collectors.joining(", ")));
-        
+
         // Validar que el usu
 
         // Validar que el usuario tiene permisos de lectura
-        validateReadAccess(authentication);
-        
-        List<Book> books = bookRepository.findAll();
-        // if (book.isPresent()) {
-        //     validateCategoryAccess(book.get().getCategoria(), authentication);
-        //     validateAuthorAccess(book.get().getAutor(), authentication);
-        // }
-        return books;
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
+
+        // Solo las particiones de las categorías permitidas, y dentro de ellas los autores permitidos.
+        // Con comodines no hay conjunto que empujar al almacenamiento: se filtra el catálogo
+        if (context.getCategorias().isExact() && context.getAutores().isExact()) {
+            return bookRepository.findAll(context.getCategorias().values(), context.getAutores().values());
+        }
+        return bookRepository.findAll().stream()
+                .filter(book -> canRead(book, context))
+                .collect(Collectors.toList());
+    }
+
+    public CursorPage<Book> findPage(BookSort sort, boolean descending, String cursor, int size,
+                                     Authentication authentication) {
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
+
+        // Mismo criterio que findAll: categoría y autor permitidos
+        return bookRepository.findPage(sort, descending, cursor, size, book -> canRead(book, context));
+    }
+
+    /**
+     * Versión de modificación del catálogo visible para el usuario, sin leer ningún libro:
+     * con categorías exactas la de esas categorías; con comodines, la de todo el catálogo.
+     */
+    public BookRepository.Version findVersion(Authentication authentication) {
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
+
+        if (context.getCategorias().isExact()) {
+            return bookRepository.version(context.getCategorias().values());
+        }
+        return bookRepository.version();
+    }
+
+    /**
+     * Recorrido completo del catálogo visible para el usuario, en orden de id. El permiso
+     * se comprueba al llamar; las páginas se piden al repositorio a medida que se consume
+     * el iterador, así solo hay una página en memoria y un consumidor lento frena la lectura.
+     */
+    public Iterable<Book> export(int pageSize, Authentication authentication) {
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
+
+        // Mismo filtro por libro que search y suggest: categoría y autor
+        return () -> new Iterator<>() {
+            private Iterator<Book> page = List.<Book>of().iterator();
+            private String cursor;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !last) {
+                    CursorPage<Book> next = bookRepository.findPage(BookSort.ID, false, cursor, pageSize,
+                            book -> canRead(book, context));
+                    page = next.getItems().iterator();
+                    cursor = next.getNextCursor();
+                    last = cursor == null;
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Book next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
     }
 
     public Optional<Book> findByTitulo(String titulo , Authentication authentication) {
-        validateReadAccess(authentication);
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
         
         Optional<Book> book = bookRepository.findByTitulo(titulo);
         if (book.isPresent()) {
-            validateCategoryAccess(book.get().getCategoria(), authentication);
-            validateAuthorAccess(book.get().getAutor(), authentication);
+            validateCategoryAccess(book.get().getCategoria(), context);
+            validateAuthorAccess(book.get().getAutor(), context);
         }
         return book;
     }
 
+    public Optional<BookContent> findContent(Long id, Authentication authentication) {
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
+
+        Optional<Book> book = bookRepository.findById(id);
+        if (book.isEmpty()) {
+            return Optional.empty();
+        }
+        validateCategoryAccess(book.get().getCategoria(), context);
+        validateAuthorAccess(book.get().getAutor(), context);
+        return bookRepository.findContent(id);
+    }
+
     public List<Book> findByAutor(String autor, Authentication authentication) {
-        validateReadAccess(authentication);
-        validateAuthorAccess(autor, authentication);
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
+        validateAuthorAccess(autor, context);
         
+        // El filtro de categoría se resuelve en el almacenamiento, por particiones
+        if (context.getCategorias().isExact()) {
+            return bookRepository.findByAutor(autor, context.getCategorias().values());
+        }
         return bookRepository.findByAutor(autor).stream()
-                .filter(book -> hasAccessToCategory(book.getCategoria(), authentication))
+                .filter(book -> context.canAccessCategory(book.getCategoria()))
                 .collect(Collectors.toList());
     }
 
+    public List<SearchHit> search(String query, int limit, Authentication authentication) {
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("La consulta no puede estar vacía");
+        }
+
+        // Mismo filtro que findAll, aplicado dentro del índice antes del top-k
+        return bookRepository.search(query, limit, book -> canRead(book, context));
+    }
+
+    public List<Suggestion> suggest(String prefix, int limit, Authentication authentication) {
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateReadAccess(context);
+
+        List<Suggestion> suggestions = new ArrayList<>();
+        for (String titulo : bookRepository.suggestTitulos(prefix, limit, book -> canRead(book, context))) {
+            suggestions.add(new Suggestion(titulo, "titulo"));
+        }
+        for (String autor : bookRepository.suggestAutores(prefix, limit, book -> canRead(book, context))) {
+            suggestions.add(new Suggestion(autor, "autor"));
+        }
+        return suggestions;
+    }
+
     public Book save(Book book, Authentication authentication) {
-        validateWriteAccess(authentication);
-        validateCategoryAccess(book.getCategoria(), authentication);
-        validateAuthorAccess(book.getAutor(), authentication);
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateWriteAccess(context);
+        validateCategoryAccess(book.getCategoria(), context);
+        validateAuthorAccess(book.getAutor(), context);
         return bookRepository.save(book);
     }
 
+    /**
+     * Para escrituras por lotes: comprueba el permiso de escritura una vez y devuelve
+     * el filtro de categoría y autor sobre el contexto ya resuelto.
+     */
+    public Predicate<Book> writeFilter(Authentication authentication) {
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateWriteAccess(context);
+        return book -> canRead(book, context);
+    }
+
     public boolean deleteById(Long id, Authentication authentication) {
-        validateWriteAccess(authentication);
+        AuthorizationContext context = AuthorizationContext.of(authentication);
+        validateWriteAccess(context);
         
         Optional<Book> book = bookRepository.findById(id);
         if (book.isPresent()) {
-            validateCategoryAccess(book.get().getCategoria(), authentication);
-            validateAuthorAccess(book.get().getAutor(), authentication);
+            validateCategoryAccess(book.get().getCategoria(), context);
+            validateAuthorAccess(book.get().getAutor(), context);
             return bookRepository.deleteById(id);
         }
         return false;
     }
 
-    private void validateWriteAccess(Authentication authentication) {
-        if (!hasScope(authentication, "libros.write")) {
+    private void validateWriteAccess(AuthorizationContext context) {
+        if (!context.hasScope("libros.write")) {
             throw new AccessDeniedException("No tiene permisos de escritura");
         }
         
         // Verificar que el usuario tiene rol ADMIN para operaciones de escritura
-        if (!hasRole(authentication, "ADMIN")) {
+        if (!context.hasRole("ADMIN")) {
             throw new AccessDeniedException("Solo los administradores pueden realizar operaciones de escritura");
         }
     }
 
-    private void validateReadAccess(Authentication authentication) {
-        if (!hasScope(authentication, "libros.read")) {
+    private void validateReadAccess(AuthorizationContext context) {
+        if (!context.hasScope("libros.read")) {
             throw new AccessDeniedException("No tiene permisos de lectura");
         }
     }
 
-    private void validateCategoryAccess(String categoria, Authentication authentication) {
-        if (!hasAccessToCategory(categoria, authentication)) {
+    private void validateCategoryAccess(String categoria, AuthorizationContext context) {
+        if (!context.canAccessCategory(categoria)) {
             throw new AccessDeniedException("No tiene acceso a la categoría: " + categoria);
         }
     }
 
-    private void validateAuthorAccess(String autor, Authentication authentication) {
-        if (!hasAccessToAuthor(autor, authentication)) {
+    private void validateAuthorAccess(String autor, AuthorizationContext context) {
+        if (!context.canAccessAuthor(autor)) {
             throw new AccessDeniedException("No tiene acceso al autor: " + autor);
         }
     }
 
-    private boolean hasScope(Authentication authentication, String scope) {
-        return authentication.getAuthorities().stream()
-                .anyMatch(authority -> authority.getAuthority().equals("SCOPE_" + scope));
-    }
-    
-    private boolean hasRole(Authentication authentication, String role) {
-        Jwt jwt = (Jwt) authentication.getPrincipal();
-        List<String> roles = jwt.getClaimAsStringList("roles");
-        return roles != null && roles.contains(role);
-    }
-
-    private boolean hasAccessToCategory(String categoria, Authentication authentication) {
-        Jwt jwt = (Jwt) authentication.getPrincipal();
-        List<String> categorias = jwt.getClaimAsStringList("categorias");
-        return categorias != null && categorias.contains(categoria);
-    }
-
-    private boolean hasAccessToAuthor(String autor, Authentication authentication) {
-        Jwt jwt = (Jwt) authentication.getPrincipal();
-        List<String> autores = jwt.getClaimAsStringList("autores");
-        return autores != null && autores.contains(autor);
+    private static boolean canRead(Book book, AuthorizationContext context) {
+        return context.canAccessCategory(book.getCategoria())
+                && context.canAccessAuthor(book.getAutor());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,154 @@
+package com.javabooks.controller;
+
+import com.javabooks.security.exchange.AuthorizationCodes;
+import com.javabooks.security.exchange.RemoteTokenExchange;
+import com.javabooks.security.exchange.TokenExchange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.javabooks.security.exchange.AuthorizationCodes.REDIRECT_URI;
+import static com.javabooks.security.exchange.AuthorizationCodes.VERIFIER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AuthControllerTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private OAuth2AuthorizationService authorizationService;
+
+	@Autowired
+	private RegisteredClientRepository clients;
+
+	@Autowired
+	private TokenExchange tokenExchange;
+
+	@Autowired
+	private JwtDecoder jwtDecoder;
+
+	private final HttpClient http = HttpClient.newHttpClient();
+
+	@Test
+	void exchangesTheCodeInProcess() throws Exception {
+		HttpResponse<String> response = postToken(authorize());
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		String accessToken = response.body().replaceAll(".*\"access_token\":\"([^\"]+)\".*", "$1");
+		Jwt jwt = jwtDecoder.decode(accessToken);
+		assertThat(jwt.getSubject()).isEqualTo("user");
+		assertThat(jwt.getClaimAsStringList("roles")).containsExactly("USER");
+		assertThat(jwt.getClaimAsString("ent")).isNotBlank();
+
+		// Mismo código otra vez: error del canje, no 500
+		assertThat(postToken(authorize("repetido")).statusCode()).isEqualTo(200);
+		assertThat(postToken("repetido").statusCode()).isEqualTo(400);
+	}
+
+	/**
+	 * El canje en proceso sustituye al que el controlador hacía por HTTP contra el
+	 * /oauth2/token del mismo servidor: los dos tienen que responder lo mismo.
+	 */
+	@Test
+	void inProcessExchangeAnswersLikeTheTokenEndpoint() {
+		TokenExchange loopback = new RemoteTokenExchange("http://localhost:" + port, "web-client", "web-secret",
+				Duration.ofSeconds(2), Duration.ofSeconds(5));
+
+		Map<String, Object> inProcess = tokenExchange.exchangeCode(authorize(), REDIRECT_URI, VERIFIER);
+		Map<String, Object> remote = loopback.exchangeCode(authorize(), REDIRECT_URI, VERIFIER);
+		assertThat(inProcess.keySet()).isEqualTo(remote.keySet());
+		assertThat(inProcess.get("token_type")).isEqualTo(remote.get("token_type"));
+		assertThat(inProcess.get("scope")).isEqualTo(remote.get("scope"));
+
+		Jwt local = jwtDecoder.decode((String) inProcess.get("access_token"));
+		Jwt endpoint = jwtDecoder.decode((String) remote.get("access_token"));
+		for (String claim : List.of("sub", "aud", "scope", "roles", "ent")) {
+			assertThat(local.getClaims().get(claim)).as(claim).isEqualTo(endpoint.getClaims().get(claim));
+		}
+	}
+
+	/**
+	 * Latencia de /api/auth/token (p50/p99). Antes el controlador llamaba por HTTP al
+	 * /oauth2/token del mismo proceso: su latencia era la del endpoint más la del loopback
+	 * menos la del canje en proceso. No corre con el resto:
+	 * mvn test -Dtest=AuthControllerTests -Dbenchmark=true
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkTokenExchange() throws Exception {
+		TokenExchange loopback = new RemoteTokenExchange("http://localhost:" + port, "web-client", "web-secret",
+				Duration.ofSeconds(2), Duration.ofSeconds(5));
+		int warmup = 200;
+		int iterations = 2000;
+
+		long[] endpoint = new long[iterations];
+		long[] inProcess = new long[iterations];
+		long[] remote = new long[iterations];
+		for (int i = -warmup; i < iterations; i++) {
+			String code = authorize();
+			long start = System.nanoTime();
+			postToken(code);
+			record(endpoint, i, start);
+
+			code = authorize();
+			start = System.nanoTime();
+			tokenExchange.exchangeCode(code, REDIRECT_URI, VERIFIER);
+			record(inProcess, i, start);
+
+			code = authorize();
+			start = System.nanoTime();
+			loopback.exchangeCode(code, REDIRECT_URI, VERIFIER);
+			record(remote, i, start);
+		}
+		print("POST /api/auth/token (en proceso)", endpoint);
+		print("canje en proceso", inProcess);
+		print("canje por loopback a /oauth2/token", remote);
+	}
+
+	private HttpResponse<String> postToken(String code) throws Exception {
+		String body = "{\"code\":\"" + code + "\",\"redirectUri\":\"" + REDIRECT_URI + "\",\"codeVerifier\":\"" + VERIFIER + "\"}";
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/token"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body))
+				.build();
+		return http.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private String authorize() {
+		return AuthorizationCodes.authorize(clients, authorizationService);
+	}
+
+	private String authorize(String code) {
+		return AuthorizationCodes.authorize(clients, authorizationService, code);
+	}
+
+	private static void record(long[] samples, int i, long start) {
+		if (i >= 0) {
+			samples[i] = System.nanoTime() - start;
+		}
+	}
+
+	private static void print(String name, long[] samples) {
+		long[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		System.out.printf("%-40s p50 %6d us  p99 %6d us%n", name,
+				sorted[sorted.length / 2] / 1_000, sorted[sorted.length * 99 / 100] / 1_000);
+	}
+}
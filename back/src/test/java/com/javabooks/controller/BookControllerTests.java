@@ -0,0 +1,199 @@
+package com.javabooks.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class BookControllerTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Test
+	void exportsTheVisibleCatalogAsNdjson() throws Exception {
+		MvcResult result = export(get("/api/book/export").with(reader(List.of("*"), List.of("*"))));
+
+		assertThat(result.getResponse().getContentType()).isEqualTo("application/x-ndjson");
+		assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+		assertThat(result.getResponse().getHeaders(HttpHeaders.VARY)).contains(HttpHeaders.ACCEPT_ENCODING);
+		List<String> lines = result.getResponse().getContentAsString(StandardCharsets.UTF_8).lines().toList();
+		assertThat(lines).hasSizeGreaterThanOrEqualTo(7);
+		assertThat(lines.get(0)).startsWith("{").contains("\"titulo\":\"Clean Code\"");
+	}
+
+	@Test
+	void exportOnlyIncludesEntitledBooks() throws Exception {
+		MvcResult result = export(get("/api/book/export").param("fields", "titulo,categoria")
+				.with(reader(List.of("ARCHITECTURE"), List.of("*"))));
+
+		List<String> lines = result.getResponse().getContentAsString(StandardCharsets.UTF_8).lines().toList();
+		assertThat(lines).isNotEmpty().allMatch(line -> line.contains("\"categoria\":\"ARCHITECTURE\""));
+		assertThat(lines).anyMatch(line -> line.contains("Domain-Driven Design"));
+	}
+
+	@Test
+	void compressesTheExportOnlyWhenGzipIsAcceptable() throws Exception {
+		String plain = export(get("/api/book/export").with(reader(List.of("*"), List.of("*"))))
+				.getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+		for (String accepted : List.of("gzip", "deflate, gzip;q=0.5", "x-gzip", "br, *")) {
+			MvcResult result = export(get("/api/book/export").header(HttpHeaders.ACCEPT_ENCODING, accepted)
+					.with(reader(List.of("*"), List.of("*"))));
+			assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).as(accepted).isEqualTo("gzip");
+			byte[] body = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())).readAllBytes();
+			assertThat(new String(body, StandardCharsets.UTF_8)).as(accepted).isEqualTo(plain);
+		}
+		for (String refused : List.of("gzip;q=0", "identity", "deflate", "*;q=0", "gzip;q=0, *")) {
+			MvcResult result = export(get("/api/book/export").header(HttpHeaders.ACCEPT_ENCODING, refused)
+					.with(reader(List.of("*"), List.of("*"))));
+			assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).as(refused).isNull();
+			assertThat(result.getResponse().getContentAsString(StandardCharsets.UTF_8)).as(refused).isEqualTo(plain);
+		}
+	}
+
+	@Test
+	void listingsOmitContenidoUnlessRequested() throws Exception {
+		MvcResult summary = mvc.perform(get("/api/book").with(reader(List.of("*"), List.of("*")))).andReturn();
+		assertThat(summary.getResponse().getStatus()).isEqualTo(200);
+		assertThat(summary.getResponse().getContentAsString(StandardCharsets.UTF_8))
+				.contains("\"titulo\":\"Clean Code\"")
+				.doesNotContain("contenido");
+
+		MvcResult withContent = mvc.perform(get("/api/book").param("fields", "id,contenido")
+				.with(reader(List.of("*"), List.of("*")))).andReturn();
+		assertThat(withContent.getResponse().getContentAsString(StandardCharsets.UTF_8))
+				.contains("\"contenido\":\"Contenido del libro Clean Code\"")
+				.doesNotContain("titulo");
+
+		MvcResult unknown = mvc.perform(get("/api/book").param("fields", "titulo,isbn")
+				.with(reader(List.of("*"), List.of("*")))).andReturn();
+		assertThat(unknown.getResponse().getStatus()).isEqualTo(400);
+		assertThat(unknown.getResponse().getContentAsString(StandardCharsets.UTF_8)).contains("Campo no soportado: isbn");
+	}
+
+	@Test
+	void catalogEtagAnswers304AndChangesWithVisibleWrites() throws Exception {
+		RequestPostProcessor frameworks = reader(List.of("FRAMEWORKS"), List.of("*"));
+		MvcResult first = mvc.perform(get("/api/book").with(frameworks)).andReturn();
+		String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(first.getResponse().getStatus()).isEqualTo(200);
+		assertThat(etag).isNotBlank();
+
+		MvcResult cached = mvc.perform(get("/api/book").header(HttpHeaders.IF_NONE_MATCH, etag).with(frameworks)).andReturn();
+		assertThat(cached.getResponse().getStatus()).isEqualTo(304);
+		assertThat(cached.getResponse().getContentAsByteArray()).isEmpty();
+		assertThat(cached.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+
+		// Una escritura en una categoría que el usuario no ve no cambia su ETag
+		String hidden = create("{\"titulo\":\"Fuera de su vista\",\"autor\":\"Autor\",\"cantidadPaginas\":10,"
+				+ "\"categoria\":\"ARCHITECTURE\",\"contenido\":\"x\"}");
+		assertThat(mvc.perform(get("/api/book").header(HttpHeaders.IF_NONE_MATCH, etag).with(frameworks))
+				.andReturn().getResponse().getStatus()).isEqualTo(304);
+
+		String visible = create("{\"titulo\":\"Spring Boot en la práctica\",\"autor\":\"Autor\",\"cantidadPaginas\":10,"
+				+ "\"categoria\":\"FRAMEWORKS\",\"contenido\":\"x\"}");
+		MvcResult changed = mvc.perform(get("/api/book").header(HttpHeaders.IF_NONE_MATCH, etag).with(frameworks)).andReturn();
+		assertThat(changed.getResponse().getStatus()).isEqualTo(200);
+		assertThat(changed.getResponse().getHeader(HttpHeaders.ETAG)).isNotEqualTo(etag);
+		assertThat(changed.getResponse().getContentAsString(StandardCharsets.UTF_8)).contains("Spring Boot en la práctica");
+
+		mvc.perform(delete("/api/book/" + hidden).with(writer()));
+		mvc.perform(delete("/api/book/" + visible).with(writer()));
+	}
+
+	@Test
+	void servesContentRanges() throws Exception {
+		MvcResult full = mvc.perform(get("/api/book/1/content").with(reader(List.of("*"), List.of("*")))).andReturn();
+		String content = full.getResponse().getContentAsString(StandardCharsets.UTF_8);
+		int length = content.getBytes(StandardCharsets.UTF_8).length;
+		String etag = full.getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(full.getResponse().getStatus()).isEqualTo(200);
+		assertThat(content).isEqualTo("Contenido del libro Clean Code");
+		assertThat(full.getResponse().getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+
+		MvcResult single = content(get("/api/book/1/content").header(HttpHeaders.RANGE, "bytes=0-8"));
+		assertThat(single.getResponse().getStatus()).isEqualTo(206);
+		assertThat(single.getResponse().getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-8/" + length);
+		assertThat(single.getResponse().getContentAsString(StandardCharsets.UTF_8)).isEqualTo("Contenido");
+
+		MvcResult suffix = content(get("/api/book/1/content").header(HttpHeaders.RANGE, "bytes=-4"));
+		assertThat(suffix.getResponse().getStatus()).isEqualTo(206);
+		assertThat(suffix.getResponse().getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes " + (length - 4) + "-" + (length - 1) + "/" + length);
+		assertThat(suffix.getResponse().getContentAsString(StandardCharsets.UTF_8)).isEqualTo("Code");
+
+		MvcResult unsatisfiable = content(get("/api/book/1/content").header(HttpHeaders.RANGE, "bytes=" + length + "-"));
+		assertThat(unsatisfiable.getResponse().getStatus()).isEqualTo(416);
+		assertThat(unsatisfiable.getResponse().getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + length);
+
+		// If-Range de otra versión: el rango se ignora y sale el contenido completo
+		MvcResult stale = content(get("/api/book/1/content").header(HttpHeaders.RANGE, "bytes=0-8")
+				.header(HttpHeaders.IF_RANGE, "\"otra-version\""));
+		assertThat(stale.getResponse().getStatus()).isEqualTo(200);
+		assertThat(stale.getResponse().getContentAsString(StandardCharsets.UTF_8)).isEqualTo(content);
+		MvcResult current = content(get("/api/book/1/content").header(HttpHeaders.RANGE, "bytes=0-8")
+				.header(HttpHeaders.IF_RANGE, etag));
+		assertThat(current.getResponse().getStatus()).isEqualTo(206);
+
+		MvcResult notModified = content(get("/api/book/1/content").header(HttpHeaders.IF_NONE_MATCH, etag));
+		assertThat(notModified.getResponse().getStatus()).isEqualTo(304);
+		assertThat(notModified.getResponse().getContentAsByteArray()).isEmpty();
+	}
+
+	private String create(String json) throws Exception {
+		MvcResult created = mvc.perform(post("/api/book").contentType(MediaType.APPLICATION_JSON).content(json).with(writer()))
+				.andReturn();
+		assertThat(created.getResponse().getStatus()).isEqualTo(201);
+		return created.getResponse().getContentAsString(StandardCharsets.UTF_8).replaceAll(".*\"id\":(\\d+).*", "$1");
+	}
+
+	private MvcResult content(MockHttpServletRequestBuilder request) throws Exception {
+		return mvc.perform(request.with(reader(List.of("*"), List.of("*")))).andReturn();
+	}
+
+	private MvcResult export(MockHttpServletRequestBuilder request) throws Exception {
+		MvcResult started = mvc.perform(request).andExpect(request().asyncStarted()).andReturn();
+		return mvc.perform(asyncDispatch(started)).andReturn();
+	}
+
+	/**
+	 * Token de lectura con los claims de permisos que emite el servidor de autorización.
+	 */
+	private static RequestPostProcessor reader(List<String> categorias, List<String> autores) {
+		return jwt().jwt(token -> token.subject("user")
+						.claim("roles", List.of("USER"))
+						.claim("categorias", categorias)
+						.claim("autores", autores))
+				.authorities(new SimpleGrantedAuthority("SCOPE_libros.read"));
+	}
+
+	private static RequestPostProcessor writer() {
+		return jwt().jwt(token -> token.subject("admin")
+						.claim("roles", List.of("USER", "ADMIN"))
+						.claim("categorias", List.of("*"))
+						.claim("autores", List.of("*")))
+				.authorities(new SimpleGrantedAuthority("SCOPE_libros.read"), new SimpleGrantedAuthority("SCOPE_libros.write"));
+	}
+}
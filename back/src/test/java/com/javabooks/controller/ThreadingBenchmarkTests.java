@@ -0,0 +1,151 @@
+package com.javabooks.controller;
+
+import com.javabooks.security.exchange.AuthorizationCodes;
+import com.javabooks.security.exchange.TokenExchange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static com.javabooks.security.exchange.AuthorizationCodes.REDIRECT_URI;
+import static com.javabooks.security.exchange.AuthorizationCodes.VERIFIER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Peticiones por segundo y p99 de /api/book y /api/auth/token con más clientes
+ * concurrentes que hilos tiene Tomcat (200, el pool por defecto). Se corre una vez en
+ * cada modo y se comparan las líneas; el modo sale en cada una. No corre con el resto
+ * (la prueba funcional es {@link ThreadingLoadTests}):
+ * mvn test -Dtest=ThreadingBenchmarkTests -Dbenchmark=true
+ * mvn -Pvirtual-threads test -Dtest=ThreadingBenchmarkTests -Dbenchmark=true   (JDK 21+)
+ * Clientes y peticiones: -Dload.clients=400 -Dload.requests=20000
+ */
+// Sin los logs DEBUG de application.yml, que con cientos de clientes miden la consola y no el servidor
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"logging.level.org.springframework.security=WARN",
+		"logging.level.org.springframework.security.oauth2=WARN",
+		"logging.level.org.springframework.security.web=WARN",
+		"logging.level.org.springframework.security.authentication=WARN",
+		"logging.level.org.springframework.security.core.userdetails=WARN",
+		"logging.level.org.hibernate.SQL=WARN",
+		"logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+		"logging.level.com.javabooks=WARN",
+		"spring.jpa.show-sql=false"})
+class ThreadingBenchmarkTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Value("${spring.threads.virtual.enabled:false}")
+	private boolean virtualThreads;
+
+	@Autowired
+	private OAuth2AuthorizationService authorizationService;
+
+	@Autowired
+	private RegisteredClientRepository clients;
+
+	@Autowired
+	private TokenExchange tokenExchange;
+
+	private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+	@Test
+	void throughputAndP99PerThreadingMode() throws Exception {
+		int concurrency = Integer.getInteger("load.clients", 400);
+		int requests = Integer.getInteger("load.requests", 20_000);
+		String mode = (virtualThreads ? "hilos virtuales" : "pool de Tomcat") + ", Java " + Runtime.version().feature();
+
+		String accessToken = (String) tokenExchange.exchangeCode(authorize(), REDIRECT_URI, VERIFIER).get("access_token");
+		HttpRequest books = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/book"))
+				.header("Authorization", "Bearer " + accessToken)
+				.build();
+		assertThat(http.send(books, HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(200);
+		load(concurrency, requests / 10, i -> books);
+		print(mode, "GET /api/book", load(concurrency, requests, i -> books));
+
+		// Cada canje gasta un código: se dejan todos guardados antes de medir
+		int exchanges = requests / 4;
+		List<String> codes = new ArrayList<>();
+		for (int i = 0; i < exchanges + exchanges / 10; i++) {
+			codes.add(authorize());
+		}
+		load(concurrency, exchanges / 10, i -> postToken(codes.get(exchanges + i)));
+		print(mode, "POST /api/auth/token", load(concurrency, exchanges, i -> postToken(codes.get(i))));
+	}
+
+	/**
+	 * {@code requests} peticiones repartidas entre {@code concurrency} clientes, cada uno
+	 * con la siguiente en cuanto recibe la respuesta de la anterior.
+	 */
+	private Result load(int concurrency, int requests, IntFunction<HttpRequest> request) throws Exception {
+		long[] latencies = new long[requests];
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger errors = new AtomicInteger();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int c = 0; c < concurrency; c++) {
+			tasks.add(() -> {
+				for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+					long start = System.nanoTime();
+					int status = http.send(request.apply(i), HttpResponse.BodyHandlers.discarding()).statusCode();
+					latencies[i] = System.nanoTime() - start;
+					if (status != 200) {
+						errors.incrementAndGet();
+					}
+				}
+				return null;
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		try {
+			for (Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return new Result(latencies, System.nanoTime() - start, errors.get());
+	}
+
+	private HttpRequest postToken(String code) {
+		String body = "{\"code\":\"" + code + "\",\"redirectUri\":\"" + REDIRECT_URI + "\",\"codeVerifier\":\"" + VERIFIER + "\"}";
+		return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/token"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body))
+				.build();
+	}
+
+	private String authorize() {
+		return AuthorizationCodes.authorize(clients, authorizationService);
+	}
+
+	private static void print(String mode, String name, Result result) {
+		long[] sorted = result.latencies().clone();
+		Arrays.sort(sorted);
+		double perSecond = sorted.length / (result.elapsedNanos() / 1e9);
+		System.out.printf("%-24s %-22s %8.0f peticiones/s  p99 %6.1f ms  errores %d%n", mode, name, perSecond,
+				sorted[sorted.length * 99 / 100] / 1e6, result.errors());
+	}
+
+	private record Result(long[] latencies, long elapsedNanos, int errors) {}
+}
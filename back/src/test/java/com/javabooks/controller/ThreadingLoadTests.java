@@ -0,0 +1,131 @@
+package com.javabooks.controller;
+
+import com.javabooks.security.exchange.AuthorizationCodes;
+import com.javabooks.security.exchange.TokenExchange;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static com.javabooks.security.exchange.AuthorizationCodes.REDIRECT_URI;
+import static com.javabooks.security.exchange.AuthorizationCodes.VERIFIER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Sin los logs DEBUG de application.yml, que con tantos clientes llenan la consola.
+// Tomcat con 8 hilos: los clientes del test los superan sin necesitar cientos
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"server.tomcat.threads.max=8",
+		"logging.level.org.springframework.security=WARN",
+		"logging.level.org.springframework.security.oauth2=WARN",
+		"logging.level.org.springframework.security.web=WARN",
+		"logging.level.org.springframework.security.authentication=WARN",
+		"logging.level.org.springframework.security.core.userdetails=WARN",
+		"logging.level.org.hibernate.SQL=WARN",
+		"logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+		"logging.level.com.javabooks=WARN",
+		"spring.jpa.show-sql=false"})
+class ThreadingLoadTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Value("${spring.threads.virtual.enabled:false}")
+	private boolean virtualThreads;
+
+	@Autowired
+	private OAuth2AuthorizationService authorizationService;
+
+	@Autowired
+	private RegisteredClientRepository clients;
+
+	@Autowired
+	private TokenExchange tokenExchange;
+
+	private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+	/**
+	 * Más clientes concurrentes que hilos tiene Tomcat contra /api/book y
+	 * /api/auth/token: todas las peticiones terminan bien, con el pool de Tomcat o con
+	 * hilos virtuales (mvn -Pvirtual-threads test, JDK 21+). Las cifras de cada modo
+	 * las da {@link ThreadingBenchmarkTests}.
+	 */
+	@Test
+	void servesMoreConcurrentClientsThanTomcatThreads() throws Exception {
+		int concurrency = 32;
+
+		String accessToken = (String) tokenExchange.exchangeCode(authorize(), REDIRECT_URI, VERIFIER).get("access_token");
+		HttpRequest books = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/book"))
+				.header("Authorization", "Bearer " + accessToken)
+				.build();
+		assertThat(load(concurrency, 2 * concurrency, i -> books)).as(mode()).isZero();
+
+		// Cada canje gasta un código: se dejan todos guardados antes
+		List<String> codes = new ArrayList<>();
+		for (int i = 0; i < concurrency; i++) {
+			codes.add(authorize());
+		}
+		assertThat(load(concurrency, codes.size(), i -> postToken(codes.get(i)))).as(mode()).isZero();
+	}
+
+	/**
+	 * {@code requests} peticiones repartidas entre {@code concurrency} clientes, cada uno
+	 * con la siguiente en cuanto recibe la respuesta de la anterior. Devuelve las que no
+	 * respondieron 200.
+	 */
+	private int load(int concurrency, int requests, IntFunction<HttpRequest> request) throws Exception {
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger errors = new AtomicInteger();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int c = 0; c < concurrency; c++) {
+			tasks.add(() -> {
+				for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+					if (http.send(request.apply(i), HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+						errors.incrementAndGet();
+					}
+				}
+				return null;
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		try {
+			for (Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return errors.get();
+	}
+
+	private String mode() {
+		return (virtualThreads ? "hilos virtuales" : "pool de Tomcat") + ", Java " + Runtime.version().feature();
+	}
+
+	private HttpRequest postToken(String code) {
+		String body = "{\"code\":\"" + code + "\",\"redirectUri\":\"" + REDIRECT_URI + "\",\"codeVerifier\":\"" + VERIFIER + "\"}";
+		return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/token"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body))
+				.build();
+	}
+
+	private String authorize() {
+		return AuthorizationCodes.authorize(clients, authorizationService);
+	}
+}
@@ -0,0 +1,101 @@
+package com.javabooks.repository;
+
+import com.javabooks.model.Book;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BookJournalTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void recoversFromSnapshotAndLogTail() throws Exception {
+		try (BookJournal journal = new BookJournal(directory, true, Duration.ofHours(1))) {
+			BookRepository repository = new BookRepository(new InMemoryBookStorage(), new HeapContentStore(), Optional.of(journal));
+			assertThat(repository.findAll()).hasSize(7);
+			repository.save(new Book(null, "Refactoring", "Martin Fowler", 448, "PROGRAMMING", "Contenido de Refactoring"));
+			repository.snapshot();
+
+			// Cola posterior al snapshot: actualización sin cambio de contenido y borrado
+			Book cleanCode = repository.findByTitulo("clean code").orElseThrow();
+			cleanCode.setCantidadPaginas(470);
+			repository.save(cleanCode);
+			repository.deleteById(2L);
+		}
+
+		try (BookJournal journal = new BookJournal(directory, true, Duration.ofHours(1))) {
+			BookRepository repository = new BookRepository(new InMemoryBookStorage(), new HeapContentStore(), Optional.of(journal));
+			assertThat(repository.findAll()).hasSize(7);
+			assertThat(repository.existsById(2L)).isFalse();
+			assertThat(repository.findById(1L).orElseThrow().getCantidadPaginas()).isEqualTo(470);
+			assertThat(repository.findById(1L).orElseThrow().getContenido()).isEqualTo("Contenido del libro Clean Code");
+			assertThat(repository.search("refactoring", 10, book -> true)).extracting("titulo").containsExactly("Refactoring");
+
+			Book nuevo = repository.save(new Book(null, "Working Effectively with Legacy Code", "Michael Feathers", 456, "PROGRAMMING", "Contenido"));
+			assertThat(nuevo.getId()).isEqualTo(9L);
+		}
+	}
+
+	@Test
+	void ignoresTornRecordAtTheEndOfTheLog() throws Exception {
+		try (BookJournal journal = new BookJournal(directory, true, Duration.ofHours(1))) {
+			new BookRepository(new InMemoryBookStorage(), new HeapContentStore(), Optional.of(journal))
+					.save(new Book(null, "Refactoring", "Martin Fowler", 448, "PROGRAMMING", "Contenido de Refactoring"));
+		}
+		// Simula una caída a mitad de escritura del último registro
+		Files.write(directory.resolve("wal-0000000001.log"), new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+		try (BookJournal journal = new BookJournal(directory, true, Duration.ofHours(1))) {
+			BookRepository repository = new BookRepository(new InMemoryBookStorage(), new HeapContentStore(), Optional.of(journal));
+			assertThat(repository.findAll()).hasSize(8);
+			assertThat(repository.findByTitulo("Refactoring")).isPresent();
+		}
+	}
+
+	@Test
+	void changesRejectedByTheJournalAreNotApplied() {
+		AtomicBoolean failing = new AtomicBoolean();
+		try (BookJournal journal = new BookJournal(directory, true, Duration.ofHours(1)) {
+			@Override
+			public CompletableFuture<Void> logSave(Book book, boolean contentChanged, String contenido) {
+				return failing.get() ? CompletableFuture.failedFuture(new IOException("Disco lleno"))
+						: super.logSave(book, contentChanged, contenido);
+			}
+
+			@Override
+			public CompletableFuture<Void> logDelete(long id) {
+				return failing.get() ? CompletableFuture.failedFuture(new IOException("Disco lleno")) : super.logDelete(id);
+			}
+		}) {
+			BookRepository repository = new BookRepository(new InMemoryBookStorage(), new HeapContentStore(), Optional.of(journal));
+			// El motor en memoria devuelve sus propias instancias: se guarda una copia
+			Book original = repository.findById(1L).orElseThrow();
+			Book renamed = new Book(1L, "Clean Code, 2ª edición", original.getAutor(), 470, original.getCategoria(), "Otro contenido");
+			failing.set(true);
+
+			assertThatThrownBy(() -> repository.save(renamed)).isInstanceOf(IllegalStateException.class);
+			assertThatThrownBy(() -> repository.save(new Book(null, "Refactoring", "Martin Fowler", 448, "PROGRAMMING", "Contenido")))
+					.isInstanceOf(IllegalStateException.class);
+			assertThatThrownBy(() -> repository.deleteById(2L)).isInstanceOf(IllegalStateException.class);
+
+			assertThat(repository.findById(1L).orElseThrow().getTitulo()).isEqualTo("Clean Code");
+			assertThat(repository.findById(1L).orElseThrow().getContenido()).isEqualTo("Contenido del libro Clean Code");
+			assertThat(repository.findByTitulo("Refactoring")).isEmpty();
+			assertThat(repository.existsById(2L)).isTrue();
+			assertThat(repository.findAll()).hasSize(7);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package com.javabooks.repository;
+
+import com.javabooks.model.Book;
+import com.javabooks.model.BookProjection;
+import com.javabooks.model.CursorPage;
+import com.javabooks.model.SearchHit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BookRepositoryTests {
+
+	@Test
+	void findsByFoldedKeys() {
+		BookRepository repository = new BookRepository();
+		repository.save(new Book(null, "Programación Funcional", "José Pérez", 200, "PROGRAMMING", "Contenido"));
+
+		assertThat(repository.findByTitulo("PROGRAMACION funcional")).isPresent();
+		assertThat(repository.findByAutor("jose perez")).hasSize(1);
+		assertThat(repository.findByCategoria("programming")).hasSize(5);
+	}
+
+	@Test
+	void summaryProjectionDoesNotLoadContenido() {
+		BookRepository repository = new BookRepository();
+		Book book = repository.findById(1L).orElseThrow();
+		Supplier<String> stored = book.getContenidoLoader();
+		AtomicInteger loads = new AtomicInteger();
+		book.setContenidoLoader(() -> {
+			loads.incrementAndGet();
+			return stored.get();
+		});
+
+		Map<String, Object> summary = BookProjection.parse(null).apply(book);
+		assertThat(summary).containsOnlyKeys("id", "titulo", "autor", "cantidadPaginas", "categoria");
+		assertThat(loads).hasValue(0);
+
+		assertThat(BookProjection.parse("titulo, contenido").apply(book))
+				.containsExactly(Map.entry("titulo", "Clean Code"), Map.entry("contenido", "Contenido del libro Clean Code"));
+		assertThat(loads).hasValue(1);
+
+		assertThatThrownBy(() -> BookProjection.parse("titulo,isbn"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("isbn");
+	}
+
+	@Test
+	void keepsIndexesConsistentOnUpdateAndDelete() {
+		BookRepository repository = new BookRepository();
+		Book book = repository.save(new Book(null, "Refactoring", "Martin Fowler", 448, "PROGRAMMING", "Contenido"));
+
+		book.setAutor("Kent Beck");
+		book.setCategoria("ARCHITECTURE");
+		repository.save(book);
+
+		assertThat(repository.findByAutor("Martin Fowler")).isEmpty();
+		assertThat(repository.findByAutor("Kent Beck")).containsExactly(book);
+		assertThat(repository.findByCategoria("ARCHITECTURE")).contains(book);
+
+		assertThat(repository.deleteById(book.getId())).isTrue();
+		assertThat(repository.findByAutor("Kent Beck")).isEmpty();
+		assertThat(repository.findByTitulo("Refactoring")).isEmpty();
+	}
+
+	@Test
+	void searchesContenidoRankedAndFiltered() {
+		BookRepository repository = new BookRepository();
+		Book ddd = repository.save(new Book(null, "Implementing DDD", "Vaughn Vernon", 656, "ARCHITECTURE",
+				"Los agregados y los contextos delimitados. Agregados, agregados y más agregados."));
+		Book other = repository.save(new Book(null, "Otro", "Otro Autor", 100, "PROGRAMMING",
+				"Un capítulo menciona los agregados una vez entre muchas otras palabras de relleno."));
+
+		List<SearchHit> hits = repository.search("AGREGADOS", 10, book -> true);
+		assertThat(hits).extracting(SearchHit::getId).containsExactly(ddd.getId(), other.getId());
+		assertThat(hits.get(0).getSnippet()).contains("agregados");
+
+		assertThat(repository.search("agregados", 10, book -> !book.getId().equals(ddd.getId())))
+				.extracting(SearchHit::getId).containsExactly(other.getId());
+
+		repository.deleteById(ddd.getId());
+		assertThat(repository.search("agregados", 10, book -> true))
+				.extracting(SearchHit::getId).containsExactly(other.getId());
+	}
+
+	@Test
+	void suggestsByWordPrefix() {
+		BookRepository repository = new BookRepository();
+
+		assertThat(repository.suggestTitulos("cod", 5, book -> true)).containsExactly("Clean Code");
+		assertThat(repository.suggestTitulos("pat", 5, book -> true))
+				.containsExactlyInAnyOrder("Design Patterns", "Microservices Patterns");
+		assertThat(repository.suggestTitulos("pat", 5, book -> book.getCategoria().equals("PROGRAMMING")))
+				.containsExactly("Design Patterns");
+		assertThat(repository.suggestAutores("eva", 5, book -> true)).containsExactly("Eric Evans");
+	}
+
+	@Test
+	void searchAndSuggestReadTheStorageInBatches() {
+		AtomicInteger singleReads = new AtomicInteger();
+		AtomicInteger batchReads = new AtomicInteger();
+		BookRepository repository = new BookRepository(new InMemoryBookStorage() {
+			@Override
+			public Optional<Book> findById(long id) {
+				singleReads.incrementAndGet();
+				return super.findById(id);
+			}
+
+			@Override
+			public List<Book> findAllById(List<Long> ids) {
+				batchReads.incrementAndGet();
+				return super.findAllById(ids);
+			}
+		}, new HeapContentStore(), Optional.empty());
+		for (int i = 0; i < 200; i++) {
+			repository.save(new Book(null, "Patrones " + i, "Autor " + i, 100, i % 4 != 0 ? "PROGRAMMING" : "ARCHITECTURE",
+					"patrones de diseño"));
+		}
+		singleReads.set(0);
+		batchReads.set(0);
+
+		// Una tanda por consulta: la primera ya trae diez visibles
+
+		assertThat(repository.search("patrones", 10, book -> book.getCategoria().equals("PROGRAMMING"))).hasSize(10);
+		assertThat(repository.suggestTitulos("patr", 10, book -> book.getCategoria().equals("PROGRAMMING"))).hasSize(10);
+		assertThat(singleReads).hasValue(0);
+		assertThat(batchReads).hasValue(2);
+	}
+
+	@Test
+	void pagesByKeysetCursor() {
+		BookRepository repository = new BookRepository();
+
+		CursorPage<Book> first = repository.findPage(BookSort.CANTIDAD_PAGINAS, true, null, 3, book -> true);
+		assertThat(first.getItems()).extracting(Book::getCantidadPaginas).containsExactly(560, 520, 518);
+
+		CursorPage<Book> second = repository.findPage(BookSort.CANTIDAD_PAGINAS, true, first.getNextCursor(), 3, book -> true);
+		assertThat(second.getItems()).extracting(Book::getCantidadPaginas).containsExactly(464, 416, 395);
+
+		CursorPage<Book> last = repository.findPage(BookSort.CANTIDAD_PAGINAS, true, second.getNextCursor(), 3, book -> true);
+		assertThat(last.getItems()).extracting(Book::getCantidadPaginas).containsExactly(352);
+		assertThat(last.getNextCursor()).isNull();
+
+		CursorPage<Book> byTitulo = repository.findPage(BookSort.TITULO, false, null, 2, book -> true);
+		assertThat(byTitulo.getItems()).extracting(Book::getTitulo).containsExactly("Clean Code", "Design Patterns");
+	}
+
+	@Test
+	void filtersByEntitlementsInsideCategoryPartitions() {
+		BookRepository repository = new BookRepository();
+		Book book = repository.save(new Book(null, "Refactoring", "Martin Fowler", 448, "PROGRAMMING", "Contenido"));
+
+		assertThat(repository.findAll(Set.of("PROGRAMMING", "DATABASES"), Set.of("Martin Fowler", "Joshua Bloch")))
+				.extracting(Book::getTitulo).containsExactlyInAnyOrder("Refactoring", "Effective Java");
+		assertThat(repository.findAll(Set.of("ARCHITECTURE"), Set.of("Martin Fowler"))).isEmpty();
+		assertThat(repository.findByAutor("martin fowler", Set.of("PROGRAMMING"))).hasSize(1);
+
+		// Al cambiar de categoría el libro pasa a la otra partición
+		book.setCategoria("ARCHITECTURE");
+		repository.save(book);
+		assertThat(repository.findByAutor("Martin Fowler", Set.of("PROGRAMMING"))).isEmpty();
+		assertThat(repository.findAll(Set.of("ARCHITECTURE"), Set.of("Martin Fowler", "Eric Evans")))
+				.extracting(Book::getTitulo).containsExactlyInAnyOrder("Refactoring", "Domain-Driven Design");
+	}
+
+	@Test
+	void bumpsTheGlobalVersionAndTheVersionsOfTheTouchedCategories() {
+		BookRepository repository = new BookRepository();
+		BookRepository.Version start = repository.version();
+		BookRepository.Version programming = repository.version(Set.of("PROGRAMMING"));
+		BookRepository.Version architecture = repository.version(Set.of("ARCHITECTURE"));
+		assertThat(repository.version(Set.of("DATABASES")).number()).isZero();
+
+		Book book = repository.save(new Book(null, "Refactoring", "Martin Fowler", 448, "PROGRAMMING", "Contenido"));
+		assertThat(repository.version().number()).isGreaterThan(start.number());
+		assertThat(repository.version(Set.of("PROGRAMMING")).number()).isGreaterThan(programming.number());
+		assertThat(repository.version(Set.of("ARCHITECTURE"))).isEqualTo(architecture);
+
+		// Al cambiar de categoría cambian las dos; las lecturas no cambian ninguna
+		programming = repository.version(Set.of("PROGRAMMING"));
+		book.setCategoria("ARCHITECTURE");
+		repository.save(book);
+		repository.findAll();
+		assertThat(repository.version(Set.of("PROGRAMMING")).number()).isGreaterThan(programming.number());
+		assertThat(repository.version(Set.of("ARCHITECTURE")).number()).isGreaterThan(architecture.number());
+		assertThat(repository.version(Set.of("PROGRAMMING", "ARCHITECTURE"))).isEqualTo(repository.version());
+
+		architecture = repository.version(Set.of("ARCHITECTURE"));
+		repository.deleteById(book.getId());
+		assertThat(repository.version(Set.of("ARCHITECTURE")).number()).isGreaterThan(architecture.number());
+		assertThat(repository.version().epoch()).isEqualTo(start.epoch());
+	}
+}
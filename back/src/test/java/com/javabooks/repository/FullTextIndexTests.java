@@ -0,0 +1,86 @@
+package com.javabooks.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class FullTextIndexTests {
+
+	@Test
+	void deletedDocumentsDoNotCountInTheRanking() {
+		FullTextIndex fresh = new FullTextIndex();
+		fresh.index(1, "alfa beta");
+		fresh.index(2, "alfa");
+		fresh.index(3, "gamma delta");
+
+		// Mismos documentos vivos tras reescrituras y borrados, con compactaciones por medio
+		FullTextIndex churned = new FullTextIndex();
+		churned.index(1, "alfa beta");
+		churned.index(2, "beta");
+		churned.remove(2, "beta");
+		churned.index(2, "alfa");
+		churned.index(3, "gamma delta");
+		for (long id = 10; id < 2_000; id++) {
+			churned.index(id, "alfa alfa beta");
+			churned.remove(id, "alfa alfa beta");
+		}
+
+		List<FullTextIndex.Match> expected = fresh.search("alfa beta", 10, ids -> new HashSet<>(ids));
+		assertThat(churned.search("alfa beta", 10, ids -> new HashSet<>(ids))).containsExactlyElementsOf(expected);
+		// Repetir la búsqueda con los acumuladores reutilizados da lo mismo
+		assertThat(churned.search("alfa beta", 10, ids -> new HashSet<>(ids))).containsExactlyElementsOf(expected);
+		assertThatThrownBy(() -> churned.index(1, "otro")).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void filterRunsOutsideTheIndexLock() {
+		FullTextIndex index = new FullTextIndex();
+		index.index(1, "alfa");
+		index.index(2, "alfa alfa");
+		index.index(3, "alfa beta");
+
+		// Un filtro que escribe en el índice se bloquearía si siguiera dentro del bloqueo de lectura
+		List<FullTextIndex.Match> matches = assertTimeoutPreemptively(Duration.ofSeconds(5),
+				() -> index.search("alfa", 2, ids -> {
+					Set<Long> visible = new HashSet<>();
+					for (Long id : ids) {
+						index.index(100 + id, "otro");
+						if (id != 2) {
+							visible.add(id);
+						}
+					}
+					return visible;
+				}));
+		assertThat(matches).extracting(FullTextIndex.Match::bookId).containsExactly(1L, 3L);
+	}
+
+	@Test
+	void filterSeesCandidatesByScoreAndStopsAtTheLimit() {
+		FullTextIndex index = new FullTextIndex();
+		for (long id = 1; id <= 1_000; id++) {
+			// Más apariciones, más puntuación: el mejor es el último indexado
+			index.index(id, "alfa ".repeat((int) (id % 50) + 1) + "relleno");
+		}
+
+		List<List<Long>> batches = new ArrayList<>();
+		List<FullTextIndex.Match> matches = index.search("alfa", 5, ids -> {
+			batches.add(ids);
+			return new HashSet<>(ids);
+		});
+
+		// Una sola tanda: los cinco primeros candidatos ya llenan el límite
+		assertThat(batches).hasSize(1);
+		assertThat(batches.get(0)).hasSize(16).startsWith(49L, 99L, 149L);
+		assertThat(matches).hasSize(5);
+		assertThat(matches).extracting(FullTextIndex.Match::score).isSortedAccordingTo(Comparator.reverseOrder());
+	}
+}
@@ -0,0 +1,158 @@
+package com.javabooks.repository;
+
+import com.javabooks.model.Book;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedContentStoreTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void readsRangesAndCompactsDeadSegments() throws Exception {
+		try (MappedContentStore store = new MappedContentStore(directory, 64, Duration.ofHours(1))) {
+			store.put(1, "a".repeat(40));
+			store.put(2, "señal".repeat(8));
+			store.put(1, "b".repeat(40));
+
+			assertThat(store.read(1)).isEqualTo("b".repeat(40));
+			assertThat(store.read(2)).isEqualTo("señal".repeat(8));
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BookContent content = store.content(2).orElseThrow()) {
+				content.transferTo(0, 6, Channels.newChannel(out));
+			}
+			assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("señal");
+
+			// Retira el primer segmento, lo ve sin lecturas en la siguiente y lo borra en la tercera
+			Path first = store.directory().resolve("segment-000001.dat");
+			store.compact();
+			store.compact();
+			assertThat(Files.exists(first)).isTrue();
+			store.compact();
+			assertThat(Files.exists(first)).isFalse();
+			assertThat(store.read(1)).isEqualTo("b".repeat(40));
+			assertThat(store.read(2)).isEqualTo("señal".repeat(8));
+			assertThat(store.liveBytes()).isEqualTo(40 + 48);
+		}
+	}
+
+	@Test
+	void etagsNameTheBytesAcrossRestartsAndCompaction() {
+		String before;
+		try (MappedContentStore store = new MappedContentStore(directory, 64, Duration.ofHours(1))) {
+			store.put(1, "a".repeat(40));
+			store.put(1, "b".repeat(40));
+			before = etag(store, 1);
+			store.compact();
+			assertThat(etag(store, 1)).isEqualTo(before);
+		}
+
+		// Otro arranque que guarda los contenidos en otro orden: mismos bytes, mismo ETag
+		try (MappedContentStore store = new MappedContentStore(directory, 64, Duration.ofHours(1))) {
+			store.put(2, "a".repeat(40));
+			store.put(1, "b".repeat(40));
+			assertThat(etag(store, 1)).isEqualTo(before);
+			store.put(1, "c".repeat(40));
+			assertThat(etag(store, 1)).isNotEqualTo(before);
+		}
+
+		HeapContentStore heap = new HeapContentStore();
+		heap.put(1, "b".repeat(40));
+		assertThat(etag(heap, 1)).isEqualTo(before);
+	}
+
+	@Test
+	void contentOpenDuringCompactionKeepsItsSegment() throws Exception {
+		try (MappedContentStore store = new MappedContentStore(directory, 64, Duration.ofHours(1))) {
+			store.put(1, "a".repeat(40));
+			store.put(2, "x".repeat(10));
+			store.put(1, "b".repeat(40));
+			Path first = store.directory().resolve("segment-000001.dat");
+
+			// El libro 2 se mueve al segundo segmento mientras una descarga sigue abierta
+			BookContent download = store.content(2).orElseThrow();
+			assertThat(download.file()).isEqualTo(first);
+			store.compact();
+			store.compact();
+			store.compact();
+			assertThat(Files.exists(first)).isTrue();
+			assertThat(store.read(2)).isEqualTo("x".repeat(10));
+			// Un segmento compactado ya no se ofrece a sendfile; la copia sí
+			assertThat(download.file()).isNull();
+			try (BookContent moved = store.content(2).orElseThrow()) {
+				assertThat(moved.file()).isNotNull().isNotEqualTo(first);
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			download.transferTo(0, 10, Channels.newChannel(out));
+			assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("x".repeat(10));
+			download.close();
+			download.close();
+
+			store.compact();
+			store.compact();
+			assertThat(Files.exists(first)).isFalse();
+			assertThat(store.read(2)).isEqualTo("x".repeat(10));
+		}
+	}
+
+	@Test
+	void instancesSharingADirectoryKeepTheirOwnSegments() {
+		try (MappedContentStore one = new MappedContentStore(directory, 64, Duration.ofHours(1))) {
+			one.put(1, "primera instancia");
+			Path other;
+			try (MappedContentStore two = new MappedContentStore(directory, 64, Duration.ofHours(1))) {
+				two.put(1, "segunda instancia");
+				other = two.directory();
+				assertThat(other).isNotEqualTo(one.directory());
+				assertThat(one.read(1)).isEqualTo("primera instancia");
+				assertThat(two.read(1)).isEqualTo("segunda instancia");
+			}
+			// Al cerrarse, cada una borra solo lo suyo
+			assertThat(Files.exists(other)).isFalse();
+			assertThat(Files.exists(one.directory().resolve("segment-000001.dat"))).isTrue();
+			assertThat(one.read(1)).isEqualTo("primera instancia");
+		}
+	}
+
+	@Test
+	void startupDeletesDirectoriesOfDeadProcessesOnly() throws Exception {
+		Path abandoned = Files.createDirectories(directory.resolve("pid-" + Long.MAX_VALUE + "-1"));
+		Files.writeString(abandoned.resolve("segment-000001.dat"), "x");
+		Path foreign = Files.createDirectories(directory.resolve("otros"));
+		try (MappedContentStore store = new MappedContentStore(directory, 64, Duration.ofHours(1))) {
+			assertThat(Files.exists(abandoned)).isFalse();
+			assertThat(Files.exists(foreign)).isTrue();
+			assertThat(store.directory().getParent()).isEqualTo(directory);
+		}
+	}
+
+	@Test
+	void repositoryLoadsContenidoLazily() {
+		try (MappedContentStore store = new MappedContentStore(directory, 1024, Duration.ofHours(1))) {
+			BookRepository repository = new BookRepository(store);
+			Book book = repository.save(new Book(null, "Mapped", "Autor", 10, "PROGRAMMING", "Contenido fuera del heap"));
+
+			assertThat(book.getContenidoLoader()).isNotNull();
+			assertThat(repository.findById(book.getId()).orElseThrow().getContenido()).isEqualTo("Contenido fuera del heap");
+			assertThat(repository.search("heap", 5, b -> true)).hasSize(1);
+		}
+	}
+
+	private static String etag(ContentStore store, long id) {
+		try (BookContent content = store.content(id).orElseThrow()) {
+			return content.etag();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.javabooks.repository.jpa;
+
+import com.javabooks.model.Book;
+import com.javabooks.repository.BookRepository;
+import com.javabooks.repository.HeapContentStore;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JpaBookStorageTests {
+
+	@Autowired
+	BookEntityRepository bookEntityRepository;
+
+	@Autowired
+	EntityManager entityManager;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Test
+	void persistsCatalogAndRebuildsDerivedIndexesOnRestart() {
+		JpaBookStorage storage = new JpaBookStorage(bookEntityRepository, entityManager, transactionManager, 2);
+		BookRepository repository = new BookRepository(storage, new HeapContentStore(), Optional.empty());
+		assertThat(storage.count()).isEqualTo(7);
+
+		Book book = repository.save(new Book(null, "Programación Funcional", "José Pérez", 200, "PROGRAMMING", "Mónadas y funtores"));
+		book.setCantidadPaginas(210);
+		repository.save(book);
+		repository.deleteById(2L);
+
+		assertThat(repository.findByTitulo("PROGRAMACION funcional")).get()
+				.extracting(Book::getCantidadPaginas).isEqualTo(210);
+		assertThat(repository.findByCategoria("programming")).hasSize(4);
+		assertThat(repository.findAll(Set.of("PROGRAMMING", "FRAMEWORKS"), Set.of("José Pérez", "Craig Walls"))).hasSize(2);
+		assertThat(repository.findByAutor("jose perez", Set.of("ARCHITECTURE"))).isEmpty();
+
+		// Un repositorio nuevo sobre el mismo motor reconstruye contenido, búsqueda e ids
+		BookRepository restarted = new BookRepository(storage, new HeapContentStore(), Optional.empty());
+		assertThat(restarted.findAll()).hasSize(7);
+		assertThat(restarted.findById(8L).orElseThrow().getContenido()).isEqualTo("Mónadas y funtores");
+		assertThat(restarted.search("monadas", 10, b -> true)).extracting("id").containsExactly(8L);
+		assertThat(restarted.save(new Book(null, "Refactoring", "Martin Fowler", 448, "PROGRAMMING", "Contenido")).getId())
+				.isEqualTo(9L);
+	}
+}
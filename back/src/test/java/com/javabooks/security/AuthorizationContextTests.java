@@ -0,0 +1,201 @@
+package com.javabooks.security;
+
+import com.javabooks.security.policy.EntitlementEntity;
+import com.javabooks.security.policy.EntitlementEntityRepository;
+import com.javabooks.security.policy.Policy;
+import com.javabooks.security.policy.PolicyEngine;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuthorizationContextTests {
+
+	@Test
+	void compilesEntitlementsOnceWhenConvertingTheToken() {
+		Jwt jwt = Jwt.withTokenValue("token").header("alg", "none").subject("user")
+				.claim("scope", "libros.read")
+				.claim("roles", List.of("USER"))
+				.claim("categorias", List.of("PROGRAMMING"))
+				.claim("autores", List.of("Joshua Bloch"))
+				.build();
+
+		var authentication = converter(policyEngine(List.of())).convert(jwt);
+		AuthorizationContext context = AuthorizationContext.of(authentication);
+
+		assertThat(authentication).isInstanceOf(EntitledJwtAuthenticationToken.class);
+		assertThat(context).isSameAs(AuthorizationContext.of(authentication));
+		assertThat(context.hasScope("libros.read")).isTrue();
+		assertThat(context.hasScope("libros.write")).isFalse();
+		assertThat(context.hasRole("ADMIN")).isFalse();
+		assertThat(context.canAccessCategory("PROGRAMMING")).isTrue();
+		assertThat(context.canAccessCategory(null)).isFalse();
+		assertThat(context.canAccessAuthor("Joshua Bloch")).isTrue();
+		assertThat(context.canAccessAuthor("Eric Evans")).isFalse();
+	}
+
+	@Test
+	void resolvesTheCompactEntitlementClaimLocally() {
+		PolicyEngine engine = policyEngine(List.of(
+				new EntitlementEntity("ana", EntitlementEntity.Tipo.CATEGORIA, "DATABASES"),
+				new EntitlementEntity("ana", EntitlementEntity.Tipo.AUTOR, "Martin*")));
+		Policy policy = engine.policyFor("ana");
+		AuthorizationContextConverter converter = converter(engine);
+
+		AuthorizationContext context = AuthorizationContext.of(converter.convert(token("ana", policy.id())));
+		assertThat(context.canAccessCategory("DATABASES")).isTrue();
+		assertThat(context.canAccessAuthor("Martin Kleppmann")).isTrue();
+		assertThat(context.getAutores()).isSameAs(policy.autores());
+
+		// Un id que este servidor no emitió no concede nada
+		AuthorizationContext unknown = AuthorizationContext.of(converter.convert(token("ana", "desconocido")));
+		assertThat(unknown.canAccessCategory("DATABASES")).isFalse();
+	}
+
+	@Test
+	void compactTokenIsSmallerAndGrantsTheSameAccess() throws Exception {
+		Tokens tokens = tokens();
+
+		AuthorizationContext lists = tokens.context(tokens.full());
+		AuthorizationContext ids = tokens.context(tokens.compact());
+		for (int c = 0; c < 14; c++) {
+			assertThat(ids.canAccessCategory("CATEGORIA_" + c)).isEqualTo(lists.canAccessCategory("CATEGORIA_" + c)).isEqualTo(c < 12);
+		}
+		for (int a = 0; a < 160; a++) {
+			String autor = String.format("Autor de prueba %03d", a);
+			assertThat(ids.canAccessAuthor(autor)).isEqualTo(lists.canAccessAuthor(autor)).isEqualTo(a < 150);
+		}
+		// 16 caracteres en lugar de 162 patrones
+		assertThat(tokens.compact().length()).isLessThan(tokens.full().length() / 2);
+	}
+
+	/**
+	 * Tamaño del token y coste de decodificarlo (firma RS256 + parseo + permisos) con los
+	 * permisos en listas o como id compacto. No corre con el resto:
+	 * mvn test -Dtest=AuthorizationContextTests -Dbenchmark=true
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void tokenSizeAndDecodeCostWithCompactEntitlements() throws Exception {
+		Tokens tokens = tokens();
+
+		for (String[] variant : new String[][] {{"listas", tokens.full()}, {"compacto", tokens.compact()}}) {
+			String token = variant[1];
+			int iterations = 20_000;
+			for (int i = 0; i < iterations; i++) {
+				tokens.context(token);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				assertThat(tokens.context(token).canAccessCategory("CATEGORIA_3")).isTrue();
+			}
+			double micros = (System.nanoTime() - start) / 1e3 / iterations;
+			System.out.printf("Token %s: %d bytes, %.1f us por decodificación%n", variant[0], token.length(), micros);
+		}
+	}
+
+	/**
+	 * El mismo token de ana, firmado con RS256, con 12 categorías y 150 autores en listas o como id de política.
+	 */
+	private static Tokens tokens() throws Exception {
+		List<EntitlementEntity> rules = new ArrayList<>();
+		for (int c = 0; c < 12; c++) {
+			rules.add(new EntitlementEntity("ana", EntitlementEntity.Tipo.CATEGORIA, "CATEGORIA_" + c));
+		}
+		for (int a = 0; a < 150; a++) {
+			rules.add(new EntitlementEntity("ana", EntitlementEntity.Tipo.AUTOR, String.format("Autor de prueba %03d", a)));
+		}
+		PolicyEngine engine = policyEngine(rules);
+		Policy policy = engine.policyFor("ana");
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		KeyPair keyPair = generator.generateKeyPair();
+		RSAKey key = new RSAKey.Builder((RSAPublicKey) keyPair.getPublic())
+				.privateKey((RSAPrivateKey) keyPair.getPrivate()).keyID("k").build();
+		NimbusJwtEncoder encoder = new NimbusJwtEncoder(new ImmutableJWKSet<>(new JWKSet(key)));
+		NimbusJwtDecoder decoder = NimbusJwtDecoder.withPublicKey((RSAPublicKey) keyPair.getPublic()).build();
+
+		String full = encode(encoder, claims -> claims
+				.claim("categorias", policy.categorias().patterns())
+				.claim("autores", policy.autores().patterns()));
+		String compact = encode(encoder, claims -> claims.claim(JwtCustomizer.ENTITLEMENTS_CLAIM, policy.id()));
+		return new Tokens(decoder, converter(engine), full, compact);
+	}
+
+	private static String encode(NimbusJwtEncoder encoder, Consumer<JwtClaimsSet.Builder> entitlements) {
+		JwtClaimsSet.Builder claims = JwtClaimsSet.builder()
+				.issuer("http://localhost:9000")
+				.subject("ana")
+				.audience(List.of("web-client"))
+				.issuedAt(Instant.now())
+				.expiresAt(Instant.now().plusSeconds(3600))
+				.claim("scope", List.of("libros.read", "libros.write"))
+				.claim("roles", List.of("USER"));
+		entitlements.accept(claims);
+		return encoder.encode(JwtEncoderParameters.from(claims.build())).getTokenValue();
+	}
+
+	private static Jwt token(String subject, String entitlements) {
+		return Jwt.withTokenValue("token").header("alg", "none").subject(subject)
+				.claim("scope", "libros.read")
+				.claim("roles", List.of("USER"))
+				.claim(JwtCustomizer.ENTITLEMENTS_CLAIM, entitlements)
+				.build();
+	}
+
+	private static AuthorizationContextConverter converter(PolicyEngine engine) {
+		JwtGrantedAuthoritiesConverter authorities = new JwtGrantedAuthoritiesConverter();
+		authorities.setAuthorityPrefix("SCOPE_");
+		JwtAuthenticationConverter delegate = new JwtAuthenticationConverter();
+		delegate.setJwtGrantedAuthoritiesConverter(authorities);
+		return new AuthorizationContextConverter(delegate, engine);
+	}
+
+	private static PolicyEngine policyEngine(List<EntitlementEntity> rules) {
+		PolicyEngine engine = new PolicyEngine(new EntitlementEntityRepository() {
+			@Override
+			public List<EntitlementEntity> findAllByOrderByIdAsc() {
+				return rules;
+			}
+
+			@Override
+			public <S extends EntitlementEntity> List<S> saveAll(Iterable<S> entities) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public long count() {
+				return rules.size();
+			}
+		}, Duration.ofHours(24));
+		engine.reload();
+		return engine;
+	}
+
+	private record Tokens(NimbusJwtDecoder decoder, AuthorizationContextConverter converter, String full, String compact) {
+		AuthorizationContext context(String token) {
+			return AuthorizationContext.of(converter.convert(decoder.decode(token)));
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.javabooks.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingJwtDecoderTests {
+
+	@Test
+	void verifiesEachTokenOnceUntilItExpiresOrIsRevoked() {
+		MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+		AtomicInteger verifications = new AtomicInteger();
+		JwtDecoder verifier = token -> {
+			verifications.incrementAndGet();
+			return Jwt.withTokenValue(token).header("alg", "RS256").subject("user")
+					.issuedAt(clock.instant()).expiresAt(clock.instant().plusSeconds(60)).build();
+		};
+		CachingJwtDecoder decoder = new CachingJwtDecoder(verifier, 8, clock);
+
+		Jwt first = decoder.decode("a.b.c");
+		assertThat(decoder.decode("a.b.c")).isSameAs(first);
+		assertThat(verifications).hasValue(1);
+		assertThat(decoder.stats()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+
+		// Pasado el exp se vuelve a verificar
+		clock.now = clock.now.plusSeconds(61);
+		assertThat(decoder.decode("a.b.c")).isNotSameAs(first);
+		assertThat(verifications).hasValue(2);
+
+		decoder.revoke("a.b.c", clock.now.plusSeconds(60));
+		assertThatThrownBy(() -> decoder.decode("a.b.c")).isInstanceOf(BadJwtException.class);
+		assertThat(verifications).hasValue(2);
+
+		// Acotada: nunca más de maxEntries, y la marca de revocación sobrevive a la expulsión
+		for (int i = 0; i < 50; i++) {
+			decoder.decode("token-" + i);
+		}
+		assertThat((int) decoder.stats().get("size")).isLessThanOrEqualTo(8);
+		assertThatThrownBy(() -> decoder.decode("a.b.c")).isInstanceOf(BadJwtException.class);
+	}
+
+	@Test
+	void revokedTokenIsRejectedWithoutBeingVerified() {
+		MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+		AtomicInteger verifications = new AtomicInteger();
+		CachingJwtDecoder decoder = new CachingJwtDecoder(verifier(clock, verifications), 8, clock);
+
+		decoder.revoke("a.b.c", clock.now.plusSeconds(60));
+		assertThatThrownBy(() -> decoder.decode("a.b.c")).isInstanceOf(BadJwtException.class);
+		assertThat(verifications).hasValue(0);
+
+		// Caducada la revocación, el token vuelve a pasar por el verificador
+		clock.now = clock.now.plusSeconds(61);
+		decoder.decode("a.b.c");
+		assertThat(verifications).hasValue(1);
+		assertThat(decoder.stats()).containsEntry("revoked", 0);
+	}
+
+	@Test
+	void revocationDuringVerificationIsNotOverwritten() throws Exception {
+		MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+		CountDownLatch verifying = new CountDownLatch(1);
+		CountDownLatch revokedLatch = new CountDownLatch(1);
+		JwtDecoder slow = token -> {
+			verifying.countDown();
+			try {
+				revokedLatch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Jwt.withTokenValue(token).header("alg", "RS256").subject("user")
+					.issuedAt(clock.instant()).expiresAt(clock.instant().plusSeconds(60)).build();
+		};
+		CachingJwtDecoder decoder = new CachingJwtDecoder(slow, 8, clock);
+
+		CompletableFuture<Jwt> inFlight = CompletableFuture.supplyAsync(() -> decoder.decode("a.b.c"));
+		assertThat(verifying.await(5, TimeUnit.SECONDS)).isTrue();
+		decoder.revoke("a.b.c", clock.now.plusSeconds(60));
+		revokedLatch.countDown();
+
+		assertThatThrownBy(() -> inFlight.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(BadJwtException.class);
+		assertThatThrownBy(() -> decoder.decode("a.b.c")).isInstanceOf(BadJwtException.class);
+	}
+
+	@Test
+	void revocationsSurviveEvictionPressure() {
+		MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+		AtomicInteger verifications = new AtomicInteger();
+		CachingJwtDecoder decoder = new CachingJwtDecoder(verifier(clock, verifications), 8, clock);
+
+		// Más revocaciones que sitio en la caché, y después muchos tokens válidos
+		for (int i = 0; i < 20; i++) {
+			decoder.decode("revocado-" + i);
+			decoder.revoke("revocado-" + i, clock.now.plusSeconds(60));
+		}
+		for (int i = 0; i < 200; i++) {
+			decoder.decode("token-" + i);
+		}
+		assertThat((int) decoder.stats().get("size")).isLessThanOrEqualTo(8);
+		for (int i = 0; i < 20; i++) {
+			String token = "revocado-" + i;
+			assertThatThrownBy(() -> decoder.decode(token)).isInstanceOf(BadJwtException.class);
+		}
+		assertThat(decoder.stats()).containsEntry("revoked", 20);
+	}
+
+	private static JwtDecoder verifier(Clock clock, AtomicInteger verifications) {
+		return token -> {
+			verifications.incrementAndGet();
+			return Jwt.withTokenValue(token).header("alg", "RS256").subject("user")
+					.issuedAt(clock.instant()).expiresAt(clock.instant().plusSeconds(60)).build();
+		};
+	}
+
+	private static final class MutableClock extends Clock {
+		private Instant now;
+
+		MutableClock(Instant now) {
+			this.now = now;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
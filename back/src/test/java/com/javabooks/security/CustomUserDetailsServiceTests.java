@@ -0,0 +1,180 @@
+package com.javabooks.security;
+
+import com.javabooks.security.credentials.CredentialEntity;
+import com.javabooks.security.credentials.CredentialEntityRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomUserDetailsServiceTests {
+
+	private final Map<String, CredentialEntity> table = new LinkedHashMap<>();
+
+	@Test
+	void authenticatesAgainstCachedPreHashedCredentials() {
+		CustomUserDetailsService users = new CustomUserDetailsService(repository());
+		users.init();
+		ProviderManager manager = authenticationManager(users, encoder(10));
+
+		// Dos logins seguidos: borrar la contraseña del principal no toca la caché
+		for (int i = 0; i < 2; i++) {
+			var authentication = manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("admin", "admin"));
+			assertThat(authentication.getAuthorities()).extracting("authority").contains("ROLE_ADMIN");
+		}
+		assertThat(users.loadUserByUsername("user").getPassword()).startsWith("{bcrypt}$2a$10$");
+	}
+
+	@Test
+	void rehashesWithTheConfiguredCostOnLogin() {
+		CustomUserDetailsService users = new CustomUserDetailsService(repository());
+		users.init();
+		ProviderManager manager = authenticationManager(users, encoder(11));
+
+		manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password"));
+
+		assertThat(table.get("user").getPassword()).startsWith("{bcrypt}$2a$11$");
+		assertThat(users.loadUserByUsername("user").getPassword()).startsWith("{bcrypt}$2a$11$");
+		manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password"));
+	}
+
+	@Test
+	void loginsOnlyVerifyThePasswordAndNeverHashIt() {
+		CustomUserDetailsService users = new CustomUserDetailsService(repository());
+		users.init();
+		PasswordEncoder bcrypt = encoder(10);
+		AtomicInteger encodes = new AtomicInteger();
+		AtomicInteger matches = new AtomicInteger();
+		PasswordEncoder counting = new PasswordEncoder() {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				encodes.incrementAndGet();
+				return bcrypt.encode(rawPassword);
+			}
+
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				matches.incrementAndGet();
+				return bcrypt.matches(rawPassword, encodedPassword);
+			}
+
+			@Override
+			public boolean upgradeEncoding(String encodedPassword) {
+				return bcrypt.upgradeEncoding(encodedPassword);
+			}
+		};
+		ProviderManager manager = authenticationManager(users, counting);
+		String stored = users.loadUserByUsername("user").getPassword();
+
+		// El primer login codifica una vez la contraseña de relleno del provider (usuarios inexistentes)
+		manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password"));
+		encodes.set(0);
+		matches.set(0);
+
+		// Un BCrypt por login, el de la comprobación: la búsqueda no vuelve a codificar
+		for (int i = 0; i < 5; i++) {
+			manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password"));
+		}
+		assertThat(encodes).hasValue(0);
+		assertThat(matches).hasValue(5);
+		assertThat(users.loadUserByUsername("user").getPassword()).isEqualTo(stored);
+
+		assertThatThrownBy(() -> manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "otra")))
+				.isInstanceOf(BadCredentialsException.class);
+	}
+
+	/**
+	 * Logins por segundo en un hilo: antes, el UserDetailsService codificaba la contraseña en
+	 * cada búsqueda; ahora solo se verifica. No corre con el resto:
+	 * mvn test -Dtest=CustomUserDetailsServiceTests -Dbenchmark=true
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void loginsPerSecondBeforeAndAfter() {
+		PasswordEncoder encoder = encoder(10);
+		UserDetailsService encodingOnLookup = username -> User.builder()
+				.username(username)
+				.password(encoder.encode("password"))
+				.roles("USER")
+				.build();
+		CustomUserDetailsService cached = new CustomUserDetailsService(repository());
+		cached.init();
+
+		for (Object[] variant : new Object[][] {{"encode en cada búsqueda", encodingOnLookup}, {"credenciales precalculadas", cached}}) {
+			ProviderManager manager = authenticationManager((UserDetailsService) variant[1], encoder);
+			int logins = 50;
+			manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password"));
+			long start = System.nanoTime();
+			for (int i = 0; i < logins; i++) {
+				manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password"));
+			}
+			double perSecond = logins / ((System.nanoTime() - start) / 1e9);
+			System.out.printf("%s: %.1f logins/s por núcleo%n", variant[0], perSecond);
+		}
+	}
+
+	private static ProviderManager authenticationManager(UserDetailsService users, PasswordEncoder encoder) {
+		DaoAuthenticationProvider provider = new DaoAuthenticationProvider(users);
+		provider.setPasswordEncoder(encoder);
+		if (users instanceof CustomUserDetailsService credentials) {
+			provider.setUserDetailsPasswordService(credentials);
+		}
+		return new ProviderManager(provider);
+	}
+
+	private static PasswordEncoder encoder(int strength) {
+		BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+		DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+		encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+		return encoder;
+	}
+
+	private CredentialEntityRepository repository() {
+		return new CredentialEntityRepository() {
+			@Override
+			public List<CredentialEntity> findAll() {
+				return new ArrayList<>(table.values());
+			}
+
+			@Override
+			public Optional<CredentialEntity> findById(String username) {
+				return Optional.ofNullable(table.get(username));
+			}
+
+			@Override
+			public <S extends CredentialEntity> S save(S entity) {
+				table.put(entity.getUsername(), entity);
+				return entity;
+			}
+
+			@Override
+			public <S extends CredentialEntity> List<S> saveAll(Iterable<S> entities) {
+				List<S> saved = new ArrayList<>();
+				entities.forEach(entity -> saved.add(save(entity)));
+				return saved;
+			}
+
+			@Override
+			public long count() {
+				return table.size();
+			}
+		};
+	}
+}
@@ -0,0 +1,244 @@
+package com.javabooks.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.server.authorization.context.AuthorizationServerContext;
+import org.springframework.security.oauth2.server.authorization.context.AuthorizationServerContextHolder;
+import org.springframework.security.oauth2.server.authorization.oidc.web.OidcProviderConfigurationEndpointFilter;
+import org.springframework.security.oauth2.server.authorization.settings.AuthorizationServerSettings;
+import org.springframework.security.oauth2.server.authorization.web.NimbusJwkSetEndpointFilter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrecomputedMetadataFilterTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void servesTheJwkSetWithAStrongEtagAndRegeneratesItOnRotation() throws Exception {
+		SigningKeyManager keys = new SigningKeyManager(dir, "ES256", Duration.ofDays(30), 1, Duration.ZERO);
+		keys.start();
+		PrecomputedMetadataFilter filter = new PrecomputedMetadataFilter(keys, request -> null, "/oauth2/jwks", Duration.ofMinutes(5), Duration.ofHours(1));
+		FilterChain chain = (request, response) -> {
+			throw new AssertionError("El JWKS no debería llegar a la cadena");
+		};
+
+		MockHttpServletResponse first = get(filter, chain, "/oauth2/jwks", null);
+		String etag = first.getHeader("ETag");
+		assertThat(first.getStatus()).isEqualTo(200);
+		assertThat(etag).startsWith("\"").endsWith("\"");
+		assertThat(first.getHeader("Cache-Control")).isEqualTo("public, max-age=300");
+		assertThat(first.getContentAsString()).contains(keys.getKeys().getKeys().get(0).getKeyID()).doesNotContain("\"d\"");
+
+		MockHttpServletResponse cached = get(filter, chain, "/oauth2/jwks", etag);
+		assertThat(cached.getStatus()).isEqualTo(304);
+		assertThat(cached.getContentAsByteArray()).isEmpty();
+
+		// Tras rotar, el ETag anterior ya no vale y el documento trae las dos claves
+		String kid = keys.rotate().getKeyID();
+		MockHttpServletResponse rotated = get(filter, chain, "/oauth2/jwks", etag);
+		assertThat(rotated.getStatus()).isEqualTo(200);
+		assertThat(rotated.getHeader("ETag")).isNotEqualTo(etag);
+		assertThat(rotated.getContentAsString()).contains(kid);
+		keys.close();
+	}
+
+	@Test
+	void keepsTheFirstDiscoveryResponseAndAnswersConditionalRequests() throws Exception {
+		SigningKeyManager keys = new SigningKeyManager(dir, "ES256", Duration.ofDays(30), 1, Duration.ZERO);
+		keys.start();
+		PrecomputedMetadataFilter filter = new PrecomputedMetadataFilter(keys, request -> null, "/oauth2/jwks", Duration.ofMinutes(5), Duration.ofHours(1));
+		AtomicInteger served = new AtomicInteger();
+		FilterChain chain = (request, response) -> {
+			served.incrementAndGet();
+			response.setContentType("application/json");
+			response.getOutputStream().write("{\"issuer\":\"http://localhost:9000\"}".getBytes());
+		};
+
+		MockHttpServletResponse first = get(filter, chain, "/.well-known/openid-configuration", null);
+		assertThat(first.getContentAsString()).isEqualTo("{\"issuer\":\"http://localhost:9000\"}");
+		assertThat(first.getHeader("Cache-Control")).isEqualTo("public, max-age=3600");
+
+		MockHttpServletResponse second = get(filter, chain, "/.well-known/openid-configuration", null);
+		assertThat(second.getContentAsString()).isEqualTo(first.getContentAsString());
+		assertThat(second.getHeader("ETag")).isEqualTo(first.getHeader("ETag"));
+		assertThat(get(filter, chain, "/.well-known/openid-configuration", first.getHeader("ETag")).getStatus()).isEqualTo(304);
+		assertThat(served).hasValue(1);
+
+		// Otras rutas y métodos siguen a la cadena
+		get(filter, chain, "/.well-known/otra-cosa", null);
+		MockHttpServletRequest post = new MockHttpServletRequest("POST", "/.well-known/openid-configuration");
+		filter.doFilter(post, new MockHttpServletResponse(), chain);
+		assertThat(served).hasValue(3);
+		keys.close();
+	}
+
+	@Test
+	void servesTheSameDocumentsAsTheAuthorizationServerEndpoints() throws Exception {
+		SigningKeyManager keys = new SigningKeyManager(dir, "RS256", Duration.ofDays(30), 1, Duration.ZERO);
+		keys.start();
+		keys.rotate();
+		AuthorizationServerSettings settings = AuthorizationServerSettings.builder().issuer("http://localhost:9000").build();
+		AuthorizationServerContextHolder.setContext(new AuthorizationServerContext() {
+			@Override
+			public String getIssuer() {
+				return settings.getIssuer();
+			}
+
+			@Override
+			public AuthorizationServerSettings getAuthorizationServerSettings() {
+				return settings;
+			}
+		});
+		try {
+			Filter jwks = new NimbusJwkSetEndpointFilter(keys, "/oauth2/jwks");
+			Filter discovery = new OidcProviderConfigurationEndpointFilter();
+			AtomicInteger served = new AtomicInteger();
+			FilterChain sas = (request, response) -> {
+				served.incrementAndGet();
+				discovery.doFilter(request, response, (req, res) -> {});
+			};
+			PrecomputedMetadataFilter filter = new PrecomputedMetadataFilter(keys, request -> null, "/oauth2/jwks", Duration.ofMinutes(5), Duration.ofHours(1));
+			ObjectMapper json = new ObjectMapper();
+
+			assertThat(json.readTree(get(filter, sas, "/oauth2/jwks", null).getContentAsString()))
+					.isEqualTo(json.readTree(get(jwks, (req, res) -> {}, "/oauth2/jwks", null).getContentAsString()));
+			String expected = get(discovery, (req, res) -> {}, "/.well-known/openid-configuration", null).getContentAsString();
+			for (int i = 0; i < 100; i++) {
+				MockHttpServletResponse response = get(filter, sas, "/.well-known/openid-configuration", null);
+				assertThat(json.readTree(response.getContentAsString())).isEqualTo(json.readTree(expected));
+				assertThat(get(filter, sas, "/.well-known/openid-configuration", response.getHeader("ETag")).getStatus())
+						.isEqualTo(304);
+			}
+			// El documento se genera una vez y luego se sirve del precalculado
+			assertThat(served).hasValue(1);
+		} finally {
+			AuthorizationServerContextHolder.resetContext();
+			keys.close();
+		}
+	}
+
+	/**
+	 * Peticiones por segundo al JWKS y al documento de OpenID servidos por los endpoints del
+	 * servidor de autorización y ya serializados (respuesta completa y 304). No corre con el resto:
+	 * mvn test -Dtest=PrecomputedMetadataFilterTests -Dbenchmark=true
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void metadataRequestsPerSecond() throws Exception {
+		SigningKeyManager keys = new SigningKeyManager(dir, "RS256", Duration.ofDays(30), 1, Duration.ZERO);
+		keys.start();
+		keys.rotate();
+		AuthorizationServerSettings settings = AuthorizationServerSettings.builder().issuer("http://localhost:9000").build();
+		AuthorizationServerContextHolder.setContext(new AuthorizationServerContext() {
+			@Override
+			public String getIssuer() {
+				return settings.getIssuer();
+			}
+
+			@Override
+			public AuthorizationServerSettings getAuthorizationServerSettings() {
+				return settings;
+			}
+		});
+		try {
+			Filter jwks = new NimbusJwkSetEndpointFilter(keys, "/oauth2/jwks");
+			Filter discovery = new OidcProviderConfigurationEndpointFilter();
+			FilterChain sas = (request, response) -> discovery.doFilter(request, response, (req, res) -> {});
+			PrecomputedMetadataFilter filter = new PrecomputedMetadataFilter(keys, request -> null, "/oauth2/jwks", Duration.ofMinutes(5), Duration.ofHours(1));
+			String jwksEtag = get(filter, sas, "/oauth2/jwks", null).getHeader("ETag");
+			String discoveryEtag = get(filter, sas, "/.well-known/openid-configuration", null).getHeader("ETag");
+			assertThat(get(jwks, (req, res) -> {}, "/oauth2/jwks", null).getContentAsString()).isNotEmpty();
+			assertThat(get(discovery, (req, res) -> {}, "/.well-known/openid-configuration", null).getContentAsString()).isNotEmpty();
+
+			int iterations = 100_000;
+			measure("JWKS, endpoint del servidor", iterations, () -> get(jwks, (req, res) -> {}, "/oauth2/jwks", null, bufferedResponse()));
+			measure("JWKS, precalculado", iterations, () -> get(filter, sas, "/oauth2/jwks", null, bufferedResponse()));
+			measure("JWKS, precalculado 304", iterations, () -> get(filter, sas, "/oauth2/jwks", jwksEtag, bufferedResponse()));
+			measure("OpenID, endpoint del servidor", iterations, () -> get(discovery, (req, res) -> {}, "/.well-known/openid-configuration", null, bufferedResponse()));
+			measure("OpenID, precalculado", iterations, () -> get(filter, sas, "/.well-known/openid-configuration", null, bufferedResponse()));
+			measure("OpenID, precalculado 304", iterations, () -> get(filter, sas, "/.well-known/openid-configuration", discoveryEtag, bufferedResponse()));
+		} finally {
+			AuthorizationServerContextHolder.resetContext();
+			keys.close();
+		}
+	}
+
+	private static void measure(String label, int iterations, Request request) throws Exception {
+		for (int i = 0; i < iterations / 10; i++) {
+			request.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			request.run();
+		}
+		double perSecond = iterations / ((System.nanoTime() - start) / 1e9);
+		System.out.printf("%s: %.0f peticiones/s%n", label, perSecond);
+	}
+
+	private static MockHttpServletResponse get(Filter filter, FilterChain chain, String path, String ifNoneMatch) throws Exception {
+		return get(filter, chain, path, ifNoneMatch, new MockHttpServletResponse());
+	}
+
+	private static MockHttpServletResponse get(Filter filter, FilterChain chain, String path, String ifNoneMatch,
+			MockHttpServletResponse response) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+		request.setServletPath(path);
+		if (ifNoneMatch != null) {
+			request.addHeader("If-None-Match", ifNoneMatch);
+		}
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+
+	/**
+	 * El stream de MockHttpServletResponse escribe byte a byte; para medir, uno que copia bloques.
+	 */
+	private static MockHttpServletResponse bufferedResponse() {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		ServletOutputStream stream = new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				body.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				body.write(b, off, len);
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener listener) {
+			}
+		};
+		return new MockHttpServletResponse() {
+			@Override
+			public ServletOutputStream getOutputStream() {
+				return stream;
+			}
+		};
+	}
+
+	private interface Request {
+		void run() throws Exception;
+	}
+}
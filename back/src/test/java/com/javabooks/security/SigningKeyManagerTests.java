@@ -0,0 +1,205 @@
+package com.javabooks.security;
+
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.server.authorization.config.annotation.web.configuration.OAuth2AuthorizationServerConfiguration;
+
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SigningKeyManagerTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void keepsKeysAcrossRestartsAndVerifiesTokensFromThePreviousKey() {
+		SigningKeyManager keys = new SigningKeyManager(dir, "ES256", Duration.ofDays(30), 1, Duration.ZERO);
+		keys.start();
+		String kid = keys.getKeys().getKeys().get(0).getKeyID();
+		String token = sign(keys);
+		keys.close();
+
+		SigningKeyManager restarted = new SigningKeyManager(dir, "ES256", Duration.ofDays(30), 1, Duration.ZERO);
+		restarted.start();
+		assertThat(restarted.getKeys().getKeys()).extracting("keyID").containsExactly(kid);
+		JwtDecoder decoder = OAuth2AuthorizationServerConfiguration.jwtDecoder(restarted);
+
+		// Tras rotar, el token de la clave anterior sigue verificando y se firma con la nueva
+		restarted.rotate();
+		assertThat(decoder.decode(token).getSubject()).isEqualTo("user");
+		assertThat(decoder.decode(sign(restarted)).getSubject()).isEqualTo("user");
+
+		// Solo se conserva una anterior
+		restarted.rotate();
+		assertThat(restarted.getKeys().getKeys()).hasSize(2).extracting("keyID").doesNotContain(kid);
+		restarted.close();
+	}
+
+	@Test
+	void publishesTheRotatedKeyBeforeSigningWithIt() {
+		MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		Duration maxAge = Duration.ofMinutes(5);
+		SigningKeyManager keys = new SigningKeyManager(dir, "ES256", Duration.ofDays(30), 1, maxAge, clock);
+		keys.start();
+		// Sin JWKS anterior en ninguna caché, la primera clave firma al momento
+		String first = keys.activeKey().getKeyID();
+		assertThat(kid(sign(keys))).isEqualTo(first);
+
+		clock.now = clock.now.plus(Duration.ofDays(1));
+		String second = keys.rotate().getKeyID();
+		assertThat(keys.getKeys().getKeys()).extracting("keyID").containsExactly(second, first);
+		assertThat(kid(sign(keys))).isEqualTo(first);
+
+		// Otra rotación antes del plazo no descarta la clave que firma
+		clock.now = clock.now.plus(Duration.ofMinutes(1));
+		String third = keys.rotate().getKeyID();
+		assertThat(keys.getKeys().getKeys()).extracting("keyID").containsExactly(third, second, first);
+		assertThat(kid(sign(keys))).isEqualTo(first);
+		keys.close();
+
+		// Un reinicio dentro del plazo sigue firmando con la anterior; cada pendiente firma al cumplir el suyo
+		clock.now = clock.now.plus(Duration.ofMinutes(3));
+		SigningKeyManager restarted = new SigningKeyManager(dir, "ES256", Duration.ofDays(30), 1, maxAge, clock);
+		restarted.start();
+		assertThat(kid(sign(restarted))).isEqualTo(first);
+
+		clock.now = clock.now.plus(Duration.ofMinutes(1));
+		assertThat(kid(sign(restarted))).isEqualTo(second);
+		clock.now = clock.now.plus(Duration.ofMinutes(1));
+		assertThat(kid(sign(restarted))).isEqualTo(third);
+		restarted.close();
+	}
+
+	@Test
+	void rotatesAtStartupWhenTheAlgorithmChanges() {
+		SigningKeyManager rsa = new SigningKeyManager(dir, "RS256", Duration.ofDays(30), 1, Duration.ZERO);
+		rsa.start();
+		rsa.close();
+
+		SigningKeyManager ec = new SigningKeyManager(dir, "ES256", Duration.ofDays(30), 1, Duration.ZERO);
+		ec.start();
+		assertThat(ec.getKeys().getKeys()).extracting(key -> key.getAlgorithm().getName())
+				.containsExactly("ES256", "RS256");
+		ec.close();
+
+		assertThatThrownBy(() -> new SigningKeyManager(dir, "EdDSA", Duration.ofDays(30), 1, Duration.ZERO))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void signsAndVerifiesWithEachSupportedAlgorithm() throws ParseException {
+		for (String algorithm : List.of("RS256", "ES256")) {
+			SigningKeyManager keys = new SigningKeyManager(dir.resolve(algorithm), algorithm, Duration.ofDays(30), 1, Duration.ZERO);
+			keys.start();
+			SigningKeyManager other = new SigningKeyManager(dir.resolve(algorithm + "-otro"), algorithm, Duration.ofDays(30), 1, Duration.ZERO);
+			other.start();
+			JwtDecoder decoder = OAuth2AuthorizationServerConfiguration.jwtDecoder(keys);
+
+			String token = sign(keys);
+			assertThat(SignedJWT.parse(token).getHeader().getAlgorithm().getName()).isEqualTo(algorithm);
+			assertThat(kid(token)).isEqualTo(keys.activeKey().getKeyID());
+			assertThat(decoder.decode(token).getSubject()).isEqualTo("user");
+
+			// Firma alterada o de una clave que no se publica: rechazados
+			String tampered = token.substring(0, token.lastIndexOf('.') + 1) + new StringBuilder(
+					token.substring(token.lastIndexOf('.') + 1)).reverse();
+			assertThatThrownBy(() -> decoder.decode(tampered)).isInstanceOf(JwtException.class);
+			assertThatThrownBy(() -> decoder.decode(sign(other))).isInstanceOf(JwtException.class);
+			keys.close();
+			other.close();
+		}
+	}
+
+	/**
+	 * Firmas y verificaciones por segundo con RS256 y ES256 (Ed25519 no está soportado).
+	 * No corre con el resto: mvn test -Dtest=SigningKeyManagerTests -Dbenchmark=true
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void signAndVerifyThroughputPerAlgorithm() {
+		for (String algorithm : List.of("RS256", "ES256")) {
+			SigningKeyManager keys = new SigningKeyManager(dir.resolve(algorithm), algorithm, Duration.ofDays(30), 1, Duration.ZERO);
+			keys.start();
+			JwtDecoder decoder = OAuth2AuthorizationServerConfiguration.jwtDecoder(keys);
+			int iterations = 2_000;
+			String token = null;
+			for (int i = 0; i < iterations; i++) {
+				decoder.decode(sign(keys));
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				token = sign(keys);
+			}
+			double signPerSecond = iterations / ((System.nanoTime() - start) / 1e9);
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				decoder.decode(token);
+			}
+			double verifyPerSecond = iterations / ((System.nanoTime() - start) / 1e9);
+			System.out.printf("%s: %.0f firmas/s, %.0f verificaciones/s%n", algorithm, signPerSecond, verifyPerSecond);
+			keys.close();
+		}
+	}
+
+	private static String sign(SigningKeyManager keys) {
+		JwsHeader.Builder header = JwsHeader.with(() -> "RS256");
+		keys.customize(header);
+		JwtClaimsSet claims = JwtClaimsSet.builder()
+				.subject("user")
+				.issuedAt(Instant.now())
+				.expiresAt(Instant.now().plusSeconds(300))
+				.build();
+		return new NimbusJwtEncoder(keys).encode(JwtEncoderParameters.from(header.build(), claims)).getTokenValue();
+	}
+
+	private static String kid(String token) {
+		try {
+			return SignedJWT.parse(token).getHeader().getKeyID();
+		} catch (ParseException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final class MutableClock extends Clock {
+		private Instant now;
+
+		MutableClock(Instant now) {
+			this.now = now;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
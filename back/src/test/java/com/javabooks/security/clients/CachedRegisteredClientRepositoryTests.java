@@ -0,0 +1,120 @@
+package com.javabooks.security.clients;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.settings.ClientSettings;
+import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachedRegisteredClientRepositoryTests {
+
+	private final Map<String, RegisteredClientEntity> table = new LinkedHashMap<>();
+	private final AtomicInteger reads = new AtomicInteger();
+
+	@Test
+	void seedsTheTableAndServesLookupsFromMemory() {
+		CachedRegisteredClientRepository clients = new CachedRegisteredClientRepository(repository(), List.of(webClient("{noop}web-secret")));
+		clients.init();
+
+		RegisteredClient client = clients.findByClientId("web-client");
+		assertThat(table).containsKey("web");
+		assertThat(client.getClientSecret()).isEqualTo("{noop}web-secret");
+		assertThat(client.getRedirectUris()).containsExactlyInAnyOrder("http://localhost:3000/callback", "http://localhost:8081/callback");
+		assertThat(client.getScopes()).containsExactlyInAnyOrder("libros.read", "libros.write");
+		assertThat(client.getAuthorizationGrantTypes())
+				.containsExactlyInAnyOrder(AuthorizationGrantType.AUTHORIZATION_CODE, AuthorizationGrantType.REFRESH_TOKEN);
+		assertThat(client.getClientAuthenticationMethods()).containsExactly(ClientAuthenticationMethod.CLIENT_SECRET_BASIC);
+		assertThat(client.getClientSettings().isRequireProofKey()).isTrue();
+		assertThat(client.getTokenSettings().getRefreshTokenTimeToLive()).isEqualTo(Duration.ofDays(7));
+		assertThat(client.getTokenSettings().isReuseRefreshTokens()).isFalse();
+
+		for (int i = 0; i < 100; i++) {
+			clients.findByClientId("web-client");
+			clients.findById("web");
+		}
+		assertThat(reads).hasValue(1);
+
+		// Una segunda instancia lee lo guardado y no vuelve a sembrar
+		CachedRegisteredClientRepository restarted = new CachedRegisteredClientRepository(repository(), List.of());
+		restarted.init();
+		assertThat(restarted.findById("web").getClientId()).isEqualTo("web-client");
+	}
+
+	@Test
+	void notifiesSecretChangesWithThePreviousVersion() {
+		CachedRegisteredClientRepository clients = new CachedRegisteredClientRepository(repository(), List.of(webClient("{noop}v1")));
+		clients.init();
+		List<String> previousSecrets = new ArrayList<>();
+		clients.addSecretListener(previous -> previousSecrets.add(previous.getClientSecret()));
+
+		clients.save(RegisteredClient.from(clients.findById("web")).clientName("Web").build());
+		assertThat(previousSecrets).isEmpty();
+
+		clients.save(RegisteredClient.from(clients.findById("web")).clientSecret("{noop}v2").build());
+		assertThat(previousSecrets).containsExactly("{noop}v1");
+		assertThat(clients.findByClientId("web-client").getClientSecret()).isEqualTo("{noop}v2");
+		assertThat(table.get("web").getClientSecret()).isEqualTo("{noop}v2");
+
+		RegisteredClient duplicate = RegisteredClient.from(webClient("{noop}x")).id("otro").build();
+		assertThatThrownBy(() -> clients.save(duplicate)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static RegisteredClient webClient(String secret) {
+		return RegisteredClient.withId("web")
+				.clientId("web-client")
+				.clientSecret(secret)
+				.clientAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
+				.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+				.authorizationGrantType(AuthorizationGrantType.REFRESH_TOKEN)
+				.redirectUri("http://localhost:3000/callback")
+				.redirectUri("http://localhost:8081/callback")
+				.scope("libros.read")
+				.scope("libros.write")
+				.clientSettings(ClientSettings.builder().requireProofKey(true).requireAuthorizationConsent(true).build())
+				.tokenSettings(TokenSettings.builder()
+						.accessTokenTimeToLive(Duration.ofHours(24))
+						.refreshTokenTimeToLive(Duration.ofDays(7))
+						.reuseRefreshTokens(false)
+						.build())
+				.build();
+	}
+
+	private RegisteredClientEntityRepository repository() {
+		return new RegisteredClientEntityRepository() {
+			@Override
+			public List<RegisteredClientEntity> findAll() {
+				reads.incrementAndGet();
+				return new ArrayList<>(table.values());
+			}
+
+			@Override
+			public <S extends RegisteredClientEntity> S save(S entity) {
+				table.put(entity.getId(), entity);
+				return entity;
+			}
+
+			@Override
+			public <S extends RegisteredClientEntity> List<S> saveAll(Iterable<S> entities) {
+				List<S> saved = new ArrayList<>();
+				entities.forEach(entity -> saved.add(save(entity)));
+				return saved;
+			}
+
+			@Override
+			public long count() {
+				return table.size();
+			}
+		};
+	}
+}
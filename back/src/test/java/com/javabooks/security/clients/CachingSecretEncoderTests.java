@@ -0,0 +1,132 @@
+package com.javabooks.security.clients;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.server.authorization.InMemoryOAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.authentication.ClientSecretAuthenticationProvider;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2ClientAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.client.InMemoryRegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingSecretEncoderTests {
+
+	@Test
+	void remembersVerifiedSecretsPerStoredHashUntilTheyExpire() {
+		MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+		AtomicInteger verifications = new AtomicInteger();
+		PasswordEncoder plain = new PasswordEncoder() {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				return "{plain}" + rawPassword;
+			}
+
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				verifications.incrementAndGet();
+				return encodedPassword.equals(encode(rawPassword));
+			}
+		};
+		CachingSecretEncoder encoder = new CachingSecretEncoder(plain, Duration.ofMinutes(5), 100, clock);
+
+		assertThat(encoder.matches("secret", "{plain}secret")).isTrue();
+		assertThat(encoder.matches("secret", "{plain}secret")).isTrue();
+		assertThat(verifications).hasValue(1);
+
+		// Los fallos no se recuerdan, y otro hash (otro cliente u otro secreto) es otra entrada
+		assertThat(encoder.matches("otro", "{plain}secret")).isFalse();
+		assertThat(encoder.matches("otro", "{plain}secret")).isFalse();
+		assertThat(encoder.matches("secret", "{plain}secreto-nuevo")).isFalse();
+		assertThat(verifications).hasValue(4);
+
+		encoder.invalidate("{plain}secret");
+		assertThat(encoder.matches("secret", "{plain}secret")).isTrue();
+		assertThat(verifications).hasValue(5);
+
+		clock.now = clock.now.plus(Duration.ofMinutes(6));
+		assertThat(encoder.matches("secret", "{plain}secret")).isTrue();
+		assertThat(verifications).hasValue(6);
+		assertThat(encoder.stats()).containsEntry("hits", 1L).containsEntry("misses", 6L);
+	}
+
+	@Test
+	void clientAuthenticationsRunBcryptOnlyOnce() {
+		BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(10);
+		AtomicInteger verifications = new AtomicInteger();
+		PasswordEncoder counting = new PasswordEncoder() {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				return bcrypt.encode(rawPassword);
+			}
+
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				verifications.incrementAndGet();
+				return bcrypt.matches(rawPassword, encodedPassword);
+			}
+		};
+		RegisteredClient client = RegisteredClient.withId("machine")
+				.clientId("machine-client")
+				.clientSecret(bcrypt.encode("machine-secret"))
+				.clientAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
+				.authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+				.build();
+		ClientSecretAuthenticationProvider provider = new ClientSecretAuthenticationProvider(
+				new InMemoryRegisteredClientRepository(client), new InMemoryOAuth2AuthorizationService());
+		provider.setPasswordEncoder(new CachingSecretEncoder(counting, Duration.ofMinutes(5), 1000));
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(authenticate(provider, "machine-secret").isAuthenticated()).isTrue();
+		}
+		assertThat(verifications).hasValue(1);
+
+		// Un secreto equivocado se comprueba siempre con BCrypt y se rechaza
+		assertThatThrownBy(() -> authenticate(provider, "otro")).isInstanceOf(OAuth2AuthenticationException.class);
+		assertThatThrownBy(() -> authenticate(provider, "otro")).isInstanceOf(OAuth2AuthenticationException.class);
+		assertThat(verifications).hasValue(3);
+	}
+
+	private static Authentication authenticate(ClientSecretAuthenticationProvider provider, String secret) {
+		OAuth2ClientAuthenticationToken token = new OAuth2ClientAuthenticationToken("machine-client",
+				ClientAuthenticationMethod.CLIENT_SECRET_BASIC, secret, Map.of("grant_type", "client_credentials"));
+		return provider.authenticate(token);
+	}
+
+	private static final class MutableClock extends Clock {
+		private Instant now;
+
+		MutableClock(Instant now) {
+			this.now = now;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.javabooks.security.exchange;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Códigos de autorización para las pruebas de canje, sin pasar por el navegador.
+ * Público solo porque lo usan también las pruebas de los controladores.
+ */
+public final class AuthorizationCodes {
+
+	public static final String REDIRECT_URI = "http://localhost:3000/callback";
+	// Par PKCE S256 del ejemplo de la RFC 7636
+	public static final String VERIFIER = "dBjftJeZ4CVP-mB92K27uhbUjU2HQ8pW3bTQ1IbRlq0";
+	public static final String CHALLENGE = "NuI7m6-vzUK4J9YZemNd7sCVzl4wkAA9n19udjHuZxs";
+
+	private AuthorizationCodes() {
+	}
+
+	public static String authorize(RegisteredClientRepository clients, OAuth2AuthorizationService authorizations) {
+		return authorize(clients, authorizations, UUID.randomUUID().toString());
+	}
+
+	/**
+	 * Autorización como la que deja /oauth2/authorize tras el login y el consentimiento.
+	 */
+	public static String authorize(RegisteredClientRepository clients, OAuth2AuthorizationService authorizations,
+								   String code) {
+		Instant now = Instant.now();
+		OAuth2AuthorizationRequest request = OAuth2AuthorizationRequest.authorizationCode()
+				.authorizationUri("http://localhost:9000/oauth2/authorize")
+				.clientId("web-client")
+				.redirectUri(REDIRECT_URI)
+				.scopes(Set.of("libros.read"))
+				.additionalParameters(Map.of("code_challenge", CHALLENGE, "code_challenge_method", "S256"))
+				.build();
+		authorizations.save(OAuth2Authorization.withRegisteredClient(clients.findByClientId("web-client"))
+				.principalName("user")
+				.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+				.authorizedScopes(Set.of("libros.read"))
+				// Holgura para las pruebas de carga, que preparan los códigos antes de canjearlos
+				.token(new OAuth2AuthorizationCode(code, now, now.plusSeconds(600)))
+				.attribute(Principal.class.getName(), UsernamePasswordAuthenticationToken.authenticated(
+						"user", null, AuthorityUtils.createAuthorityList("ROLE_USER")))
+				.attribute(OAuth2AuthorizationRequest.class.getName(), request)
+				.build());
+		return code;
+	}
+}
@@ -0,0 +1,162 @@
+package com.javabooks.security.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CoalescingTokenExchangeTests {
+
+	@Test
+	void concurrentRefreshesShareOneExchange() throws Exception {
+		MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		CoalescingTokenExchange exchange = new CoalescingTokenExchange(new StubExchange() {
+			@Override
+			public Map<String, Object> refresh(String refreshToken) {
+				int call = calls.incrementAndGet();
+				await(release);
+				return Map.of("access_token", "access-" + call, "refresh_token", "refresh-" + call);
+			}
+		}, Duration.ofSeconds(10), 100, clock);
+
+		ExecutorService tabs = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Map<String, Object>>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(tabs.submit(() -> exchange.refresh("refresh-0")));
+			}
+			// Todas las pestañas esperan al mismo canje
+			while ((long) exchange.stats().get("coalesced") < 7) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			for (Future<Map<String, Object>> result : results) {
+				assertThat(result.get(5, TimeUnit.SECONDS)).containsEntry("access_token", "access-1");
+			}
+		} finally {
+			tabs.shutdownNow();
+		}
+		assertThat(calls).hasValue(1);
+
+		// Justo después sigue sirviéndose el mismo resultado; pasado el ttl, canje nuevo
+		assertThat(exchange.refresh("refresh-0")).containsEntry("access_token", "access-1");
+		clock.now = clock.now.plusSeconds(11);
+		assertThat(exchange.refresh("refresh-0")).containsEntry("access_token", "access-2");
+		assertThat(exchange.stats()).containsEntry("exchanges", 2L).containsEntry("coalesced", 8L);
+	}
+
+	@Test
+	void failuresAreNotCached() {
+		AtomicInteger calls = new AtomicInteger();
+		CoalescingTokenExchange exchange = new CoalescingTokenExchange(new StubExchange() {
+			@Override
+			public Map<String, Object> refresh(String refreshToken) {
+				if (calls.incrementAndGet() == 1) {
+					throw new OAuth2AuthenticationException("server_error");
+				}
+				return Map.of("access_token", "access");
+			}
+		}, Duration.ofSeconds(10), 1);
+
+		assertThatThrownBy(() -> exchange.refresh("refresh")).isInstanceOf(OAuth2AuthenticationException.class);
+		assertThat(exchange.refresh("refresh")).containsEntry("access_token", "access");
+
+		// Acotada: con maxEntries 1 los resultados viejos se sueltan
+		exchange.refresh("otro");
+		exchange.refresh("y-otro");
+		assertThat((int) exchange.stats().get("size")).isLessThanOrEqualTo(2);
+		assertThat(calls).hasValue(4);
+	}
+
+	@Test
+	void anErrorReleasesTheWaitersAndIsNotCached() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		CoalescingTokenExchange exchange = new CoalescingTokenExchange(new StubExchange() {
+			@Override
+			public Map<String, Object> refresh(String refreshToken) {
+				if (calls.incrementAndGet() == 1) {
+					await(release);
+					throw new StackOverflowError();
+				}
+				return Map.of("access_token", "access");
+			}
+		}, Duration.ofSeconds(10), 100);
+
+		ExecutorService tabs = Executors.newFixedThreadPool(2);
+		try {
+			Future<Map<String, Object>> first = tabs.submit(() -> exchange.refresh("refresh"));
+			while (calls.get() == 0) {
+				Thread.sleep(1);
+			}
+			Future<Map<String, Object>> waiting = tabs.submit(() -> exchange.refresh("refresh"));
+			while ((long) exchange.stats().get("coalesced") < 1) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+			assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS)).rootCause().isInstanceOf(StackOverflowError.class);
+		} finally {
+			tabs.shutdownNow();
+		}
+		assertThat(exchange.refresh("refresh")).containsEntry("access_token", "access");
+		assertThat(calls).hasValue(2);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private abstract static class StubExchange implements TokenExchange {
+		@Override
+		public Map<String, Object> exchangeCode(String code, String redirectUri, String codeVerifier) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static final class MutableClock extends Clock {
+		private Instant now;
+
+		MutableClock(Instant now) {
+			this.now = now;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.javabooks.security.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.server.authorization.InMemoryOAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.client.InMemoryRegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.settings.AuthorizationServerSettings;
+import org.springframework.security.oauth2.server.authorization.settings.ClientSettings;
+import org.springframework.security.oauth2.server.authorization.settings.OAuth2TokenFormat;
+import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
+import org.springframework.security.oauth2.server.authorization.token.DelegatingOAuth2TokenGenerator;
+import org.springframework.security.oauth2.server.authorization.token.OAuth2AccessTokenGenerator;
+import org.springframework.security.oauth2.server.authorization.token.OAuth2RefreshTokenGenerator;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.javabooks.security.exchange.AuthorizationCodes.REDIRECT_URI;
+import static com.javabooks.security.exchange.AuthorizationCodes.VERIFIER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalTokenExchangeTests {
+
+	private final AtomicInteger secretChecks = new AtomicInteger();
+	private final InMemoryRegisteredClientRepository clients = new InMemoryRegisteredClientRepository(client("web-secret"));
+	private final InMemoryOAuth2AuthorizationService authorizations = new InMemoryOAuth2AuthorizationService();
+	private final LocalTokenExchange exchange = new LocalTokenExchange(clients, authorizations,
+			new DelegatingOAuth2TokenGenerator(new OAuth2AccessTokenGenerator(), new OAuth2RefreshTokenGenerator()),
+			AuthorizationServerSettings.builder().issuer("http://localhost:9000").build(),
+			countingEncoder(), "web-client", "web-secret");
+
+	@Test
+	void exchangesCodeAndRefreshesWithoutTheTokenEndpoint() {
+		Map<String, Object> tokens = exchange.exchangeCode(authorize("code-1"), REDIRECT_URI, VERIFIER);
+
+		assertThat(tokens).containsKeys("access_token", "refresh_token", "expires_in").containsEntry("token_type", "Bearer");
+		assertThat(tokens.get("scope")).isEqualTo("libros.read");
+		Map<String, Object> refreshed = exchange.refresh((String) tokens.get("refresh_token"));
+		assertThat(refreshed.get("access_token")).isNotEqualTo(tokens.get("access_token"));
+
+		// El código es de un solo uso, igual que en /oauth2/token: repetirlo invalida los tokens emitidos
+		assertThatThrownBy(() -> exchange.exchangeCode("code-1", REDIRECT_URI, VERIFIER))
+				.isInstanceOf(OAuth2AuthenticationException.class);
+		assertThatThrownBy(() -> exchange.refresh((String) refreshed.get("refresh_token")))
+				.isInstanceOf(OAuth2AuthenticationException.class);
+		// El secreto del cliente se comprobó una sola vez para los tres canjes
+		assertThat(secretChecks).hasValue(1);
+	}
+
+	@Test
+	void checksPkceAndTheSecretOfEachClientVersion() {
+		String code = authorize("code-2");
+		assertThatThrownBy(() -> exchange.exchangeCode(code, REDIRECT_URI, "otro-verifier"))
+				.isInstanceOfSatisfying(OAuth2AuthenticationException.class,
+						e -> assertThat(e.getError().getErrorCode()).isEqualTo("invalid_grant"));
+		assertThatThrownBy(() -> exchange.exchangeCode(code, REDIRECT_URI, null))
+				.isInstanceOf(OAuth2AuthenticationException.class);
+		// Un verifier erróneo no consume el código
+		assertThat(exchange.exchangeCode(code, REDIRECT_URI, VERIFIER)).containsKey("access_token");
+
+		// Secreto rotado en el repositorio: el configurado ya no vale
+		clients.save(RegisteredClient.from(clients.findByClientId("web-client")).clientSecret("otro-secreto").build());
+		assertThatThrownBy(() -> exchange.exchangeCode(authorize("code-3"), REDIRECT_URI, VERIFIER))
+				.isInstanceOfSatisfying(OAuth2AuthenticationException.class,
+						e -> assertThat(e.getError().getErrorCode()).isEqualTo("invalid_client"));
+		assertThat(secretChecks).hasValue(2);
+	}
+
+	private String authorize(String code) {
+		return AuthorizationCodes.authorize(clients, authorizations, code);
+	}
+
+	private static RegisteredClient client(String secret) {
+		return RegisteredClient.withId("web")
+				.clientId("web-client")
+				.clientSecret(secret)
+				.clientAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
+				.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+				.authorizationGrantType(AuthorizationGrantType.REFRESH_TOKEN)
+				.redirectUri(REDIRECT_URI)
+				.scope("libros.read")
+				.clientSettings(ClientSettings.builder().requireProofKey(true).build())
+				// Tokens opacos: la prueba no necesita claves de firma
+				.tokenSettings(TokenSettings.builder().accessTokenFormat(OAuth2TokenFormat.REFERENCE).build())
+				.build();
+	}
+
+	private PasswordEncoder countingEncoder() {
+		return new PasswordEncoder() {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				return rawPassword.toString();
+			}
+
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				secretChecks.incrementAndGet();
+				return rawPassword.toString().equals(encodedPassword);
+			}
+		};
+	}
+}
@@ -0,0 +1,268 @@
+package com.javabooks.security.policy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PolicyEngineTests {
+
+	@Test
+	void compilesWildcardsAndDefaultGrantsPerUser() {
+		PolicyEngine engine = new PolicyEngine(null, Duration.ofHours(24), Clock.systemUTC());
+		engine.load(List.of(
+				new EntitlementEntity("*", EntitlementEntity.Tipo.CATEGORIA, "PROGRAMMING"),
+				new EntitlementEntity("*", EntitlementEntity.Tipo.AUTOR, "Robert C. Martin"),
+				new EntitlementEntity("ana", EntitlementEntity.Tipo.CATEGORIA, "*"),
+				new EntitlementEntity("ana", EntitlementEntity.Tipo.AUTOR, "Martin*"),
+				new EntitlementEntity("ana", EntitlementEntity.Tipo.AUTOR, "Martin Fowler"),
+				new EntitlementEntity("ana", EntitlementEntity.Tipo.AUTOR, "Eric Evans")));
+
+		Policy ana = engine.policyFor("ana");
+		assertThat(ana.allows("DATABASES", "Martin Kleppmann")).isTrue();
+		assertThat(ana.allows("ARCHITECTURE", "Eric Evans")).isTrue();
+		assertThat(ana.allows("PROGRAMMING", "Robert C. Martin")).isTrue();
+		assertThat(ana.allows("PROGRAMMING", "Joshua Bloch")).isFalse();
+		assertThat(ana.autores().isExact()).isFalse();
+		assertThat(ana.autores().patterns()).containsExactly("Eric Evans", "Martin*", "Robert C. Martin");
+
+		// Usuario sin reglas propias: solo las de *
+		assertThat(engine.allows("nadie", "PROGRAMMING", "Robert C. Martin")).isTrue();
+		assertThat(engine.allows("nadie", "DATABASES", "Robert C. Martin")).isFalse();
+		assertThat(engine.policyFor("nadie").categorias().isExact()).isTrue();
+
+		// La recarga sustituye las reglas de golpe
+		engine.load(List.of(new EntitlementEntity("ana", EntitlementEntity.Tipo.CATEGORIA, "DATABASES")));
+		assertThat(engine.allows("ana", "DATABASES", "Martin Kleppmann")).isFalse();
+		assertThat(engine.allows("nadie", "PROGRAMMING", "Robert C. Martin")).isFalse();
+	}
+
+	@Test
+	void retiredPolicyIdsStopResolvingAfterTheHistoryWindow() {
+		MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+		PolicyEngine engine = new PolicyEngine(null, Duration.ofHours(24), clock);
+		engine.load(List.of(new EntitlementEntity("ana", EntitlementEntity.Tipo.CATEGORIA, "*")));
+		String broad = engine.policyFor("ana").id();
+
+		// La recarga reduce los permisos de ana: su id anterior ya no lo usa nadie
+		engine.load(List.of(new EntitlementEntity("ana", EntitlementEntity.Tipo.CATEGORIA, "DATABASES")));
+		String narrow = engine.policyFor("ana").id();
+		assertThat(narrow).isNotEqualTo(broad);
+
+		// Los tokens emitidos antes siguen valiendo mientras pueden estar vigentes
+		clock.now = clock.now.plus(Duration.ofHours(23));
+		assertThat(engine.policyById(broad)).isPresent();
+
+		clock.now = clock.now.plus(Duration.ofHours(1));
+		assertThat(engine.policyById(broad)).isEmpty();
+		assertThat(engine.policyById(narrow)).isPresent();
+
+		// Un id retirado que vuelve a usarse recupera su vigencia
+		engine.load(List.of(new EntitlementEntity("ana", EntitlementEntity.Tipo.CATEGORIA, "PROGRAMMING")));
+		String other = engine.policyFor("ana").id();
+		engine.load(List.of(new EntitlementEntity("ana", EntitlementEntity.Tipo.CATEGORIA, "DATABASES")));
+		clock.now = clock.now.plus(Duration.ofDays(2));
+		assertThat(engine.policyById(narrow)).isPresent();
+		assertThat(engine.policyById(other)).isEmpty();
+	}
+
+	@Test
+	void prefixMatcherChecksOnlyTheClosestPrefix() {
+		EntitlementMatcher matcher = EntitlementMatcher.compile(List.of("Ma*", "Mar*", "Rob*", "Zed", "Al*"));
+
+		assertThat(matcher.patterns()).containsExactly("Al*", "Ma*", "Rob*", "Zed");
+		assertThat(matcher.matches("Martin Fowler")).isTrue();
+		assertThat(matcher.matches("Ma")).isTrue();
+		assertThat(matcher.matches("Mb")).isFalse();
+		assertThat(matcher.matches("Robert C. Martin")).isTrue();
+		assertThat(matcher.matches("Ro")).isFalse();
+		assertThat(matcher.matches("Alan Kay")).isTrue();
+		assertThat(matcher.matches("Zed")).isTrue();
+		assertThat(matcher.matches(null)).isFalse();
+	}
+
+	@Test
+	void decisionsOverALargeRuleSetMatchTheRules() {
+		int users = 20_000;
+		int authors = 2_000;
+		String[] categorias = {"PROGRAMMING", "FRAMEWORKS", "ARCHITECTURE", "DATABASES", "DEVOPS", "SECURITY"};
+		String[] authorNames = new String[authors];
+		for (int a = 0; a < authors; a++) {
+			authorNames[a] = String.format("Autor %04d", a);
+		}
+		SplittableRandom random = new SplittableRandom(42);
+
+		// Reglas por usuario y, a la vez, lo que deberían permitir
+		List<EntitlementEntity> rules = new ArrayList<>();
+		rules.add(new EntitlementEntity("*", EntitlementEntity.Tipo.CATEGORIA, "PROGRAMMING"));
+		rules.add(new EntitlementEntity("*", EntitlementEntity.Tipo.AUTOR, authorNames[0]));
+		Map<String, Set<String>> allowedCategorias = new HashMap<>();
+		Map<String, Set<String>> allowedAutores = new HashMap<>();
+		Map<String, String> prefixes = new HashMap<>();
+		for (int u = 0; u < users; u++) {
+			String user = "user" + u;
+			Set<String> ownCategorias = new HashSet<>(Set.of("PROGRAMMING"));
+			Set<String> ownAutores = new HashSet<>(Set.of(authorNames[0]));
+			String categoria = categorias[random.nextInt(categorias.length)];
+			rules.add(new EntitlementEntity(user, EntitlementEntity.Tipo.CATEGORIA, categoria));
+			ownCategorias.add(categoria);
+			for (int a = 0; a < 4; a++) {
+				String autor = authorNames[random.nextInt(authors)];
+				rules.add(new EntitlementEntity(user, EntitlementEntity.Tipo.AUTOR, autor));
+				ownAutores.add(autor);
+			}
+			// Un prefijo a uno de cada diez: cubre unos 10 autores
+			if (u % 10 == 0) {
+				String prefix = "Autor " + String.format("%03d", random.nextInt(200));
+				rules.add(new EntitlementEntity(user, EntitlementEntity.Tipo.AUTOR, prefix + "*"));
+				prefixes.put(user, prefix);
+			}
+			allowedCategorias.put(user, ownCategorias);
+			allowedAutores.put(user, ownAutores);
+		}
+
+		for (String twin : List.of("ana", "eva")) {
+			rules.add(new EntitlementEntity(twin, EntitlementEntity.Tipo.CATEGORIA, "DATABASES"));
+			rules.add(new EntitlementEntity(twin, EntitlementEntity.Tipo.AUTOR, "Autor 01*"));
+		}
+
+		PolicyEngine engine = new PolicyEngine(null, Duration.ofHours(24), Clock.systemUTC());
+		engine.load(rules);
+		assertThat(engine.users()).isEqualTo(users + 2);
+
+		long granted = 0;
+		for (int i = 0; i < 200_000; i++) {
+			String user = "user" + random.nextInt(users + 100);
+			String categoria = categorias[random.nextInt(categorias.length)];
+			String autor = authorNames[random.nextInt(authors)];
+			Set<String> ownCategorias = allowedCategorias.getOrDefault(user, Set.of("PROGRAMMING"));
+			Set<String> ownAutores = allowedAutores.getOrDefault(user, Set.of(authorNames[0]));
+			String prefix = prefixes.get(user);
+			boolean expected = ownCategorias.contains(categoria)
+					&& (ownAutores.contains(autor) || prefix != null && autor.startsWith(prefix));
+			assertThat(engine.allows(user, categoria, autor)).as("%s %s %s", user, categoria, autor).isEqualTo(expected);
+			if (expected) {
+				granted++;
+			}
+		}
+		assertThat(granted).isPositive();
+
+		// Mismas reglas, misma política compilada
+		assertThat(engine.policyFor("ana")).isSameAs(engine.policyFor("eva"));
+		assertThat(engine.policyById(engine.policyFor("ana").id())).containsSame(engine.policyFor("eva"));
+	}
+
+	/**
+	 * Rendimiento de las decisiones con 100k usuarios y 10k autores. No corre con el resto:
+	 * mvn test -Dtest=PolicyEngineTests -Dbenchmark=true
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void decisionThroughputWith100kUsersAnd10kAuthors() throws InterruptedException {
+		int users = 100_000;
+		int authors = 10_000;
+		String[] categorias = {"PROGRAMMING", "FRAMEWORKS", "ARCHITECTURE", "DATABASES", "DEVOPS", "SECURITY"};
+		String[] userNames = new String[users];
+		String[] authorNames = new String[authors];
+		for (int u = 0; u < users; u++) {
+			userNames[u] = "user" + u;
+		}
+		for (int a = 0; a < authors; a++) {
+			authorNames[a] = String.format("Autor %05d", a);
+		}
+		SplittableRandom random = new SplittableRandom(42);
+
+		List<EntitlementEntity> rules = new ArrayList<>();
+		rules.add(new EntitlementEntity("*", EntitlementEntity.Tipo.CATEGORIA, "PROGRAMMING"));
+		for (int u = 0; u < users; u++) {
+			String user = userNames[u];
+			rules.add(new EntitlementEntity(user, EntitlementEntity.Tipo.CATEGORIA, categorias[random.nextInt(categorias.length)]));
+			for (int a = 0; a < 8; a++) {
+				rules.add(new EntitlementEntity(user, EntitlementEntity.Tipo.AUTOR, authorNames[random.nextInt(authors)]));
+			}
+			// Un prefijo por usuario: cubre unos 100 autores
+			rules.add(new EntitlementEntity(user, EntitlementEntity.Tipo.AUTOR, "Autor " + String.format("%03d", random.nextInt(100)) + "*"));
+		}
+
+		PolicyEngine engine = new PolicyEngine(null, Duration.ofHours(24), Clock.systemUTC());
+		long start = System.nanoTime();
+		engine.load(rules);
+		long compileMs = (System.nanoTime() - start) / 1_000_000;
+		assertThat(engine.users()).isEqualTo(users);
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		int perThread = 10_000_000;
+		long[] granted = new long[threads];
+		// Calentamiento para que el JIT compile el camino de decisión
+		decide(engine, new SplittableRandom(1), 500_000, userNames, authorNames, categorias);
+
+		List<Thread> workers = new ArrayList<>();
+		start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			int index = t;
+			Thread worker = new Thread(() -> granted[index] = decide(engine, new SplittableRandom(index), perThread,
+					userNames, authorNames, categorias));
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long decisions = (long) threads * perThread;
+
+		System.out.printf("PolicyEngine: %d reglas compiladas en %d ms; %d decisiones en %.2f s con %d hilos"
+						+ " = %.1f M decisiones/s (%.1f M/s por hilo)%n",
+				rules.size(), compileMs, decisions, seconds, threads, decisions / seconds / 1e6,
+				decisions / seconds / 1e6 / threads);
+		assertThat(granted).doesNotContain(0L);
+	}
+
+	private static long decide(PolicyEngine engine, SplittableRandom random, int count, String[] users,
+							   String[] authors, String[] categorias) {
+		long granted = 0;
+		for (int i = 0; i < count; i++) {
+			if (engine.allows(users[random.nextInt(users.length)], categorias[random.nextInt(categorias.length)],
+					authors[random.nextInt(authors.length)])) {
+				granted++;
+			}
+		}
+		return granted;
+	}
+
+	private static final class MutableClock extends Clock {
+		private Instant now;
+
+		MutableClock(Instant now) {
+			this.now = now;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.javabooks.security.store;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsent;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardedOAuth2AuthorizationServiceTests {
+
+	private static final RegisteredClient CLIENT = RegisteredClient.withId("client-id")
+			.clientId("web-client")
+			.clientAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
+			.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+			.redirectUri("http://localhost:8081/callback")
+			.scope("libros.read")
+			.build();
+
+	private final MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+
+	@Test
+	void findsAuthorizationsByEveryTokenThroughTheIndexes() {
+		ShardedOAuth2AuthorizationService service =
+				new ShardedOAuth2AuthorizationService(4, 64, Duration.ofMinutes(10), Duration.ZERO, clock);
+
+		OAuth2Authorization pending = OAuth2Authorization.withRegisteredClient(CLIENT).id("a1").principalName("user")
+				.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+				.attribute(OAuth2ParameterNames.STATE, "state-1")
+				.build();
+		service.save(pending);
+		assertThat(service.findByToken("state-1", new OAuth2TokenType(OAuth2ParameterNames.STATE))).isEqualTo(pending);
+
+		Instant now = clock.instant();
+		OAuth2Authorization issued = OAuth2Authorization.from(pending)
+				.attributes(attributes -> attributes.remove(OAuth2ParameterNames.STATE))
+				.token(new OAuth2AuthorizationCode("code-1", now, now.plusSeconds(300)))
+				.accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-1", now, now.plusSeconds(3600)))
+				.refreshToken(new OAuth2RefreshToken("refresh-1", now, now.plus(Duration.ofDays(7))))
+				.build();
+		service.save(issued);
+
+		assertThat(service.findByToken("state-1", null)).isNull();
+		assertThat(service.findByToken("code-1", new OAuth2TokenType(OAuth2ParameterNames.CODE))).isEqualTo(issued);
+		assertThat(service.findByToken("access-1", OAuth2TokenType.ACCESS_TOKEN)).isEqualTo(issued);
+		assertThat(service.findByToken("refresh-1", null)).isEqualTo(issued);
+		assertThat(service.findByToken("refresh-1", OAuth2TokenType.ACCESS_TOKEN)).isNull();
+
+		// El refresh rota: el valor anterior deja de encontrarse
+		OAuth2Authorization refreshed = OAuth2Authorization.from(issued)
+				.refreshToken(new OAuth2RefreshToken("refresh-2", now, now.plus(Duration.ofDays(7))))
+				.build();
+		service.save(refreshed);
+		assertThat(service.findByToken("refresh-1", OAuth2TokenType.REFRESH_TOKEN)).isNull();
+		assertThat(service.findByToken("refresh-2", OAuth2TokenType.REFRESH_TOKEN)).isEqualTo(refreshed);
+
+		// Caduca con su último token y el barrido la quita junto con sus índices
+		clock.now = now.plus(Duration.ofDays(8));
+		assertThat(service.findById("a1")).isNull();
+		assertThat(service.sweep()).isEqualTo(1);
+		assertThat(service.size()).isZero();
+		service.close();
+	}
+
+	@Test
+	void neverHoldsMoreThanMaxEntries() {
+		ShardedOAuth2AuthorizationService service =
+				new ShardedOAuth2AuthorizationService(4, 16, Duration.ofMinutes(10), Duration.ZERO, clock);
+		Instant now = clock.instant();
+		for (int i = 0; i < 1_000; i++) {
+			service.save(OAuth2Authorization.withRegisteredClient(CLIENT).id("a" + i).principalName("user")
+					.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+					.accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-" + i, now,
+							now.plusSeconds(3600)))
+					.build());
+		}
+
+		assertThat(service.size()).isLessThanOrEqualTo(16);
+		assertThat(service.findByToken("access-999", OAuth2TokenType.ACCESS_TOKEN)).isNotNull();
+		assertThat(service.findByToken("access-0", OAuth2TokenType.ACCESS_TOKEN)).isNull();
+		service.close();
+	}
+
+	@Test
+	void consentsExpireAfterTheirTtl() {
+		ShardedOAuth2AuthorizationConsentService consents =
+				new ShardedOAuth2AuthorizationConsentService(4, 16, Duration.ofDays(30), Duration.ZERO, clock);
+		consents.save(OAuth2AuthorizationConsent.withId("client-id", "user").scope("libros.read").build());
+
+		assertThat(consents.findById("client-id", "user").getScopes()).containsExactly("libros.read");
+		clock.now = clock.now.plus(Duration.ofDays(31));
+		assertThat(consents.findById("client-id", "user")).isNull();
+		assertThat(consents.sweep()).isEqualTo(1);
+		consents.close();
+	}
+
+	private static final class MutableClock extends Clock {
+		private Instant now;
+
+		MutableClock(Instant now) {
+			this.now = now;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
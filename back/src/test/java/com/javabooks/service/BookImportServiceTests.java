@@ -0,0 +1,110 @@
+package com.javabooks.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javabooks.model.ImportResult;
+import com.javabooks.repository.BookRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BookImportServiceTests {
+
+	private final BookRepository repository = new BookRepository();
+	private final BookImportService importService = importService(repository);
+
+	private final JwtAuthenticationToken admin = new JwtAuthenticationToken(
+			Jwt.withTokenValue("token").header("alg", "none").subject("admin")
+					.claim("roles", List.of("ADMIN"))
+					.claim("categorias", List.of("PROGRAMMING"))
+					.claim("autores", List.of("Martin Fowler", "Kent Beck"))
+					.build(),
+			List.of(new SimpleGrantedAuthority("SCOPE_libros.read"), new SimpleGrantedAuthority("SCOPE_libros.write")));
+
+	@Test
+	void importsNdjsonAndReportsRejectedRows() throws Exception {
+		String body = """
+				{"titulo": "Refactoring", "autor": "Martin Fowler", "cantidadPaginas": 448, "categoria": "PROGRAMMING", "contenido": "Mejorar el diseño"}
+
+				{"titulo": "TDD", "autor": "Kent Beck", "categoria": "PROGRAMMING"}
+				{"titulo": "Sin acceso", "autor": "Eric Evans", "categoria": "ARCHITECTURE"}
+				{"titulo": 
+				""";
+
+		ImportResult result = importService.importBooks(stream(body), BookImportService.Format.NDJSON, admin);
+
+		assertThat(result.getImportados()).isEqualTo(2);
+		assertThat(result.getRechazados()).isEqualTo(2);
+		assertThat(result.getErrores()).extracting(ImportResult.RowError::getLinea).containsExactly(4L, 5L);
+		assertThat(repository.findByTitulo("refactoring")).isPresent();
+		assertThat(repository.search("diseno", 10, book -> true)).hasSize(1);
+	}
+
+	@Test
+	void importsCsvWithQuotedMultilineFields() throws Exception {
+		String body = "titulo,autor,cantidadPaginas,categoria,contenido\n"
+				+ "Refactoring,Martin Fowler,448,PROGRAMMING,\"Primera línea\nsegunda, con \"\"comillas\"\"\"\n"
+				+ "TDD,Kent Beck,abc,PROGRAMMING,\n";
+
+		ImportResult result = importService.importBooks(stream(body), BookImportService.Format.CSV, admin);
+
+		assertThat(result.getImportados()).isEqualTo(1);
+		assertThat(result.getErrores()).extracting(ImportResult.RowError::getLinea).containsExactly(4L);
+		assertThat(repository.findByTitulo("Refactoring").orElseThrow().getContenido())
+				.isEqualTo("Primera línea\nsegunda, con \"comillas\"");
+	}
+
+	@Test
+	void rejectsNdjsonRowsThatAreNotObjects() throws Exception {
+		String body = """
+				null
+				42
+				["Refactoring"]
+				{"titulo": "TDD", "autor": "Kent Beck", "categoria": "PROGRAMMING"}
+				""";
+
+		ImportResult result = importService.importBooks(stream(body), BookImportService.Format.NDJSON, admin);
+
+		assertThat(result.getImportados()).isEqualTo(1);
+		assertThat(result.getErrores()).extracting(ImportResult.RowError::getLinea).containsExactly(1L, 2L, 3L);
+		assertThat(result.getErrores()).extracting(ImportResult.RowError::getMensaje)
+				.containsOnly("La fila no es un objeto JSON");
+	}
+
+	@Test
+	void rejectsOnlyTheLineWithAStrayQuote() throws Exception {
+		StringBuilder body = new StringBuilder("titulo,autor,cantidadPaginas,categoria,contenido\n")
+				.append("TDD,Kent Beck,240,PROGRAMMING,\"sin cerrar\n");
+		for (int i = 0; i < 20; i++) {
+			body.append("Libro ").append(i).append(",Martin Fowler,100,PROGRAMMING,contenido\n");
+		}
+		body.append("Enorme,Kent Beck,3000000000,PROGRAMMING,\n");
+
+		ImportResult result = importService.importBooks(stream(body.toString()), BookImportService.Format.CSV, admin);
+
+		assertThat(result.getImportados()).isEqualTo(20);
+		assertThat(result.getErrores()).extracting(ImportResult.RowError::getLinea).containsExactly(2L, 23L);
+		assertThat(result.getErrores().get(0).getMensaje()).contains("comillas sin cerrar");
+		assertThat(result.getErrores().get(1).getMensaje()).contains("fuera de rango");
+		assertThat(repository.findByTitulo("Libro 0")).isPresent();
+	}
+
+	private static BookImportService importService(BookRepository repository) {
+		BookService bookService = new BookService();
+		ReflectionTestUtils.setField(bookService, "bookRepository", repository);
+		// Lotes pequeños para que la prueba pase por varios lotes en vuelo
+		// Registros cortos para que una comilla suelta pase del máximo enseguida
+		return new BookImportService(bookService, repository, new ObjectMapper(), 1, 2, 100, 200);
+	}
+
+	private static ByteArrayInputStream stream(String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+}
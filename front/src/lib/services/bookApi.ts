@@ -12,6 +12,11 @@ export interface Book {
     descripcion?: string;
 }
 
+export interface Suggestion {
+    texto: string;
+    tipo: 'titulo' | 'autor';
+}
+
 export class BookApiService {
     private oauth2Service: OAuth2Service;
 
@@ -77,6 +82,18 @@ export class BookApiService {
         return response.json();
     }
 
+    async suggest(prefix: string, limit = 5): Promise<Suggestion[]> {
+        const response = await this.makeAuthenticatedRequest(
+            `/api/book/suggest?q=${encodeURIComponent(prefix)}&limit=${limit}`
+        );
+
+        if (!response.ok) {
+            throw new Error(`Failed to fetch suggestions: ${response.statusText}`);
+        }
+
+        return response.json();
+    }
+
     async createBook(book: Book): Promise<Book> {
         const response = await this.makeAuthenticatedRequest('/api/book', {
             method: 'POST',